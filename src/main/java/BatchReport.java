@@ -0,0 +1,86 @@
+package sofi;
+
+import java.util.Locale;
+
+/**
+ * Summary of a batch run: how many commands were applied, how many failed, how often the task list was
+ * saved and how long it all took.
+ */
+public class BatchReport {
+    private static final long NANOS_PER_MILLI = 1_000_000;
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    private int commandCount;
+    private int errorCount;
+    private int saveCount;
+    private long saveFailureCount;
+    private long commandNanos;
+    private long slowestCommandNanos;
+    private long saveNanos;
+    private long elapsedNanos;
+
+    void recordCommand(long nanos, boolean isError) {
+        commandCount++;
+        commandNanos += nanos;
+        slowestCommandNanos = Math.max(slowestCommandNanos, nanos);
+        if (isError) {
+            errorCount++;
+        }
+    }
+
+    void recordSave(long nanos) {
+        saveCount++;
+        saveNanos += nanos;
+    }
+
+    void setSaveFailureCount(long saveFailureCount) {
+        this.saveFailureCount = saveFailureCount;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getSaveCount() {
+        return saveCount;
+    }
+
+    public long getSaveFailureCount() {
+        return saveFailureCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns a short description of the run, with its timings.
+     *
+     * @return the summary text
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ran ").append(commandCount).append(" command(s) in ")
+                .append(elapsedNanos / NANOS_PER_MILLI).append(" ms");
+        if (commandCount > 0) {
+            sb.append(String.format(Locale.ROOT, " (%.1f us each, slowest %.1f us)",
+                    commandNanos / NANOS_PER_MICRO / commandCount, slowestCommandNanos / NANOS_PER_MICRO));
+        }
+        sb.append(".\n").append(errorCount).append(" command(s) failed.");
+        sb.append("\nSaved ").append(saveCount).append(" time(s) in ")
+                .append(saveNanos / NANOS_PER_MILLI).append(" ms");
+        if (saveFailureCount > 0) {
+            sb.append(", ").append(saveFailureCount).append(" save(s) failed");
+        }
+        sb.append(".");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,291 @@
+package sofi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Encodes and decodes task lists in SOFI's compact binary snapshot format.
+ *
+ * <p>Layout: the magic bytes {@code SOFB}, a version byte, the next unused task id and a table of
+ * every distinct tag. After that come blocks of records, each written as a record count, a payload
+ * length, the payload and a CRC-32C of the payload. A record count of zero ends the file. Each record
+ * is a flags byte (task type in the low bits, done status in the high bit), the task id,
+ * a length-prefixed UTF-8 description, the task's dates as epoch-minute longs, and its tags as indexes
+ * into the tag table. Ids, counts, lengths and indexes are unsigned varints.
+ * Version 1 files have no ids; they are still read.</p>
+ */
+public class BinaryTaskCodec {
+    static final byte[] MAGIC = {'S', 'O', 'F', 'B'};
+    static final int VERSION = 2;
+
+    private static final int VERSION_WITHOUT_IDS = 1;
+
+    private static final int TYPE_TODO = 0;
+    private static final int TYPE_DEADLINE = 1;
+    private static final int TYPE_EVENT = 2;
+    private static final int TYPE_MASK = 0x7f;
+    private static final int DONE_FLAG = 0x80;
+    private static final int RECORDS_PER_BLOCK = 1024;
+
+    private BinaryTaskCodec() {
+    }
+
+    /**
+     * Checks whether the given leading bytes of a file identify the binary format.
+     *
+     * @param header the first bytes of the file
+     * @param length the number of valid bytes in {@code header}
+     * @return true if the file is a binary snapshot
+     */
+    public static boolean hasMagic(byte[] header, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a list of tasks.
+     *
+     * @param tasks the tasks to encode
+     * @param nextId the next unused task id
+     * @return the encoded snapshot
+     */
+    public static byte[] encode(List<Task> tasks, int nextId) {
+        assert tasks != null : "Task list cannot be null";
+        HashMap<String, Integer> tagIds = new HashMap<>();
+        ArrayList<String> tagTable = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            for (String tag : LazyTaskList.peek(tasks, i).getTags()) {
+                if (!tagIds.containsKey(tag)) {
+                    tagIds.put(tag, tagTable.size());
+                    tagTable.add(tag);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + tasks.size() * 32);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, nextId);
+        writeVarint(out, tagTable.size());
+        for (String tag : tagTable) {
+            writeString(out, tag);
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        int blockRecords = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            writeRecord(block, LazyTaskList.peek(tasks, i), tagIds);
+            blockRecords++;
+            if (blockRecords == RECORDS_PER_BLOCK) {
+                writeBlock(out, block, blockRecords);
+                blockRecords = 0;
+            }
+        }
+        if (blockRecords > 0) {
+            writeBlock(out, block, blockRecords);
+        }
+        writeVarint(out, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a binary snapshot, skipping blocks whose checksum does not match.
+     *
+     * @param data the whole snapshot file
+     * @param tasks the list that decoded tasks are appended to
+     * @param report the report that damaged blocks are recorded in
+     * @return the next unused task id recorded in the snapshot, or 0 if it records none
+     * @throws IOException if the data is not a supported binary snapshot
+     */
+    public static int decode(byte[] data, ArrayList<Task> tasks, LoadReport report) throws IOException {
+        if (!hasMagic(data, data.length) || data.length <= MAGIC.length) {
+            throw new IOException("Not a binary SOFI data file");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(MAGIC.length);
+        int version = buffer.get() & 0xff;
+        if (version != VERSION && version != VERSION_WITHOUT_IDS) {
+            throw new IOException("Unsupported binary data file version: " + version);
+        }
+        boolean hasIds = version != VERSION_WITHOUT_IDS;
+
+        int nextId = 0;
+        int blockNumber = 0;
+        try {
+            if (hasIds) {
+                nextId = readVarint(buffer);
+            }
+            int tagCount = readVarint(buffer);
+            String[] tagTable = new String[tagCount];
+            for (int i = 0; i < tagCount; i++) {
+                int length = readVarint(buffer);
+                tagTable[i] = new String(data, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+
+            CRC32C crc = new CRC32C();
+            int recordCount;
+            while ((recordCount = readVarint(buffer)) > 0) {
+                blockNumber++;
+                int payloadLength = buffer.getInt();
+                if (payloadLength < 0 || payloadLength > buffer.remaining() - Integer.BYTES) {
+                    throw new BufferUnderflowException();
+                }
+                int payloadStart = buffer.position();
+                crc.reset();
+                crc.update(data, payloadStart, payloadLength);
+                int expected = buffer.getInt(payloadStart + payloadLength);
+                if ((int) crc.getValue() != expected) {
+                    report.recordCorruptBinaryBlock(blockNumber, recordCount);
+                } else {
+                    ByteBuffer payload = ByteBuffer.wrap(data, payloadStart, payloadLength).slice();
+                    decodeBlock(payload, data, payloadStart, recordCount, tagTable, hasIds, tasks, report,
+                            blockNumber);
+                    report.recordVerifiedBlock();
+                }
+                buffer.position(payloadStart + payloadLength + Integer.BYTES);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            report.recordTruncatedFile("The data file ends in the middle of block " + blockNumber
+                    + "; tasks after it were not loaded");
+        }
+        return nextId;
+    }
+
+    private static void decodeBlock(ByteBuffer buffer, byte[] array, int offset, int recordCount, String[] tagTable,
+            boolean hasIds, ArrayList<Task> tasks, LoadReport report, int blockNumber) {
+        for (int i = 0; i < recordCount; i++) {
+            try {
+                int flags = buffer.get() & 0xff;
+                int id = hasIds ? readVarint(buffer) : 0;
+                int descriptionLength = readVarint(buffer);
+                String description = new String(array, offset + buffer.position(), descriptionLength,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + descriptionLength);
+                Task task;
+                switch (flags & TYPE_MASK) {
+                    case TYPE_TODO:
+                        task = new Todo(description);
+                        break;
+                    case TYPE_DEADLINE:
+                        task = new Deadline(description, buffer.getLong());
+                        break;
+                    case TYPE_EVENT:
+                        task = new Event(description, buffer.getLong(), buffer.getLong());
+                        break;
+                    default:
+                        report.recordDroppedLine();
+                        report.addWarning("Unknown task type in block " + blockNumber + "; rest of block skipped");
+                        return;
+                }
+                if ((flags & DONE_FLAG) != 0) {
+                    task.markAsDone();
+                }
+                if (id > 0) {
+                    task.setId(id);
+                }
+                int taskTagCount = readVarint(buffer);
+                for (int t = 0; t < taskTagCount; t++) {
+                    task.addTag(tagTable[readVarint(buffer)]);
+                }
+                tasks.add(task);
+            } catch (RuntimeException e) {
+                report.recordDroppedLine();
+                report.addWarning("Error decoding record " + (i + 1) + " of block " + blockNumber
+                        + "; rest of block skipped");
+                return;
+            }
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, Task task, HashMap<String, Integer> tagIds) {
+        int flags;
+        if (task instanceof Deadline) {
+            flags = TYPE_DEADLINE;
+        } else if (task instanceof Event) {
+            flags = TYPE_EVENT;
+        } else {
+            flags = TYPE_TODO;
+        }
+        if (task.isDone()) {
+            flags |= DONE_FLAG;
+        }
+        out.write(flags);
+        writeVarint(out, task.getId());
+        writeString(out, task.getDescription());
+        if (task instanceof Deadline) {
+            writeLong(out, ((Deadline) task).getByMinute());
+        } else if (task instanceof Event) {
+            writeLong(out, ((Event) task).getFromMinute());
+            writeLong(out, ((Event) task).getToMinute());
+        }
+        writeVarint(out, task.getTags().size());
+        for (String tag : task.getTags()) {
+            writeVarint(out, tagIds.get(tag));
+        }
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, ByteArrayOutputStream block, int recordCount) {
+        byte[] payload = block.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        writeVarint(out, recordCount);
+        writeInt(out, payload.length);
+        out.writeBytes(payload);
+        writeInt(out, (int) crc.getValue());
+        block.reset();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        assert value >= 0 : "Varints must not be negative";
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get() & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in binary data file");
+    }
+}
@@ -0,0 +1,124 @@
+package sofi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Utility methods for the CRC-32C checksums that protect data and journal files.
+ */
+public class Checksum {
+    private static final int HEX_LENGTH = 8;
+    /** Size of the scratch buffer passed to {@link #update(CRC32C, CharSequence, int, int, byte[])}. */
+    public static final int SCRATCH_SIZE = 512;
+
+    private Checksum() {
+    }
+
+    /**
+     * Adds one line, including its line terminator, to a running checksum.
+     *
+     * @param crc the running checksum
+     * @param line the line without its terminator
+     */
+    public static void update(CRC32C crc, String line) {
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        crc.update('\n');
+    }
+
+    /**
+     * Adds one line, including its line terminator, to a running checksum, with the same result as
+     * {@link #update(CRC32C, String)}. The line is encoded as UTF-8 through a scratch buffer rather than
+     * copied into a string and a byte array first.
+     *
+     * @param crc the running checksum
+     * @param text the text holding the line
+     * @param start the index of the first character of the line
+     * @param end the index after the last character of the line
+     * @param scratch a buffer of at least {@link #SCRATCH_SIZE} bytes
+     */
+    public static void update(CRC32C crc, CharSequence text, int start, int end, byte[] scratch) {
+        assert scratch.length >= SCRATCH_SIZE : "Scratch buffer is too small";
+        // Room for the longest encoded character and the terminator
+        int limit = scratch.length - 5;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (length > limit) {
+                crc.update(scratch, 0, length);
+                length = 0;
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                scratch[length++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[length++] = (byte) (0xc0 | (c >> 6));
+                scratch[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                scratch[length++] = (byte) (0xf0 | (codePoint >> 18));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                scratch[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate is encoded as '?', as String.getBytes does
+                scratch[length++] = '?';
+            } else {
+                scratch[length++] = (byte) (0xe0 | (c >> 12));
+                scratch[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                scratch[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        scratch[length++] = '\n';
+        crc.update(scratch, 0, length);
+    }
+
+    /**
+     * Returns the checksum of a single line as a fixed-width hexadecimal string.
+     *
+     * @param line the line without its terminator
+     * @return the eight-character checksum
+     */
+    public static String of(String line) {
+        CRC32C crc = new CRC32C();
+        update(crc, line);
+        return toHex(crc.getValue());
+    }
+
+    /**
+     * Formats a checksum value as a fixed-width hexadecimal string.
+     *
+     * @param value the checksum value
+     * @return the eight-character checksum
+     */
+    public static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return "0".repeat(HEX_LENGTH - hex.length()) + hex;
+    }
+
+    /**
+     * Returns the length of a formatted checksum.
+     *
+     * @return the number of characters in a formatted checksum
+     */
+    public static int hexLength() {
+        return HEX_LENGTH;
+    }
+
+    /**
+     * Checks whether the given text starts with a formatted checksum followed by a space.
+     *
+     * @param text the text to check
+     * @return true if the text carries a leading checksum
+     */
+    public static boolean hasPrefix(String text) {
+        if (text.length() <= HEX_LENGTH || text.charAt(HEX_LENGTH) != ' ') {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package sofi;
+
+/**
+ * The commands that SOFI understands, each identified by the first word of the input.
+ */
+public enum Command {
+    BYE("bye", false),
+    LIST("list", false),
+    TODO("todo", true),
+    DEADLINE("deadline", true),
+    EVENT("event", true),
+    MARK("mark", true),
+    UNMARK("unmark", true),
+    DELETE("delete", true),
+    FIND("find", true),
+    TAG("tag", true),
+    UNTAG("untag", true),
+    TAGGED("tagged", true),
+    DUE("due", true),
+    AGENDA("agenda", true),
+    CONFLICTS("conflicts", true),
+    UNDO("undo", false),
+    REDO("redo", false);
+
+    private final String keyword;
+    private final boolean takesArguments;
+
+    Command(String keyword, boolean takesArguments) {
+        this.keyword = keyword;
+        this.takesArguments = takesArguments;
+    }
+
+    /**
+     * Returns the word that starts the command.
+     *
+     * @return the keyword
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * Returns whether anything may follow the keyword. A command that takes no arguments
+     * is only recognized when the input is exactly its keyword.
+     *
+     * @return true if the command takes arguments
+     */
+    public boolean takesArguments() {
+        return takesArguments;
+    }
+}
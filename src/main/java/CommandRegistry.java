@@ -0,0 +1,108 @@
+package sofi;
+
+/**
+ * Maps the first word of an input line to the handler of its command.
+ *
+ * <p>Keywords are stored in a trie over the letters {@code a} to {@code z}. A lookup walks the first word
+ * of the input once, without slicing it out, and stops at the first space, so it costs time in proportion
+ * to the length of that word however many commands are registered. The CLI and {@link Parser} each keep a
+ * registry over {@link Command}, so they recognize exactly the same commands; the GUI goes through the CLI's.</p>
+ *
+ * @param <H> the type of the handlers
+ */
+public class CommandRegistry<H> {
+    private static final int ALPHABET_SIZE = 26;
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Registers the handler of a command, replacing any previous handler.
+     *
+     * @param command the command
+     * @param handler the handler
+     */
+    public void register(Command command, H handler) {
+        assert handler != null : "Handler cannot be null";
+        Node node = root;
+        String keyword = command.getKeyword();
+        for (int i = 0; i < keyword.length(); i++) {
+            int letter = keyword.charAt(i) - 'a';
+            assert letter >= 0 && letter < ALPHABET_SIZE : "Keywords must be lower-case letters: " + keyword;
+            if (node.children == null) {
+                node.children = new Node[ALPHABET_SIZE];
+            }
+            if (node.children[letter] == null) {
+                node.children[letter] = new Node();
+            }
+            node = node.children[letter];
+        }
+        if (node.handler == null) {
+            size++;
+        }
+        node.command = command;
+        node.handler = handler;
+    }
+
+    /**
+     * Finds the handler for an input line.
+     *
+     * @param input the input line
+     * @return the handler of the command that the line starts with, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public H lookup(String input) {
+        Node node = find(input);
+        // Only register() stores handlers, and it only accepts an H
+        return node == null ? null : (H) node.handler;
+    }
+
+    /**
+     * Finds the command that an input line starts with.
+     *
+     * @param input the input line
+     * @return the command, or null if the line does not start with a registered command
+     */
+    public Command lookupCommand(String input) {
+        Node node = find(input);
+        return node == null ? null : node.command;
+    }
+
+    /**
+     * Returns the number of registered commands.
+     *
+     * @return the number of commands
+     */
+    public int size() {
+        return size;
+    }
+
+    private Node find(String input) {
+        Node node = root;
+        int i = 0;
+        for (; i < input.length() && input.charAt(i) != ' '; i++) {
+            int letter = input.charAt(i) - 'a';
+            if (letter < 0 || letter >= ALPHABET_SIZE || node.children == null) {
+                return null;
+            }
+            node = node.children[letter];
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.handler == null || (i < input.length() && !node.command.takesArguments())) {
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * A node of the trie. It holds its handler as an Object, since an array of a generic node type cannot
+     * be created without an unchecked conversion.
+     */
+    private static class Node {
+        private Node[] children;
+        private Command command;
+        private Object handler;
+    }
+}
@@ -0,0 +1,240 @@
+package sofi;
+
+import java.util.Arrays;
+
+/**
+ * Splits a command line into its parts in one scan, without allocating.
+ *
+ * <p>After {@link #reset(String)}, the parts are available as offsets into the line: the command word,
+ * the arguments after it, the first argument word and the rest, and the value of each {@link Flag}.
+ * Ranges are trimmed the way {@link String#trim()} trims. A tokenizer is meant to be reused, line after
+ * line; only {@link #text(int, int)} creates a string, for the parts that are kept.</p>
+ */
+public class CommandTokenizer {
+    /**
+     * A flag that introduces a value, written with a space on each side, as in {@code deadline x /by Sunday}.
+     */
+    public enum Flag {
+        BY("by"),
+        FROM("from"),
+        TO("to");
+
+        private final String name;
+
+        Flag(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final Flag[] FLAGS = Flag.values();
+
+    private String line = "";
+    private int commandEnd;
+    private boolean hasSeparator;
+    private int argumentStart;
+    private int argumentEnd;
+    private int firstWordEnd;
+    private int restStart;
+    private final int[] flagStarts = new int[FLAGS.length];
+
+    /**
+     * Scans a new line, replacing the previous one.
+     *
+     * @param line the command line
+     * @return this tokenizer
+     */
+    public CommandTokenizer reset(String line) {
+        assert line != null : "Line cannot be null";
+        this.line = line;
+        int length = line.length();
+        commandEnd = 0;
+        while (commandEnd < length && line.charAt(commandEnd) != ' ') {
+            commandEnd++;
+        }
+        hasSeparator = commandEnd < length;
+        argumentStart = skipBlanks(commandEnd);
+        argumentEnd = length;
+        while (argumentEnd > argumentStart && line.charAt(argumentEnd - 1) <= ' ') {
+            argumentEnd--;
+        }
+        firstWordEnd = argumentStart;
+        while (firstWordEnd < argumentEnd && line.charAt(firstWordEnd) != ' ') {
+            firstWordEnd++;
+        }
+        restStart = skipBlanks(firstWordEnd);
+        scanFlags();
+        return this;
+    }
+
+    /**
+     * Records the first occurrence of each flag. The first {@code /to} after {@code /from} wins over
+     * any earlier one, since it ends the value of {@code /from}.
+     */
+    private void scanFlags() {
+        Arrays.fill(flagStarts, -1);
+        int from = Flag.FROM.ordinal();
+        int to = Flag.TO.ordinal();
+        for (int i = line.indexOf(" /"); i >= 0; i = line.indexOf(" /", i + 1)) {
+            for (Flag flag : FLAGS) {
+                int nameStart = i + 2;
+                int nameEnd = nameStart + flag.name.length();
+                if (nameEnd < line.length() && line.charAt(nameEnd) == ' '
+                        && line.regionMatches(nameStart, flag.name, 0, flag.name.length())) {
+                    int f = flag.ordinal();
+                    if (flagStarts[f] < 0 || (f == to && flagStarts[to] < flagStarts[from])) {
+                        flagStarts[f] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    private int skipBlanks(int position) {
+        while (position < line.length() && line.charAt(position) <= ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the line being tokenized.
+     *
+     * @return the line
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the end of the command word, which starts the line.
+     *
+     * @return the offset just past the command word
+     */
+    public int commandEnd() {
+        return commandEnd;
+    }
+
+    /**
+     * Returns whether a space follows the command word, even if nothing else does.
+     *
+     * @return true if the command word is followed by a space
+     */
+    public boolean hasSeparator() {
+        return hasSeparator;
+    }
+
+    /**
+     * Returns the start of the trimmed arguments after the command word.
+     *
+     * @return the offset of the arguments
+     */
+    public int argumentStart() {
+        return argumentStart;
+    }
+
+    /**
+     * Returns the end of the trimmed arguments after the command word.
+     *
+     * @return the offset just past the arguments, equal to {@link #argumentStart()} if there are none
+     */
+    public int argumentEnd() {
+        return argumentEnd;
+    }
+
+    /**
+     * Returns the end of the first argument word, which starts at {@link #argumentStart()}.
+     *
+     * @return the offset just past the first argument word
+     */
+    public int firstWordEnd() {
+        return firstWordEnd;
+    }
+
+    /**
+     * Returns the start of the arguments after the first argument word.
+     *
+     * @return the offset of the remaining arguments, which end at {@link #argumentEnd()}
+     */
+    public int restStart() {
+        return restStart;
+    }
+
+    /**
+     * Returns whether a flag appears in the line.
+     *
+     * @param flag the flag
+     * @return true if the flag appears
+     */
+    public boolean hasFlag(Flag flag) {
+        return flagStarts[flag.ordinal()] >= 0;
+    }
+
+    /**
+     * Returns the end of the trimmed text between the command word and a flag.
+     *
+     * @param flag the flag, which must appear in the line
+     * @return the offset just past the text; the text starts at {@link #argumentStart()}
+     */
+    public int endBefore(Flag flag) {
+        assert hasFlag(flag) : "Flag not found: " + flag;
+        return trimEnd(commandEnd, flagStarts[flag.ordinal()]);
+    }
+
+    /**
+     * Returns the start of the trimmed value of a flag.
+     *
+     * @param flag the flag, which must appear in the line
+     * @return the offset of the value
+     */
+    public int valueStart(Flag flag) {
+        assert hasFlag(flag) : "Flag not found: " + flag;
+        return skipBlanks(flagStarts[flag.ordinal()] + flag.name.length() + 2);
+    }
+
+    /**
+     * Returns the end of the trimmed value of a flag. The value of {@code /from} ends at the {@code /to}
+     * after it; every other value runs to the end of the line.
+     *
+     * @param flag the flag, which must appear in the line
+     * @return the offset just past the value
+     */
+    public int valueEnd(Flag flag) {
+        int start = valueStart(flag);
+        int end = line.length();
+        int to = flagStarts[Flag.TO.ordinal()];
+        if (flag == Flag.FROM && to > flagStarts[Flag.FROM.ordinal()]) {
+            end = to;
+        }
+        return Math.max(start, trimEnd(start, end));
+    }
+
+    /**
+     * Returns part of the line as a string.
+     *
+     * @param start the start offset
+     * @param end the end offset
+     * @return the text between the offsets
+     */
+    public String text(int start, int end) {
+        return start >= end ? "" : line.substring(start, end);
+    }
+
+    /**
+     * Parses part of the line as a decimal int, without copying it.
+     *
+     * @param start the start offset
+     * @param end the end offset
+     * @return the value
+     * @throws NumberFormatException if the text is empty or not a number
+     */
+    public int parseInt(int start, int end) {
+        return Integer.parseInt(line, start, end, 10);
+    }
+}
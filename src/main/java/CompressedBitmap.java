@@ -0,0 +1,357 @@
+package sofi;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints, laid out like a Roaring bitmap.
+ *
+ * <p>Values are grouped by their high 16 bits. Each group is a container that stores its low 16 bits
+ * either as a sorted array, while it holds at most {@value #MAX_ARRAY_SIZE} values, or as a 65536-bit
+ * bitmap once it is denser than that. Sparse sets therefore cost two bytes per value and dense sets one
+ * bit per value, and intersections and unions work a container at a time, skipping groups that only
+ * one side has.</p>
+ */
+public class CompressedBitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value, which must not be negative
+     */
+    public void add(int value) {
+        assert value >= 0 : "Values must not be negative";
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new Container());
+        }
+        containers[i].add((char) value);
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value the value
+     */
+    public void remove(int value) {
+        if (value < 0) {
+            return;
+        }
+        int i = find((char) (value >>> 16));
+        if (i < 0) {
+            return;
+        }
+        containers[i].remove((char) value);
+        if (containers[i].cardinality == 0) {
+            System.arraycopy(keys, i + 1, keys, i, containerCount - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, containerCount - i - 1);
+            containerCount--;
+            containers[containerCount] = null;
+        }
+    }
+
+    /**
+     * Checks whether a value is present.
+     *
+     * @param value the value
+     * @return true if the value is in the set
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return the number of values in the set
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < containerCount; i++) {
+            total += containers[i].cardinality;
+        }
+        return total;
+    }
+
+    /**
+     * Returns whether the set is empty.
+     *
+     * @return true if the set holds no values
+     */
+    public boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * Returns the values in ascending order.
+     *
+     * @return a new array of the values
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < containerCount; i++) {
+            n = containers[i].copyTo(result, n, keys[i] << 16);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new set holding the values present in both sets.
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return the intersection
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Container both = Container.and(a.containers[i], b.containers[j]);
+                if (both.cardinality > 0) {
+                    result.insertContainer(result.containerCount, a.keys[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new set holding the values present in either set.
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return the union
+     */
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            if (j == b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                result.insertContainer(result.containerCount, a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.containerCount || a.keys[i] > b.keys[j]) {
+                result.insertContainer(result.containerCount, b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.insertContainer(result.containerCount, a.keys[i],
+                        Container.or(a.containers[i], b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int i, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, containerCount - i);
+        System.arraycopy(containers, i, containers, i + 1, containerCount - i);
+        keys[i] = key;
+        containers[i] = container;
+        containerCount++;
+    }
+
+    /**
+     * The low 16 bits of one group of values, as a sorted array or, once dense, as a bitmap.
+     */
+    private static class Container {
+        private char[] array = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        void add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) == 0) {
+                    bits[value >>> 6] |= mask;
+                    cardinality++;
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, value);
+            if (i >= 0) {
+                return;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                toBitmap();
+                add(value);
+                return;
+            }
+            i = -i - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(cardinality * 2, MAX_ARRAY_SIZE));
+            }
+            System.arraycopy(array, i, array, i + 1, cardinality - i);
+            array[i] = value;
+            cardinality++;
+        }
+
+        void remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) != 0) {
+                    bits[value >>> 6] &= ~mask;
+                    cardinality--;
+                    if (cardinality <= MAX_ARRAY_SIZE) {
+                        toArray();
+                    }
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+                cardinality--;
+            }
+        }
+
+        boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, value) >= 0;
+        }
+
+        int copyTo(int[] out, int n, int high) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    out[n++] = high | array[i];
+                }
+                return n;
+            }
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    out[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return n;
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.cardinality = cardinality;
+            copy.array = array == null ? null : Arrays.copyOf(array, Math.max(cardinality, 1));
+            copy.bits = bits == null ? null : bits.clone();
+            return copy;
+        }
+
+        private void toBitmap() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            array = values;
+            bits = null;
+        }
+
+        static Container and(Container a, Container b) {
+            Container result = new Container();
+            if (a.bits != null && b.bits != null) {
+                result.array = null;
+                result.bits = new long[BITMAP_WORDS];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result.bits[w] = a.bits[w] & b.bits[w];
+                    result.cardinality += Long.bitCount(result.bits[w]);
+                }
+                if (result.cardinality <= MAX_ARRAY_SIZE) {
+                    result.toArray();
+                }
+                return result;
+            }
+            // At least one side is a short array, so walk it and probe the other
+            Container small = a.bits == null ? a : b;
+            Container other = small == a ? b : a;
+            result.array = new char[Math.max(small.cardinality, 1)];
+            for (int i = 0; i < small.cardinality; i++) {
+                if (other.contains(small.array[i])) {
+                    result.array[result.cardinality++] = small.array[i];
+                }
+            }
+            return result;
+        }
+
+        static Container or(Container a, Container b) {
+            Container result;
+            if (a.bits != null || b.bits != null) {
+                Container dense = a.bits != null ? a : b;
+                Container other = dense == a ? b : a;
+                result = dense.copy();
+                if (other.bits != null) {
+                    result.cardinality = 0;
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        result.bits[w] |= other.bits[w];
+                        result.cardinality += Long.bitCount(result.bits[w]);
+                    }
+                } else {
+                    for (int i = 0; i < other.cardinality; i++) {
+                        result.add(other.array[i]);
+                    }
+                }
+                return result;
+            }
+            result = new Container();
+            result.array = new char[Math.max(a.cardinality + b.cardinality, 1)];
+            int i = 0;
+            int j = 0;
+            while (i < a.cardinality || j < b.cardinality) {
+                char next;
+                if (j == b.cardinality || (i < a.cardinality && a.array[i] < b.array[j])) {
+                    next = a.array[i++];
+                } else if (i == a.cardinality || a.array[i] > b.array[j]) {
+                    next = b.array[j++];
+                } else {
+                    next = a.array[i++];
+                    j++;
+                }
+                result.array[result.cardinality++] = next;
+            }
+            if (result.cardinality > MAX_ARRAY_SIZE) {
+                result.toBitmap();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package sofi;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the dates that deadlines, events and date queries accept: {@code yyyy-MM-dd} and {@code M/d/yyyy},
+ * each optionally followed by a time as {@code HHmm}.
+ *
+ * <p>Input in one of these layouts is recognized by a single scan over its characters, without building
+ * a formatter or throwing an exception. Anything else, such as a day past the end of its month or a year
+ * with more than four digits, falls back to {@link DateTimeFormatter}, so the results are always the same
+ * as those of the formatters.</p>
+ *
+ * <p>Relative phrases such as {@code tomorrow 3pm} or {@code next fri} are resolved against the system
+ * clock by a shared {@link RelativeDateParser}.</p>
+ */
+public class DateTimeParser {
+    private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+    private static final DateTimeFormatter US_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy HHmm");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HHmm");
+    private static final String ERROR_FORMAT = "Invalid date format. Please use yyyy-MM-dd, "
+            + "yyyy-MM-dd HHmm, M/d/yyyy, or M/d/yyyy HHmm format, or a phrase such as tomorrow 3pm.";
+    private static final RelativeDateParser RELATIVE_PARSER = new RelativeDateParser(Clock.systemDefaultZone());
+
+    private DateTimeParser() {
+    }
+
+    /**
+     * Parses a date with an optional time, or a relative date phrase.
+     *
+     * @param text the date, optionally followed by a space and a time
+     * @param defaultTime the time to use if none is given
+     * @return the date and time
+     * @throws IllegalArgumentException if the text is not in a supported format
+     */
+    public static LocalDateTime parse(String text, LocalTime defaultTime) {
+        assert text != null : "Date text cannot be null";
+        LocalDateTime parsed = scan(text, defaultTime);
+        if (parsed == null) {
+            parsed = RELATIVE_PARSER.parse(text, defaultTime);
+        }
+        return parsed != null ? parsed : parseWithFormatters(text, defaultTime);
+    }
+
+    /**
+     * Recognizes the supported layouts in one pass.
+     *
+     * @return the date and time, or null if the text needs the formatters
+     */
+    private static LocalDateTime scan(String text, LocalTime defaultTime) {
+        int length = text.length();
+        int year;
+        int month;
+        int day;
+        int end;
+        if (length >= 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            year = digits(text, 0, 4);
+            month = digits(text, 5, 7);
+            day = digits(text, 8, 10);
+            end = 10;
+        } else {
+            int firstSlash = text.indexOf('/');
+            int secondSlash = firstSlash < 0 ? -1 : text.indexOf('/', firstSlash + 1);
+            if (firstSlash < 1 || firstSlash > 2 || secondSlash - firstSlash < 2 || secondSlash - firstSlash > 3
+                    || secondSlash + 5 > length) {
+                return null;
+            }
+            month = digits(text, 0, firstSlash);
+            day = digits(text, firstSlash + 1, secondSlash);
+            year = digits(text, secondSlash + 1, secondSlash + 5);
+            end = secondSlash + 5;
+        }
+        int hour = defaultTime.getHour();
+        int minute = defaultTime.getMinute();
+        if (end != length) {
+            if (length != end + 5 || text.charAt(end) != ' ') {
+                return null;
+            }
+            hour = digits(text, end + 1, end + 3);
+            minute = digits(text, end + 3, end + 5);
+        }
+        if (year < 1 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute);
+    }
+
+    /**
+     * Reads a run of ASCII digits.
+     *
+     * @return the value, or -1 if any character is not a digit
+     */
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static LocalDateTime parseWithFormatters(String text, LocalTime defaultTime) {
+        String withDefaultTime = text + " " + defaultTime.format(TIME_FORMAT);
+        for (DateTimeFormatter format : new DateTimeFormatter[]{ISO_FORMAT, US_FORMAT}) {
+            for (String candidate : new String[]{text, withDefaultTime}) {
+                try {
+                    return LocalDateTime.parse(candidate, format);
+                } catch (DateTimeParseException e) {
+                    // Try the next layout
+                }
+            }
+        }
+        throw new IllegalArgumentException(ERROR_FORMAT);
+    }
+
+    /**
+     * Returns the minutes since the epoch of a local time, taken as UTC. Epoch minutes order like the
+     * times themselves and are how deadlines and events keep their times.
+     *
+     * @param dateTime the time; any seconds are dropped
+     * @return the epoch minute
+     */
+    public static long toEpochMinute(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * Returns the local time of an epoch minute, taken as UTC.
+     *
+     * @param epochMinute the minutes since the epoch
+     * @return the time
+     */
+    public static LocalDateTime fromEpochMinute(long epochMinute) {
+        return LocalDateTime.ofEpochSecond(epochMinute * 60, 0, ZoneOffset.UTC);
+    }
+}
@@ -1,58 +1,53 @@
 package sofi;
 
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 
+/**
+ * A task to be done by a given time. The time is kept as an epoch minute, so comparing, indexing and
+ * saving deadlines works on a long rather than on a {@link LocalDateTime}.
+ */
 public class Deadline extends Task {
-    protected LocalDateTime by;
-    private static final DateTimeFormatter INPUT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+    private final long byMinute;
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59);
     private static final DateTimeFormatter OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
 
     public Deadline(String description, String by) {
-        super(description);
-        this.by = parseDateTime(by);
+        this(description, DateTimeParser.parse(by, END_OF_DAY));
     }
 
     public Deadline(String description, LocalDateTime by) {
+        this(description, DateTimeParser.toEpochMinute(by));
+    }
+
+    Deadline(String description, long byMinute) {
         super(description);
-        this.by = by;
+        this.byMinute = byMinute;
     }
 
-    private LocalDateTime parseDateTime(String dateTimeStr) {
-        try {
-            return LocalDateTime.parse(dateTimeStr, INPUT_FORMAT);
-        } catch (DateTimeParseException e) {
-            try {
-                // Default to 11:59 PM if no time specified
-                return LocalDateTime.parse(dateTimeStr + " 2359", INPUT_FORMAT);
-            } catch (DateTimeParseException e2) {
-                try {
-                    // Try US date format
-                    DateTimeFormatter altFormat = DateTimeFormatter.ofPattern("M/d/yyyy HHmm");
-                    return LocalDateTime.parse(dateTimeStr, altFormat);
-                } catch (DateTimeParseException e3) {
-                    try {
-                        DateTimeFormatter altFormat = DateTimeFormatter.ofPattern("M/d/yyyy HHmm");
-                        return LocalDateTime.parse(dateTimeStr + " 2359", altFormat);
-                    } catch (DateTimeParseException e4) {
-                        throw new IllegalArgumentException("Invalid date format. Please use yyyy-MM-dd, "
-                                + "yyyy-MM-dd HHmm, M/d/yyyy, or M/d/yyyy HHmm format.");
-                    }
-                }
-            }
-        }
+    @Override
+    protected String typeIcon() {
+        return "[D]";
     }
 
     @Override
-    public String toString() {
-        String tagsString = getTagsString();
-        return "[D]" + getStatusIcon() + " " + description + " (by: " + by.format(OUTPUT_FORMAT) + ")" +
-               (tagsString.isEmpty() ? "" : " " + tagsString);
+    protected void appendDetailsTo(StringBuilder sb) {
+        sb.append(" (by: ");
+        OUTPUT_FORMAT.formatTo(getBy(), sb);
+        sb.append(')');
     }
 
     public LocalDateTime getBy() {
-        return by;
+        return DateTimeParser.fromEpochMinute(byMinute);
     }
-}
 
+    /**
+     * Returns when this deadline is due.
+     *
+     * @return the minutes since the epoch, as given by {@link DateTimeParser#toEpochMinute(LocalDateTime)}
+     */
+    public long getByMinute() {
+        return byMinute;
+    }
+}
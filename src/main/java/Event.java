@@ -1,64 +1,70 @@
 package sofi;
 
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 
+/**
+ * A task that takes place over a period. The start and end are kept as epoch minutes, like the time of
+ * a {@link Deadline}.
+ */
 public class Event extends Task {
-    private LocalDateTime from;
-    private LocalDateTime to;
-    private static final DateTimeFormatter INPUT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+    private final long fromMinute;
+    private final long toMinute;
+    private static final LocalTime START_OF_DAY = LocalTime.MIDNIGHT;
     private static final DateTimeFormatter OUTPUT_FORMAT = DateTimeFormatter.ofPattern("MMM dd yyyy, h:mm a");
 
     public Event(String description, String from, String to) {
-        super(description);
-        this.from = parseDateTime(from);
-        this.to = parseDateTime(to);
+        this(description, DateTimeParser.parse(from, START_OF_DAY), DateTimeParser.parse(to, START_OF_DAY));
     }
 
     public Event(String description, LocalDateTime from, LocalDateTime to) {
+        this(description, DateTimeParser.toEpochMinute(from), DateTimeParser.toEpochMinute(to));
+    }
+
+    Event(String description, long fromMinute, long toMinute) {
         super(description);
-        this.from = from;
-        this.to = to;
+        this.fromMinute = fromMinute;
+        this.toMinute = toMinute;
     }
 
-    private LocalDateTime parseDateTime(String dateTimeStr) {
-        try {
-            return LocalDateTime.parse(dateTimeStr, INPUT_FORMAT);
-        } catch (DateTimeParseException e) {
-            try {
-                // Default to midnight if no time specified
-                return LocalDateTime.parse(dateTimeStr + " 0000", INPUT_FORMAT);
-            } catch (DateTimeParseException e2) {
-                try {
-                    // Try US date format
-                    DateTimeFormatter altFormat = DateTimeFormatter.ofPattern("M/d/yyyy HHmm");
-                    return LocalDateTime.parse(dateTimeStr, altFormat);
-                } catch (DateTimeParseException e3) {
-                    try {
-                        DateTimeFormatter altFormat = DateTimeFormatter.ofPattern("M/d/yyyy HHmm");
-                        return LocalDateTime.parse(dateTimeStr + " 0000", altFormat);
-                    } catch (DateTimeParseException e4) {
-                        throw new IllegalArgumentException("Invalid date format. Please use yyyy-MM-dd, "
-                                + "yyyy-MM-dd HHmm, M/d/yyyy, or M/d/yyyy HHmm format.");
-                    }
-                }
-            }
-        }
+    @Override
+    protected String typeIcon() {
+        return "[E]";
     }
 
     @Override
-    public String toString() {
-        String tagsString = getTagsString();
-        return "[E]" + getStatusIcon() + " " + description + " (from: " + from.format(OUTPUT_FORMAT) + " to: " + to.format(OUTPUT_FORMAT) + ")" +
-               (tagsString.isEmpty() ? "" : " " + tagsString);
+    protected void appendDetailsTo(StringBuilder sb) {
+        sb.append(" (from: ");
+        OUTPUT_FORMAT.formatTo(getFrom(), sb);
+        sb.append(" to: ");
+        OUTPUT_FORMAT.formatTo(getTo(), sb);
+        sb.append(')');
     }
 
     public LocalDateTime getFrom() {
-        return from;
+        return DateTimeParser.fromEpochMinute(fromMinute);
     }
 
     public LocalDateTime getTo() {
-        return to;
+        return DateTimeParser.fromEpochMinute(toMinute);
+    }
+
+    /**
+     * Returns when this event starts.
+     *
+     * @return the minutes since the epoch, as given by {@link DateTimeParser#toEpochMinute(LocalDateTime)}
+     */
+    public long getFromMinute() {
+        return fromMinute;
+    }
+
+    /**
+     * Returns when this event ends.
+     *
+     * @return the minutes since the epoch
+     */
+    public long getToMinute() {
+        return toMinute;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+package sofi;
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree over a growable array of small non-negative counts.
+ * Used as an order statistic structure: with a count of 1 for every live slot and 0 for every
+ * removed one, {@link #prefixSum(int)} turns a slot into a position and {@link #select(int)}
+ * turns a position back into a slot, both in O(log n).
+ */
+public class FenwickTree {
+    private long[] tree;
+    private int size;
+
+    /**
+     * Constructs an empty tree.
+     */
+    public FenwickTree() {
+        this.tree = new long[16];
+    }
+
+    /**
+     * Appends a slot with the given count.
+     *
+     * @param count the count of the new slot
+     */
+    public void append(long count) {
+        if (size + 1 == tree.length) {
+            // Nodes only ever cover slots before them, so growing keeps every existing node valid
+            tree = Arrays.copyOf(tree, tree.length * 2);
+        }
+        size++;
+        int lowBit = size & -size;
+        tree[size] = count + prefixSum(size - 1) - prefixSum(size - lowBit);
+    }
+
+    /**
+     * Adds a delta to the count of a slot.
+     *
+     * @param slot the 0-based slot
+     * @param delta the amount to add
+     */
+    public void add(int slot, long delta) {
+        assert slot >= 0 && slot < size : "Slot out of range: " + slot;
+        for (int i = slot + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the counts of the first {@code slotCount} slots.
+     *
+     * @param slotCount the number of leading slots to sum
+     * @return the sum of their counts
+     */
+    public long prefixSum(int slotCount) {
+        assert slotCount >= 0 && slotCount <= size : "Slot count out of range: " + slotCount;
+        long sum = 0;
+        for (int i = slotCount; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the slot at which the running sum of counts first exceeds {@code rank}.
+     * With 0/1 counts, this is the slot of the live entry at 0-based position {@code rank}.
+     *
+     * @param rank the 0-based rank
+     * @return the slot, or {@link #size()} if the total count is not greater than {@code rank}
+     */
+    public int select(long rank) {
+        int position = 0;
+        long remaining = rank;
+        for (int step = Integer.highestOneBit(Math.max(size, 1)); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,230 @@
+package sofi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the journal segments that compactions fold into the data file, so that earlier states of the task
+ * list can still be rebuilt.
+ *
+ * <p>The archive is a chain of checkpoints. A checkpoint is a copy of the data file as it was after some
+ * change, kept as {@code <data>.checkpoint.<change>}, and the changes made after it are kept in
+ * {@code <data>.history.<change>}. When that history has grown to the size of the data file, or to the
+ * checkpoint interval if that is larger, the next compaction starts a new checkpoint. Rebuilding a state
+ * therefore starts from the latest checkpoint before it and replays a bounded amount of history.</p>
+ *
+ * <p>Only the latest {@value #MAX_CHECKPOINTS} checkpoints are kept. Older ones are deleted with their
+ * history, which keeps the archive from growing without bound.</p>
+ */
+public class HistoryArchive {
+    static final int MAX_CHECKPOINTS = 8;
+
+    private static final String CHECKPOINT_INFIX = ".checkpoint.";
+    private static final String HISTORY_INFIX = ".history.";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final String basePath;
+    private final long checkpointIntervalBytes;
+
+    /**
+     * Constructs a HistoryArchive whose files are stored alongside the given data file.
+     *
+     * @param basePath the path of the data file the archive belongs to
+     * @param checkpointIntervalBytes the size of history after which a new checkpoint is started
+     */
+    public HistoryArchive(String basePath, long checkpointIntervalBytes) {
+        assert basePath != null : "Base path cannot be null";
+        assert checkpointIntervalBytes > 0 : "Checkpoint interval must be positive";
+        this.basePath = basePath;
+        this.checkpointIntervalBytes = checkpointIntervalBytes;
+    }
+
+    /**
+     * Archives the journal segments that a compaction is about to fold into the data file. Only records
+     * that pass their checksum are kept, as replay would stop at the first one that does not.
+     *
+     * @param segments the covered segments, oldest first
+     * @param dataFile the data file as it is before the compaction replaces it, which the segments apply to
+     * @throws IOException if the archive cannot be written
+     */
+    public void archive(List<File> segments, Path dataFile) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        List<Long> checkpoints = listCheckpoints();
+        long checkpoint;
+        if (checkpoints.isEmpty() || isDueForCheckpoint(checkpoints.get(checkpoints.size() - 1), dataFile)) {
+            checkpoint = Math.max(headerSequence(segments.get(0)), 0);
+            if (!checkpoints.contains(checkpoint)) {
+                writeCheckpoint(checkpoint, dataFile);
+                checkpoints.add(checkpoint);
+            }
+        } else {
+            checkpoint = checkpoints.get(checkpoints.size() - 1);
+        }
+        appendVerifiedLines(segments, historyPath(checkpoint));
+        for (int i = 0; i < checkpoints.size() - MAX_CHECKPOINTS; i++) {
+            Files.deleteIfExists(historyPath(checkpoints.get(i)));
+            Files.deleteIfExists(checkpointPath(checkpoints.get(i)));
+        }
+    }
+
+    /**
+     * Returns the change that the latest checkpoint at or before the given change was taken after.
+     *
+     * @param sequence the number of a change
+     * @return the change of the checkpoint, or -1 if there is no such checkpoint
+     */
+    public long checkpointAtOrBefore(long sequence) {
+        long found = -1;
+        for (long checkpoint : listCheckpoints()) {
+            if (checkpoint <= sequence) {
+                found = checkpoint;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the change that the oldest checkpoint was taken after.
+     *
+     * @return the change of the oldest checkpoint, or -1 if nothing has been archived
+     */
+    public long getOldestCheckpoint() {
+        List<Long> checkpoints = listCheckpoints();
+        return checkpoints.isEmpty() ? -1 : checkpoints.get(0);
+    }
+
+    /**
+     * Returns the copy of the data file that a checkpoint keeps.
+     *
+     * @param checkpoint the change the checkpoint was taken after
+     * @return the checkpoint file
+     */
+    public File checkpointFile(long checkpoint) {
+        return checkpointPath(checkpoint).toFile();
+    }
+
+    /**
+     * Returns the history files from a checkpoint on, oldest first.
+     *
+     * @param checkpoint the change of the checkpoint to start from, or -1 for every history file
+     * @return the history files
+     */
+    public List<File> historyFrom(long checkpoint) {
+        List<File> files = new ArrayList<>();
+        for (long each : listCheckpoints()) {
+            File history = historyPath(each).toFile();
+            if (each >= checkpoint && history.exists()) {
+                files.add(history);
+            }
+        }
+        return files;
+    }
+
+    private boolean isDueForCheckpoint(long latest, Path dataFile) throws IOException {
+        Path history = historyPath(latest);
+        long historySize = Files.exists(history) ? Files.size(history) : 0;
+        long dataSize = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        return historySize >= Math.max(checkpointIntervalBytes, dataSize);
+    }
+
+    private void writeCheckpoint(long checkpoint, Path dataFile) throws IOException {
+        Path temp = Path.of(checkpointPath(checkpoint) + TEMP_SUFFIX);
+        if (Files.exists(dataFile)) {
+            Files.copy(dataFile, temp, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.write(temp, new byte[0]);
+        }
+        // History left from an earlier checkpoint with the same number would not apply to this one
+        Files.deleteIfExists(historyPath(checkpoint));
+        Storage.move(temp, checkpointPath(checkpoint));
+    }
+
+    private static void appendVerifiedLines(List<File> segments, Path history) throws IOException {
+        Storage.dropTornTail(history);
+        try (FileOutputStream out = new FileOutputStream(history.toFile(), true);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (File segment : segments) {
+                try (BufferedReader reader = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+                        if (Journal.verifiedRecord(line) == null) {
+                            break;
+                        }
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Reads the number of the last change before a segment from the sequence record it starts with.
+     *
+     * @return the change number, or -1 if the segment does not start with a sequence record
+     */
+    private static long headerSequence(File segment) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            String record = line == null ? null : Journal.verifiedRecord(line);
+            String prefix = Journal.RECORD_SEQUENCE + Journal.RECORD_DELIMITER;
+            if (record == null || !record.startsWith(prefix)) {
+                return -1;
+            }
+            return Long.parseLong(record.substring(prefix.length()).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the changes that the existing checkpoints were taken after, in ascending order.
+     */
+    private List<Long> listCheckpoints() {
+        File base = new File(basePath).getAbsoluteFile();
+        File[] files = base.getParentFile() == null ? null : base.getParentFile().listFiles();
+        List<Long> checkpoints = new ArrayList<>();
+        if (files == null) {
+            return checkpoints;
+        }
+        String prefix = base.getName() + CHECKPOINT_INFIX;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+            try {
+                checkpoints.add(Long.parseLong(name.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                // A checkpoint still being written, or some other file
+            }
+        }
+        checkpoints.sort(null);
+        return checkpoints;
+    }
+
+    private Path checkpointPath(long checkpoint) {
+        return Path.of(basePath + CHECKPOINT_INFIX + checkpoint);
+    }
+
+    private Path historyPath(long checkpoint) {
+        return Path.of(basePath + HISTORY_INFIX + checkpoint);
+    }
+}
@@ -0,0 +1,135 @@
+package sofi;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from positive int keys to int values.
+ * Keys and values live in parallel primitive arrays, so lookups neither box nor chase pointers.
+ * Removal shifts later entries of the probe run back instead of leaving tombstones.
+ */
+public class IntIntMap {
+    private static final int EMPTY = 0;
+    private static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty map sized for the given number of entries.
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Returns the value mapped to a key.
+     *
+     * @param key the key, which must be positive
+     * @return the value, or -1 if the key is not present
+     */
+    public int get(int key) {
+        assert key > 0 : "Keys must be positive";
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous value.
+     *
+     * @param key the key, which must be positive
+     * @param value the value
+     */
+    public void put(int key, int value) {
+        assert key > 0 : "Keys must be positive";
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key, which must be positive
+     * @return the removed value, or -1 if the key was not present
+     */
+    public int remove(int key) {
+        assert key > 0 : "Keys must be positive";
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        // Pull later entries of the run back so that no lookup hits a gap before its key
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,264 @@
+package sofi;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of closed intervals of longs, each belonging to a slot, that finds the intervals overlapping a range.
+ *
+ * <p>The intervals are kept in a treap ordered by start and then slot, and every node also records the
+ * largest end in its subtree. A search skips any subtree whose largest end falls before the range and
+ * any right subtree whose starts fall after it, so reporting the k overlapping intervals takes
+ * O(log n + k) expected time. Priorities are derived from the slot, which keeps the shape random
+ * without a random number generator and makes it the same on every run.</p>
+ */
+public class IntervalTree {
+    private Node root;
+    private int size;
+
+    /**
+     * Adds an interval.
+     *
+     * @param start the start of the interval
+     * @param end the end of the interval, which must not be before the start
+     * @param slot the slot that the interval belongs to
+     */
+    public void insert(long start, long end, int slot) {
+        assert end >= start : "An interval cannot end before it starts";
+        root = insert(root, new Node(start, end, slot));
+        size++;
+    }
+
+    /**
+     * Removes the interval of a slot.
+     *
+     * @param start the start of the interval
+     * @param slot the slot that the interval belongs to
+     */
+    public void remove(long start, int slot) {
+        int before = size;
+        root = remove(root, start, slot);
+        assert size == before - 1 : "No interval starts at " + start + " for slot " + slot;
+    }
+
+    /**
+     * Reports the slot of every interval that overlaps a range, in order of start and then slot.
+     *
+     * @param from the start of the range
+     * @param to the end of the range
+     * @param action called with each slot
+     */
+    public void forEachOverlapping(long from, long to, IntConsumer action) {
+        visitOverlapping(root, from, to, node -> action.accept(node.slot));
+    }
+
+    /**
+     * Reports every pair of intervals that overlap each other, among the intervals that overlap a range.
+     *
+     * <p>The intervals are swept in order of start while a heap holds those that have not yet ended.
+     * Each interval overlaps exactly the intervals still in the heap when it is reached, so the sweep
+     * takes O((n + k) log n) for n intervals in the range and k pairs, instead of comparing every pair.</p>
+     *
+     * @param from the start of the range
+     * @param to the end of the range
+     * @param action called with each pair, the interval that starts first or has the smaller slot first
+     */
+    public void forEachOverlappingPair(long from, long to, PairConsumer action) {
+        ActiveHeap active = new ActiveHeap();
+        visitOverlapping(root, from, to, node -> {
+            while (active.size > 0 && active.ends[0] < node.start) {
+                active.poll();
+            }
+            for (int i = 0; i < active.size; i++) {
+                action.accept(active.slots[i], node.slot);
+            }
+            active.add(node.end, node.slot);
+        });
+    }
+
+    /**
+     * Returns the number of intervals.
+     *
+     * @return the number of intervals
+     */
+    public int size() {
+        return size;
+    }
+
+    private static void visitOverlapping(Node node, long from, long to, Consumer<Node> action) {
+        while (node != null && node.maxEnd >= from) {
+            visitOverlapping(node.left, from, to, action);
+            if (node.start > to) {
+                return;
+            }
+            if (node.end >= from) {
+                action.accept(node);
+            }
+            node = node.right;
+        }
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.slot, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node remove(Node node, long start, int slot) {
+        if (node == null) {
+            return null;
+        }
+        int c = compare(start, slot, node);
+        if (c < 0) {
+            node.left = remove(node.left, start, slot);
+        } else if (c > 0) {
+            node.right = remove(node.right, start, slot);
+        } else {
+            size--;
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        node.update();
+        left.right = node;
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        node.update();
+        right.left = node;
+        return right;
+    }
+
+    private static int compare(long start, int slot, Node node) {
+        int c = Long.compare(start, node.start);
+        return c != 0 ? c : Integer.compare(slot, node.slot);
+    }
+
+    private static class Node {
+        private final long start;
+        private final long end;
+        private final int slot;
+        private final int priority;
+        private long maxEnd;
+        private Node left;
+        private Node right;
+
+        Node(long start, long end, int slot) {
+            this.start = start;
+            this.end = end;
+            this.slot = slot;
+            this.maxEnd = end;
+            int h = slot * 0x9E3779B9;
+            this.priority = h ^ (h >>> 16);
+        }
+
+        void update() {
+            maxEnd = end;
+            if (left != null) {
+                maxEnd = Math.max(maxEnd, left.maxEnd);
+            }
+            if (right != null) {
+                maxEnd = Math.max(maxEnd, right.maxEnd);
+            }
+        }
+    }
+
+    /**
+     * Receives a pair of overlapping intervals by their slots.
+     */
+    @FunctionalInterface
+    public interface PairConsumer {
+        /**
+         * Receives a pair.
+         *
+         * @param firstSlot the slot of the interval reached first
+         * @param secondSlot the slot of the other interval
+         */
+        void accept(int firstSlot, int secondSlot);
+    }
+
+    /**
+     * Binary min-heap of interval ends, with the slot of each end alongside.
+     */
+    private static class ActiveHeap {
+        private long[] ends = new long[16];
+        private int[] slots = new int[16];
+        private int size;
+
+        void add(long end, int slot) {
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && ends[(i - 1) / 2] > end) {
+                int parent = (i - 1) / 2;
+                ends[i] = ends[parent];
+                slots[i] = slots[parent];
+                i = parent;
+            }
+            ends[i] = end;
+            slots[i] = slot;
+        }
+
+        void poll() {
+            size--;
+            long end = ends[size];
+            int slot = slots[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && ends[child + 1] < ends[child]) {
+                    child++;
+                }
+                if (ends[child] >= end) {
+                    break;
+                }
+                ends[i] = ends[child];
+                slots[i] = slots[child];
+                i = child;
+            }
+            ends[i] = end;
+            slots[i] = slot;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package sofi;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Append-only log of task list mutations, kept in numbered segment files next to the data file.
+ * Each mutation is written as one compact pipe-delimited record, so persisting a change costs
+ * a single appended line instead of a rewrite of the whole data file.
+ * Every line starts with the checksum of its record, so a record torn by a crash is detected on replay.
+ *
+ * <p>A record starts with the sequence number of its change and the time it was made, in milliseconds
+ * since the epoch. Each segment opens with a sequence record that carries the number of the last change
+ * before it, so numbering carries on after the segments before it are folded into the data file.</p>
+ *
+ * <p>A segment file is only created when its first record is appended, so a session that changes
+ * nothing leaves no segment behind.</p>
+ *
+ * <p>A change to an existing task names the task by its position and its id. Records written before ids
+ * were recorded name the position only.</p>
+ */
+public class Journal {
+    // Record kinds
+    static final String RECORD_ADD = "+";
+    static final String RECORD_INSERT = "I";
+    static final String RECORD_MARK = "M";
+    static final String RECORD_UNMARK = "U";
+    static final String RECORD_DELETE = "X";
+    static final String RECORD_TAG = "G";
+    static final String RECORD_UNTAG = "R";
+    static final String RECORD_SEQUENCE = "S";
+
+    static final String RECORD_DELIMITER = " | ";
+    static final String TASK_ID_MARKER = "@";
+    private static final String SEGMENT_INFIX = ".journal.";
+
+    private final String basePath;
+    private FileOutputStream out;
+    private BufferedWriter writer;
+    private int activeSegment;
+    private long activeSize;
+    private long totalSize;
+    private String pendingHeader;
+
+    /**
+     * Constructs a Journal whose segment files are stored alongside the given data file.
+     *
+     * @param basePath the path of the snapshot file this journal belongs to
+     */
+    public Journal(String basePath) {
+        assert basePath != null : "Base path cannot be null";
+        this.basePath = basePath;
+    }
+
+    /**
+     * Returns the existing segment files in the order they were written.
+     *
+     * @return the segment files, oldest first
+     */
+    public List<File> listSegments() {
+        File base = new File(basePath).getAbsoluteFile();
+        File dir = base.getParentFile();
+        String prefix = base.getName() + SEGMENT_INFIX;
+        ArrayList<File> segments = new ArrayList<>();
+        File[] files = dir == null ? null : dir.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(prefix) && segmentNumber(file) >= 0) {
+                segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingInt(Journal::segmentNumber));
+        return segments;
+    }
+
+    /**
+     * Directs appends to a fresh segment numbered after every existing one. The segment is created, starting
+     * with the given header record, when the first record is appended to it.
+     *
+     * @param header the record that starts the segment
+     */
+    public synchronized void open(String header) {
+        List<File> segments = listSegments();
+        activeSegment = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+        totalSize = 0;
+        for (File segment : segments) {
+            totalSize += segment.length();
+        }
+        activeSize = 0;
+        pendingHeader = header;
+    }
+
+    /**
+     * Appends one record to the active segment and syncs it to disk, so it is as durable as a batch
+     * written by {@link #appendAll(List)}.
+     *
+     * @param record the record to append, without a trailing newline
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void append(String record) throws IOException {
+        assert record != null : "Journal record cannot be null";
+        createActiveSegmentIfPending();
+        long size = writeLine(record);
+        writer.flush();
+        out.getFD().sync();
+        activeSize += size;
+        totalSize += size;
+    }
+
+    /**
+     * Appends a batch of records to the active segment and syncs it to disk once,
+     * so the cost of the sync is shared by the whole batch.
+     *
+     * @param records the records to append, in order
+     * @throws IOException if the records cannot be written
+     */
+    public synchronized void appendAll(List<String> records) throws IOException {
+        assert records != null : "Journal records cannot be null";
+        createActiveSegmentIfPending();
+        long size = 0;
+        for (String record : records) {
+            size += writeLine(record);
+        }
+        writer.flush();
+        out.getFD().sync();
+        activeSize += size;
+        totalSize += size;
+    }
+
+    /**
+     * Closes the active segment and starts a new one with the given header record. If nothing was appended
+     * to the active segment yet, it was never created and becomes the new segment instead.
+     *
+     * @param header the record that starts the new segment
+     * @return the number of the last segment before the new one
+     * @throws IOException if the new segment cannot be created
+     */
+    public synchronized int rotate(String header) throws IOException {
+        int closed;
+        if (writer == null) {
+            closed = activeSegment - 1;
+        } else {
+            closed = activeSegment;
+            writer.close();
+            writer = null;
+            activeSegment++;
+        }
+        // Created right away, so the header keeps the numbering once the older segments are deleted
+        pendingHeader = header;
+        createActiveSegmentIfPending();
+        writer.flush();
+        return closed;
+    }
+
+    /**
+     * Deletes every segment numbered at or below the given segment.
+     *
+     * @param segment the highest segment number to delete
+     * @throws IOException if a segment cannot be deleted
+     */
+    public synchronized void deleteSegmentsUpTo(int segment) throws IOException {
+        for (File file : listSegments()) {
+            if (segmentNumber(file) > segment || !file.exists()) {
+                continue;
+            }
+            long length = file.length();
+            if (!file.delete()) {
+                throw new IOException("Failed to delete journal segment: " + file.getAbsolutePath());
+            }
+            totalSize -= length;
+        }
+    }
+
+    /**
+     * Returns the number of bytes appended to the active segment.
+     *
+     * @return the size of the active segment
+     */
+    public synchronized long getActiveSize() {
+        return activeSize;
+    }
+
+    /**
+     * Returns the number of bytes in all segments, as of the last {@link #open(String)} plus what was
+     * appended and deleted since.
+     *
+     * @return the size of the whole journal
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Closes the active segment, if one is open.
+     *
+     * @throws IOException if the segment cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void createActiveSegmentIfPending() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        assert pendingHeader != null : "Journal must be opened before appending";
+        out = new FileOutputStream(basePath + SEGMENT_INFIX + activeSegment, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        activeSize = writeLine(pendingHeader);
+        totalSize += activeSize;
+        pendingHeader = null;
+    }
+
+    /**
+     * Writes one record with its checksum and a line terminator.
+     *
+     * @return the number of bytes written
+     */
+    private long writeLine(String record) throws IOException {
+        String line = withChecksum(record);
+        writer.write(line);
+        writer.newLine();
+        return utf8Length(line) + System.lineSeparator().length();
+    }
+
+    /**
+     * Returns the number of bytes that a string takes in UTF-8, without encoding it.
+     */
+    static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate is written as '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the segment number encoded in a segment file name.
+     *
+     * @param file the segment file
+     * @return the segment number, or -1 if the name is not a segment name
+     */
+    static int segmentNumber(File file) {
+        String name = file.getName();
+        int index = name.lastIndexOf(SEGMENT_INFIX);
+        if (index < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(index + SEGMENT_INFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String withChecksum(String record) {
+        return Checksum.of(record) + " " + record;
+    }
+
+    /**
+     * Strips and verifies the checksum of a journal line.
+     *
+     * @param line the line as read from a segment
+     * @return the record, or null if the line is damaged
+     */
+    static String verifiedRecord(String line) {
+        if (!Checksum.hasPrefix(line)) {
+            return null;
+        }
+        String record = line.substring(Checksum.hexLength() + 1);
+        return Checksum.of(record).equals(line.substring(0, Checksum.hexLength())) ? record : null;
+    }
+
+    static String numberedRecord(long sequence, long timeMillis, String record) {
+        return sequence + " " + timeMillis + " " + record;
+    }
+
+    static String sequenceRecord(long lastSequence) {
+        return RECORD_SEQUENCE + RECORD_DELIMITER + lastSequence;
+    }
+
+    static String addRecord(String serializedTask) {
+        return RECORD_ADD + RECORD_DELIMITER + serializedTask;
+    }
+
+    static String insertRecord(int index, String serializedTask) {
+        return RECORD_INSERT + RECORD_DELIMITER + index + RECORD_DELIMITER + serializedTask;
+    }
+
+    static String markRecord(int index, int taskId, boolean isDone) {
+        return (isDone ? RECORD_MARK : RECORD_UNMARK) + RECORD_DELIMITER + target(index, taskId);
+    }
+
+    static String deleteRecord(int index, int taskId) {
+        return RECORD_DELETE + RECORD_DELIMITER + target(index, taskId);
+    }
+
+    static String tagRecord(int index, int taskId, String tag, boolean isTagged) {
+        return (isTagged ? RECORD_TAG : RECORD_UNTAG) + RECORD_DELIMITER + target(index, taskId)
+                + RECORD_DELIMITER + tag;
+    }
+
+    /**
+     * Writes the task that a change applies to as its position followed by its id, as in {@code 4 @17}.
+     * Replay finds the task by its id, so a change still reaches the right task when snapshot lines before
+     * it were lost; the position only saves a search.
+     */
+    private static String target(int index, int taskId) {
+        return taskId > 0 ? index + " " + TASK_ID_MARKER + taskId : Integer.toString(index);
+    }
+}
@@ -0,0 +1,123 @@
+package sofi;
+
+import java.time.Instant;
+
+/**
+ * One change read back from the {@link Journal}: what kind of change it was, its place in the order of all
+ * changes, when it was made, and the task it applied to.
+ */
+public class JournalEntry {
+    /**
+     * The kinds of change that the journal records.
+     */
+    public enum Kind {
+        ADD(Journal.RECORD_ADD),
+        INSERT(Journal.RECORD_INSERT),
+        MARK(Journal.RECORD_MARK),
+        UNMARK(Journal.RECORD_UNMARK),
+        DELETE(Journal.RECORD_DELETE),
+        TAG(Journal.RECORD_TAG),
+        UNTAG(Journal.RECORD_UNTAG);
+
+        private final String code;
+
+        Kind(String code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the kind written as the given record code.
+         *
+         * @param code the code at the start of a record
+         * @return the kind, or null if no kind has that code
+         */
+        static Kind of(String code) {
+            for (Kind kind : values()) {
+                if (kind.code.equals(code)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final long sequence;
+    private final Instant time;
+    private final Kind kind;
+    private final int index;
+    private final int taskId;
+    private final String argument;
+
+    JournalEntry(long sequence, Instant time, Kind kind, int index, int taskId, String argument) {
+        this.sequence = sequence;
+        this.time = time;
+        this.kind = kind;
+        this.index = index;
+        this.taskId = taskId;
+        this.argument = argument;
+    }
+
+    /**
+     * Returns the number of this change. Changes are numbered from 1 in the order they were made.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the change was made.
+     *
+     * @return the time, or null for a change recorded before times were kept
+     */
+    public Instant getTime() {
+        return time;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the position of the task that the change applied to, at the time of the change.
+     * An insertion puts the task at this position.
+     *
+     * @return the 0-based index, or -1 for an addition, which always goes to the end of the list
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the id of the task that a mark, removal or tag change applied to.
+     *
+     * @return the task id, or 0 if the change was recorded before ids were, or is an addition or insertion
+     */
+    public int getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Returns the stored task of an addition or insertion, or the tag of a tag change.
+     *
+     * @return the argument, or null for other changes
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('#').append(sequence).append(' ').append(time != null ? time.toString() : "-")
+                .append(' ').append(kind);
+        if (index >= 0) {
+            sb.append(' ').append(index + 1);
+        }
+        if (argument != null) {
+            sb.append(' ').append(argument);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,211 @@
+package sofi;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of tasks whose elements are built from a {@link MappedTaskStore} the first time they are read.
+ * Until then, a position only costs a record number and an empty slot, so a large archive can be
+ * opened without building a {@link Task} for every entry. Tasks added later live only in memory.
+ * Every method that touches the positions is synchronized: building a task on first access changes the
+ * list, so even a reader that only holds a shared lock elsewhere must not race a removal or insertion.
+ */
+public class LazyTaskList extends AbstractList<Task> implements RandomAccess {
+    private static final int NOT_STORED = -1;
+
+    private final MappedTaskStore store;
+    private final ArrayList<Task> materialized;
+    private int[] records;
+    private int size;
+    private int materializedCount;
+
+    /**
+     * Constructs a LazyTaskList over every record of the given store.
+     *
+     * @param store the store that backs the list
+     */
+    public LazyTaskList(MappedTaskStore store) {
+        assert store != null : "Store cannot be null";
+        this.store = store;
+        this.size = store.size();
+        this.records = new int[Math.max(size, 10)];
+        for (int i = 0; i < size; i++) {
+            records[i] = i;
+        }
+        this.materialized = new ArrayList<>(Collections.nCopies(size, (Task) null));
+    }
+
+    /**
+     * Returns the task at the given position, building it from the store on first access.
+     * The built task is kept, so changes made to it are not lost.
+     */
+    @Override
+    public synchronized Task get(int index) {
+        Task task = materialized.get(index);
+        if (task == null) {
+            task = store.materialize(records[index]);
+            materialized.set(index, task);
+            materializedCount++;
+        }
+        return task;
+    }
+
+    /**
+     * Returns the task at the given position without keeping it if it has not been built yet.
+     * The result must only be read, since changes to a task that is not kept are lost.
+     *
+     * @param index the position of the task
+     * @return the task
+     */
+    public synchronized Task peek(int index) {
+        Task task = materialized.get(index);
+        return task != null ? task : store.materialize(records[index]);
+    }
+
+    /**
+     * Returns the task at the given position if it has been built, without building it.
+     *
+     * @param index the position of the task
+     * @return the task, or null if it has not been built yet
+     */
+    synchronized Task builtAt(int index) {
+        return materialized.get(index);
+    }
+
+    /**
+     * Returns the store record that the task at the given position is built from.
+     *
+     * @param index the position of the task
+     * @return the record number, which is negative for a task that only lives in memory
+     */
+    synchronized int recordAt(int index) {
+        return records[index];
+    }
+
+    MappedTaskStore getStore() {
+        return store;
+    }
+
+    /**
+     * Reads a task for serialization, avoiding materializing it permanently when the list is lazy.
+     *
+     * @param tasks any list of tasks
+     * @param index the position of the task
+     * @return the task
+     */
+    static Task peek(List<Task> tasks, int index) {
+        if (tasks instanceof LazyTaskList) {
+            return ((LazyTaskList) tasks).peek(index);
+        } else if (tasks instanceof TaskList.View) {
+            return ((TaskList.View) tasks).peek(index);
+        }
+        return tasks.get(index);
+    }
+
+    /**
+     * Returns the id of the task at the given position without building the task.
+     *
+     * @param index the position of the task
+     * @return the task id, or 0 if the task has none
+     */
+    public synchronized int idAt(int index) {
+        Task task = materialized.get(index);
+        return task != null ? task.getId() : store.idAt(records[index]);
+    }
+
+    /**
+     * Reads a task id, avoiding materializing the task when the list is lazy.
+     *
+     * @param tasks any list of tasks
+     * @param index the position of the task
+     * @return the task id, or 0 if the task has none
+     */
+    static int peekId(List<Task> tasks, int index) {
+        if (tasks instanceof LazyTaskList) {
+            return ((LazyTaskList) tasks).idAt(index);
+        } else if (tasks instanceof TaskList.View) {
+            return ((TaskList.View) tasks).peekId(index);
+        } else if (tasks instanceof TaskList.Snapshot) {
+            return ((TaskList.Snapshot) tasks).peekId(index);
+        }
+        return tasks.get(index).getId();
+    }
+
+    /**
+     * Drops every position whose flag is false, without building any task.
+     *
+     * @param keep one flag per position, true for the positions to keep
+     */
+    public synchronized void retain(boolean[] keep) {
+        assert keep.length >= size : "Need a flag for every position";
+        ArrayList<Task> kept = new ArrayList<>();
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            Task task = materialized.get(i);
+            if (keep[i]) {
+                records[newSize++] = records[i];
+                kept.add(task);
+            } else if (task != null) {
+                materializedCount--;
+            }
+        }
+        materialized.clear();
+        materialized.addAll(kept);
+        size = newSize;
+        modCount++;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized Task set(int index, Task task) {
+        assert task != null : "Task cannot be null";
+        Task previous = get(index);
+        materialized.set(index, task);
+        return previous;
+    }
+
+    @Override
+    public synchronized void add(int index, Task task) {
+        assert task != null : "Task cannot be null";
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == records.length) {
+            records = Arrays.copyOf(records, size + (size >> 1) + 1);
+        }
+        System.arraycopy(records, index, records, index + 1, size - index);
+        records[index] = NOT_STORED;
+        materialized.add(index, task);
+        materializedCount++;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public synchronized Task remove(int index) {
+        Task removed = get(index);
+        System.arraycopy(records, index + 1, records, index, size - index - 1);
+        materialized.remove(index);
+        materializedCount--;
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Returns the number of positions that currently hold a built task.
+     *
+     * @return the number of materialized tasks
+     */
+    public synchronized int getMaterializedCount() {
+        return materializedCount;
+    }
+}
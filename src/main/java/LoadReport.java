@@ -0,0 +1,146 @@
+package sofi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of what happened while loading the data file and replaying the journal.
+ * Collects the warnings for lines that were skipped or failed verification so they
+ * can be shown to the user instead of being dropped silently.
+ */
+public class LoadReport {
+    private static final int MAX_SHOWN_WARNINGS = 5;
+
+    private int tasksLoaded;
+    private int verifiedBlocks;
+    private int corruptBlocks;
+    private int droppedLines;
+    private int unverifiedLines;
+    private int replayedRecords;
+    private boolean isJournalTruncated;
+    private boolean isFileTruncated;
+    private String backupPath;
+    private final ArrayList<String> warnings = new ArrayList<>();
+
+    void addWarning(String warning) {
+        warnings.add(warning);
+    }
+
+    void recordVerifiedBlock() {
+        verifiedBlocks++;
+    }
+
+    void recordCorruptBlock(int firstLine, int lastLine, int lineCount) {
+        corruptBlocks++;
+        droppedLines += lineCount;
+        warnings.add("Checksum mismatch in lines " + firstLine + "-" + lastLine + "; " + lineCount
+                + " line(s) were not loaded");
+    }
+
+    void recordCorruptBinaryBlock(int blockNumber, int recordCount) {
+        corruptBlocks++;
+        droppedLines += recordCount;
+        warnings.add("Checksum mismatch in block " + blockNumber + "; " + recordCount + " task(s) were not loaded");
+    }
+
+    void recordTruncatedFile(String warning) {
+        isFileTruncated = true;
+        warnings.add(warning);
+    }
+
+    void recordDroppedLine() {
+        droppedLines++;
+    }
+
+    void recordUnverifiedLines(int lineCount) {
+        unverifiedLines += lineCount;
+    }
+
+    void recordReplayedRecord() {
+        replayedRecords++;
+    }
+
+    void recordJournalTruncated(String warning) {
+        isJournalTruncated = true;
+        warnings.add(warning);
+    }
+
+    void setTasksLoaded(int tasksLoaded) {
+        this.tasksLoaded = tasksLoaded;
+    }
+
+    void setBackupPath(String backupPath) {
+        this.backupPath = backupPath;
+    }
+
+    /**
+     * Returns whether any data was dropped or could not be verified.
+     *
+     * @return true if the user should be told about the load
+     */
+    public boolean hasProblems() {
+        return corruptBlocks > 0 || droppedLines > 0 || isJournalTruncated || isFileTruncated;
+    }
+
+    public int getTasksLoaded() {
+        return tasksLoaded;
+    }
+
+    public int getVerifiedBlocks() {
+        return verifiedBlocks;
+    }
+
+    public int getCorruptBlocks() {
+        return corruptBlocks;
+    }
+
+    public int getDroppedLines() {
+        return droppedLines;
+    }
+
+    public int getUnverifiedLines() {
+        return unverifiedLines;
+    }
+
+    public int getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public boolean isJournalTruncated() {
+        return isJournalTruncated;
+    }
+
+    public List<String> getWarnings() {
+        return new ArrayList<>(warnings);
+    }
+
+    /**
+     * Returns a short, user-facing description of the load.
+     *
+     * @return the summary text
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Loaded ").append(tasksLoaded).append(" task(s)");
+        if (droppedLines > 0) {
+            sb.append(", skipped ").append(droppedLines).append(" damaged line(s)");
+        }
+        if (isFileTruncated) {
+            sb.append(", the data file was cut short");
+        }
+        if (isJournalTruncated) {
+            sb.append(", ignored an incomplete change at the end of the journal");
+        }
+        sb.append(".");
+        for (int i = 0; i < warnings.size() && i < MAX_SHOWN_WARNINGS; i++) {
+            sb.append("\n- ").append(warnings.get(i));
+        }
+        if (warnings.size() > MAX_SHOWN_WARNINGS) {
+            sb.append("\n- ... and ").append(warnings.size() - MAX_SHOWN_WARNINGS).append(" more");
+        }
+        if (backupPath != null) {
+            sb.append("\nThe original file was kept at ").append(backupPath);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,266 @@
+package sofi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Read-only task store backed by a memory-mapped data file.
+ *
+ * <p>The file starts with a header, followed by one fixed-width record per task and a heap holding
+ * the variable-length text. Since every record has the same width, the record for task {@code i}
+ * is found by arithmetic alone, and a {@link Task} is only built when it is asked for.
+ * Opening a store therefore costs the same for ten tasks as for ten million.</p>
+ *
+ * <p>A mapping can only be released by the garbage collector, and some platforms refuse to replace or delete
+ * a file while it is mapped. A store that is only read once should therefore be {@link #read read} into
+ * memory rather than {@link #open opened}.</p>
+ *
+ * <p>Header: magic {@code SOFM} (4 bytes), version (int), record count (int), next unused task id (int),
+ * heap offset (long). Record ({@value #RECORD_SIZE} bytes): flags (byte, type in the low bits and
+ * done status in the high bit), 3 reserved bytes, description length (int), description heap offset
+ * (long), first date (long), second date (long), tags length (int), task id (int) and tags heap offset
+ * (long). Dates are epoch minutes and tags are newline-separated UTF-8. A task id or next id of 0
+ * means the file was written before ids existed.</p>
+ */
+public class MappedTaskStore {
+    static final byte[] MAGIC = {'S', 'O', 'F', 'M'};
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 48;
+    private static final int TYPE_TODO = 0;
+    private static final int TYPE_DEADLINE = 1;
+    private static final int TYPE_EVENT = 2;
+    private static final int TYPE_MASK = 0x7f;
+    private static final int DONE_FLAG = 0x80;
+    private static final char TAG_SEPARATOR = '\n';
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int nextId;
+
+    private MappedTaskStore(ByteBuffer buffer, int size, int nextId) {
+        this.buffer = buffer;
+        this.size = size;
+        this.nextId = nextId;
+    }
+
+    /**
+     * Maps an existing data file. The file stays mapped for as long as the store is reachable.
+     *
+     * @param path the data file
+     * @return the store
+     * @throws IOException if the file cannot be mapped or is not a mapped data file
+     */
+    public static MappedTaskStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a mapped SOFI data file");
+            }
+            // The mapping stays valid after the channel is closed
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    /**
+     * Reads an existing data file into memory, leaving nothing mapped once it returns.
+     *
+     * @param path the data file
+     * @return the store
+     * @throws IOException if the file cannot be read or is not a mapped data file
+     */
+    public static MappedTaskStore read(Path path) throws IOException {
+        return wrap(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    private static MappedTaskStore wrap(ByteBuffer buffer) throws IOException {
+        int length = buffer.capacity();
+        if (length < HEADER_SIZE) {
+            throw new IOException("Not a mapped SOFI data file");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Not a mapped SOFI data file");
+            }
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported mapped data file version: " + version);
+        }
+        int size = buffer.getInt(8);
+        if (size < 0 || HEADER_SIZE + (long) size * RECORD_SIZE > length) {
+            throw new IOException("Mapped data file is truncated");
+        }
+        return new MappedTaskStore(buffer, size, Math.max(buffer.getInt(12), 0));
+    }
+
+    /**
+     * Checks whether the given leading bytes of a file identify the mapped format.
+     *
+     * @param header the first bytes of the file
+     * @param length the number of valid bytes in {@code header}
+     * @return true if the file is a mapped data file
+     */
+    public static boolean hasMagic(byte[] header, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of tasks in the store.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the next unused task id recorded in the file.
+     *
+     * @return the next id, or 0 if the file records none
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Returns the id of the task in the given record without building the task.
+     *
+     * @param index the record index
+     * @return the task id, or 0 if the record has none
+     */
+    public int idAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " out of bounds for length " + size);
+        }
+        return Math.max(buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 36), 0);
+    }
+
+    /**
+     * Builds the task stored in the given record.
+     *
+     * @param index the record index
+     * @return a new task with the record's contents
+     */
+    public Task materialize(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " out of bounds for length " + size);
+        }
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        int flags = buffer.get(record) & 0xff;
+        String description = readString(buffer.getLong(record + 8), buffer.getInt(record + 4));
+        Task task;
+        switch (flags & TYPE_MASK) {
+            case TYPE_DEADLINE:
+                task = new Deadline(description, buffer.getLong(record + 16));
+                break;
+            case TYPE_EVENT:
+                task = new Event(description, buffer.getLong(record + 16), buffer.getLong(record + 24));
+                break;
+            default:
+                task = new Todo(description);
+                break;
+        }
+        if ((flags & DONE_FLAG) != 0) {
+            task.markAsDone();
+        }
+        int id = buffer.getInt(record + 36);
+        if (id > 0) {
+            task.setId(id);
+        }
+        int tagsLength = buffer.getInt(record + 32);
+        if (tagsLength > 0) {
+            String tags = readString(buffer.getLong(record + 40), tagsLength);
+            int start = 0;
+            int end;
+            while ((end = tags.indexOf(TAG_SEPARATOR, start)) >= 0) {
+                task.addTag(tags.substring(start, end));
+                start = end + 1;
+            }
+            task.addTag(tags.substring(start));
+        }
+        return task;
+    }
+
+    private String readString(long offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get((int) offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a list of tasks as a mapped data file.
+     *
+     * @param tasks the tasks to encode
+     * @param nextId the next unused task id
+     * @return the file contents
+     */
+    public static byte[] encode(List<Task> tasks, int nextId) {
+        assert tasks != null : "Task list cannot be null";
+        int count = tasks.size();
+        byte[][] descriptions = new byte[count][];
+        byte[][] tags = new byte[count][];
+        long heapSize = 0;
+        for (int i = 0; i < count; i++) {
+            Task task = LazyTaskList.peek(tasks, i);
+            descriptions[i] = task.getDescription().getBytes(StandardCharsets.UTF_8);
+            tags[i] = task.getTags().isEmpty() ? new byte[0]
+                    : String.join(String.valueOf(TAG_SEPARATOR), task.getTags()).getBytes(StandardCharsets.UTF_8);
+            heapSize += descriptions[i].length + tags[i].length;
+        }
+        long heapOffset = HEADER_SIZE + (long) count * RECORD_SIZE;
+        if (heapOffset + heapSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Task list is too large for a mapped data file");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) (heapOffset + heapSize));
+        out.put(MAGIC).putInt(VERSION).putInt(count).putInt(nextId).putLong(heapOffset);
+        long heapPosition = heapOffset;
+        for (int i = 0; i < count; i++) {
+            Task task = LazyTaskList.peek(tasks, i);
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            int flags = TYPE_TODO;
+            long first = 0;
+            long second = 0;
+            if (task instanceof Deadline) {
+                flags = TYPE_DEADLINE;
+                first = ((Deadline) task).getByMinute();
+            } else if (task instanceof Event) {
+                flags = TYPE_EVENT;
+                first = ((Event) task).getFromMinute();
+                second = ((Event) task).getToMinute();
+            }
+            if (task.isDone()) {
+                flags |= DONE_FLAG;
+            }
+            out.put(record, (byte) flags);
+            out.putInt(record + 4, descriptions[i].length);
+            out.putLong(record + 8, heapPosition);
+            out.put((int) heapPosition, descriptions[i]);
+            heapPosition += descriptions[i].length;
+            out.putLong(record + 16, first);
+            out.putLong(record + 24, second);
+            out.putInt(record + 32, tags[i].length);
+            out.putInt(record + 36, task.getId());
+            out.putLong(record + 40, heapPosition);
+            out.put((int) heapPosition, tags[i]);
+            heapPosition += tags[i].length;
+        }
+        return out.array();
+    }
+}
@@ -1,81 +1,68 @@
 package sofi;
 
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.regex.Pattern;
+
+import sofi.CommandTokenizer.Flag;
+
 /**
  * Utility class for parsing user input commands and extracting relevant information.
  * Provides static methods to parse different types of commands and their parameters.
  */
 public class Parser {
-    // Command constants
-    private static final String COMMAND_BYE = "bye";
-    private static final String COMMAND_LIST = "list";
-    private static final String COMMAND_TODO = "todo";
-    private static final String COMMAND_DEADLINE = "deadline";
-    private static final String COMMAND_EVENT = "event";
-    private static final String COMMAND_MARK = "mark";
-    private static final String COMMAND_UNMARK = "unmark";
-    private static final String COMMAND_DELETE = "delete";
-    private static final String COMMAND_FIND = "find";
-    private static final String COMMAND_TAG = "tag";
-    private static final String COMMAND_UNTAG = "untag";
     private static final String COMMAND_UNKNOWN = "unknown";
-    
-    // Command prefixes for parsing
-    private static final String PREFIX_TODO = "todo";
-    private static final String PREFIX_DEADLINE = "deadline";
-    private static final String PREFIX_EVENT = "event";
-    private static final String PREFIX_MARK = "mark";
-    private static final String PREFIX_UNMARK = "unmark";
-    private static final String PREFIX_DELETE = "delete";
-    private static final String PREFIX_FIND = "find";
-    private static final String PREFIX_TAG = "tag";
-    private static final String PREFIX_UNTAG = "untag";
-    
-    // Parsing constants
-    private static final int TODO_PREFIX_LENGTH = 5;
-    private static final int DEADLINE_PREFIX_LENGTH = 9;
-    private static final int EVENT_PREFIX_LENGTH = 6;
-    private static final int FIND_PREFIX_LENGTH = 5;
-    
-    // Delimiter constants
-    private static final String DEADLINE_DELIMITER = " /by ";
-    private static final String EVENT_FROM_DELIMITER = " /from ";
-    private static final String EVENT_TO_DELIMITER = " /to ";
-    private static final String SPACE_DELIMITER = " ";
+    private static final CommandRegistry<Command> COMMANDS = new CommandRegistry<>();
+    private static final ThreadLocal<CommandTokenizer> TOKENIZER = ThreadLocal.withInitial(CommandTokenizer::new);
+
+    static {
+        for (Command command : Command.values()) {
+            COMMANDS.register(command, command);
+        }
+    }
+
+    // Tag query constants
+    private static final String TAG_MARKER = "#";
+    private static final String OPERATOR_AND = "and";
+    private static final String OPERATOR_OR = "or";
+
+    // Date query constants
+    private static final Pattern RANGE_SEPARATOR = Pattern.compile("\\s+to\\s+", Pattern.CASE_INSENSITIVE);
+    private static final LocalTime START_OF_DAY = LocalTime.MIDNIGHT;
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59);
     
     /**
      * Parses the command type from user input.
      * 
      * @param userInput the raw user input string
-     * @return the command type (bye, list, todo, deadline, event, mark, unmark, delete, or unknown)
+     * @return the keyword of the command (bye, list, todo, deadline, event, mark, unmark, delete, find, tag,
+     *         untag, tagged, due, agenda, conflicts), or unknown
      */
     public static String parseCommand(String userInput) {
+        Command command = lookupCommand(userInput);
+        return command == null ? COMMAND_UNKNOWN : command.getKeyword();
+    }
+
+    /**
+     * Finds the command that user input starts with.
+     *
+     * @param userInput the raw user input string
+     * @return the command, or null if the input does not start with a known command
+     */
+    public static Command lookupCommand(String userInput) {
         assert userInput != null : "User input cannot be null";
-        // Identify the command type from user input
-        if (userInput.equals(COMMAND_BYE)) {
-            return COMMAND_BYE;
-        } else if (userInput.equals(COMMAND_LIST)) {
-            return COMMAND_LIST;
-        } else if (userInput.startsWith(PREFIX_TODO)) {
-            return COMMAND_TODO;
-        } else if (userInput.startsWith(PREFIX_DEADLINE)) {
-            return COMMAND_DEADLINE;
-        } else if (userInput.startsWith(PREFIX_EVENT)) {
-            return COMMAND_EVENT;
-        } else if (userInput.startsWith(PREFIX_MARK)) {
-            return COMMAND_MARK;
-        } else if (userInput.startsWith(PREFIX_UNMARK)) {
-            return COMMAND_UNMARK;
-        } else if (userInput.startsWith(PREFIX_DELETE)) {
-            return COMMAND_DELETE;
-        } else if (userInput.startsWith(PREFIX_FIND)) {
-            return COMMAND_FIND;
-        } else if (userInput.startsWith(PREFIX_TAG)) {
-            return COMMAND_TAG;
-        } else if (userInput.startsWith(PREFIX_UNTAG)) {
-            return COMMAND_UNTAG;
-        } else {
-            return COMMAND_UNKNOWN;
-        }
+        return COMMANDS.lookup(userInput);
+    }
+
+    /**
+     * Scans user input with this thread's tokenizer, which is reused from call to call.
+     *
+     * @param userInput the raw user input string
+     * @return the tokenizer, positioned on the input until the next call from this thread
+     */
+    public static CommandTokenizer tokenize(String userInput) {
+        assert userInput != null : "User input cannot be null";
+        return TOKENIZER.get().reset(userInput);
     }
 
     /**
@@ -85,8 +72,8 @@ public class Parser {
      * @return the todo description, empty string if not found
      */
     public static String parseTodoDescription(String userInput) {
-        assert userInput != null : "User input cannot be null";
-        return userInput.length() >= 5 ? userInput.substring(5).trim() : "";
+        CommandTokenizer tokens = tokenize(userInput);
+        return tokens.text(tokens.argumentStart(), tokens.argumentEnd());
     }
 
     /**
@@ -98,11 +85,10 @@ public class Parser {
     public static String[] parseDeadline(String userInput) {
         assert userInput != null : "User input cannot be null";
         assert userInput.startsWith("deadline") : "Input should start with 'deadline'";
-        assert userInput.contains(" /by ") : "Deadline command must contain ' /by '";
-        String[] parts = userInput.split(" /by ", 2);
-        assert parts.length == 2 : "Split should produce exactly 2 parts";
-        String description = parts[0].length() >= 9 ? parts[0].substring(9).trim() : "";
-        String by = parts[1].trim();
+        CommandTokenizer tokens = tokenize(userInput);
+        assert tokens.hasFlag(Flag.BY) : "Deadline command must contain ' /by '";
+        String description = tokens.text(tokens.argumentStart(), tokens.endBefore(Flag.BY));
+        String by = tokens.text(tokens.valueStart(Flag.BY), tokens.valueEnd(Flag.BY));
         return new String[]{description, by};
     }
 
@@ -115,16 +101,12 @@ public class Parser {
     public static String[] parseEvent(String userInput) {
         assert userInput != null : "User input cannot be null";
         assert userInput.startsWith("event") : "Input should start with 'event'";
-        assert userInput.contains(" /from ") : "Event command must contain ' /from '";
-        assert userInput.contains(" /to ") : "Event command must contain ' /to '";
-        String[] parts = userInput.split(" /from ", 2);
-        assert parts.length == 2 : "Split should produce exactly 2 parts";
-        String description = parts[0].length() >= 6 ? parts[0].substring(6).trim() : "";
-        String fromTo = parts[1];
-        String[] fromToParts = fromTo.split(" /to ", 2);
-        assert fromToParts.length == 2 : "Split should produce exactly 2 parts";
-        String from = fromToParts[0].trim();
-        String to = fromToParts[1].trim();
+        CommandTokenizer tokens = tokenize(userInput);
+        assert tokens.hasFlag(Flag.FROM) : "Event command must contain ' /from '";
+        assert tokens.hasFlag(Flag.TO) : "Event command must contain ' /to '";
+        String description = tokens.text(tokens.argumentStart(), tokens.endBefore(Flag.FROM));
+        String from = tokens.text(tokens.valueStart(Flag.FROM), tokens.valueEnd(Flag.FROM));
+        String to = tokens.text(tokens.valueStart(Flag.TO), tokens.valueEnd(Flag.TO));
         return new String[]{description, from, to};
     }
 
@@ -133,13 +115,16 @@ public class Parser {
      * 
      * @param userInput the command input
      * @return the task index (0-based)
+     * @throws ArrayIndexOutOfBoundsException if nothing follows the command word
+     * @throws NumberFormatException if the argument is not a number
      */
     public static int parseTaskNumber(String userInput) {
-        assert userInput != null : "User input cannot be null";
-        String[] tokens = userInput.split(" ", 2);
-        // Let the method throw ArrayIndexOutOfBoundsException for invalid input
-        // to maintain expected test behavior
-        return Integer.parseInt(tokens[1].trim()) - 1;
+        CommandTokenizer tokens = tokenize(userInput);
+        if (!tokens.hasSeparator()) {
+            // Kept from the split-based parser, which failed this way without an argument
+            throw new ArrayIndexOutOfBoundsException("No task number given");
+        }
+        return tokens.parseInt(tokens.argumentStart(), tokens.argumentEnd()) - 1;
     }
 
     /**
@@ -151,7 +136,8 @@ public class Parser {
     public static String parseFindKeyword(String userInput) {
         assert userInput != null : "User input cannot be null";
         assert userInput.startsWith("find") : "Input should start with 'find'";
-        return userInput.length() >= 5 ? userInput.substring(5).trim() : "";
+        CommandTokenizer tokens = tokenize(userInput);
+        return tokens.text(tokens.argumentStart(), tokens.argumentEnd());
     }
 
     /**
@@ -163,13 +149,7 @@ public class Parser {
     public static String[] parseTagCommand(String userInput) {
         assert userInput != null : "User input cannot be null";
         assert userInput.startsWith("tag") : "Input should start with 'tag'";
-        String[] parts = userInput.split(" ", 3);
-        if (parts.length < 3) {
-            return new String[]{"", ""};
-        }
-        String taskNumber = parts[1].trim();
-        String tag = parts[2].trim();
-        return new String[]{taskNumber, tag};
+        return parseTaskNumberAndTag(userInput);
     }
 
     /**
@@ -181,12 +161,138 @@ public class Parser {
     public static String[] parseUntagCommand(String userInput) {
         assert userInput != null : "User input cannot be null";
         assert userInput.startsWith("untag") : "Input should start with 'untag'";
-        String[] parts = userInput.split(" ", 3);
-        if (parts.length < 3) {
+        return parseTaskNumberAndTag(userInput);
+    }
+
+    private static String[] parseTaskNumberAndTag(String userInput) {
+        CommandTokenizer tokens = tokenize(userInput);
+        if (tokens.restStart() >= tokens.argumentEnd()) {
             return new String[]{"", ""};
         }
-        String taskNumber = parts[1].trim();
-        String tag = parts[2].trim();
+        String taskNumber = tokens.text(tokens.argumentStart(), tokens.firstWordEnd());
+        String tag = tokens.text(tokens.restStart(), tokens.argumentEnd());
         return new String[]{taskNumber, tag};
     }
+
+    /**
+     * Checks whether a find keyword asks for a tag rather than text, as in {@code find #work}.
+     *
+     * @param keyword the find keyword
+     * @return true if the keyword names a tag
+     */
+    public static boolean isTagKeyword(String keyword) {
+        assert keyword != null : "Keyword cannot be null";
+        return keyword.startsWith(TAG_MARKER) && keyword.length() > TAG_MARKER.length();
+    }
+
+    /**
+     * Parses a tagged command into its query terms, as in {@code tagged work and #urgent}.
+     * Tags lose any leading {@code #} and operators are lower-cased.
+     *
+     * @param userInput the tagged command input
+     * @return the tags at even positions and operators at odd positions,
+     *         or an empty array if the query is missing or malformed
+     */
+    public static String[] parseTaggedQuery(String userInput) {
+        assert userInput != null : "User input cannot be null";
+        assert userInput.startsWith(Command.TAGGED.getKeyword()) : "Input should start with 'tagged'";
+        String query = userInput.substring(Command.TAGGED.getKeyword().length()).trim();
+        if (query.isEmpty()) {
+            return new String[0];
+        }
+        String[] terms = query.split("\\s+");
+        if (terms.length % 2 == 0) {
+            return new String[0];
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (i % 2 == 1) {
+                terms[i] = terms[i].toLowerCase();
+                if (!terms[i].equals(OPERATOR_AND) && !terms[i].equals(OPERATOR_OR)) {
+                    return new String[0];
+                }
+            } else if (terms[i].startsWith(TAG_MARKER)) {
+                terms[i] = terms[i].substring(TAG_MARKER.length());
+                if (terms[i].isEmpty()) {
+                    return new String[0];
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Parses a due command into the start and end of its range, as in {@code due 2024-12-01 2024-12-07 1200}
+     * or {@code due tomorrow to next fri 5pm}. With {@code to} between them, each end may be anything that
+     * {@link DateTimeParser} accepts, relative phrases included; without it, each end is a date optionally
+     * followed by a time as {@code HHmm}. The range starts at midnight and ends at 11:59 PM unless times are given.
+     *
+     * @param userInput the due command input
+     * @return array containing [from, to], or an empty array if the range is missing or malformed
+     * @throws IllegalArgumentException if a date is not in a supported format
+     */
+    public static LocalDateTime[] parseDueRange(String userInput) {
+        assert userInput != null : "User input cannot be null";
+        assert userInput.startsWith(Command.DUE.getKeyword()) : "Input should start with 'due'";
+        return parseDateRange(userInput.substring(Command.DUE.getKeyword().length()).trim());
+    }
+
+    /**
+     * Parses a conflicts command into the start and end of its range, as in {@code conflicts 2024-12-01 2024-12-07}.
+     * The range is written as for {@link #parseDueRange(String)}, and may be left out to cover every date.
+     *
+     * @param userInput the conflicts command input
+     * @return array containing [from, to], or an empty array if the range is malformed
+     * @throws IllegalArgumentException if a date is not in a supported format
+     */
+    public static LocalDateTime[] parseConflictsRange(String userInput) {
+        assert userInput != null : "User input cannot be null";
+        assert userInput.startsWith(Command.CONFLICTS.getKeyword()) : "Input should start with 'conflicts'";
+        String range = userInput.substring(Command.CONFLICTS.getKeyword().length()).trim();
+        if (range.isEmpty()) {
+            return new LocalDateTime[]{LocalDateTime.MIN, LocalDateTime.MAX};
+        }
+        return parseDateRange(range);
+    }
+
+    private static LocalDateTime[] parseDateRange(String range) {
+        if (range.isEmpty()) {
+            return new LocalDateTime[0];
+        }
+        String[] ends = RANGE_SEPARATOR.split(range, -1);
+        if (ends.length > 1) {
+            if (ends.length > 2 || ends[0].isEmpty() || ends[1].isEmpty()) {
+                return new LocalDateTime[0];
+            }
+            return new LocalDateTime[]{DateTimeParser.parse(ends[0], START_OF_DAY),
+                DateTimeParser.parse(ends[1], END_OF_DAY)};
+        }
+        String[] tokens = range.split("\\s+");
+        // The first date takes the following token as its time only if a date still follows it
+        int fromLength = tokens.length > 2 && isTime(tokens[1]) ? 2 : 1;
+        int toLength = tokens.length - fromLength;
+        if (toLength < 1 || toLength > 2 || (toLength == 2 && !isTime(tokens[fromLength + 1]))) {
+            return new LocalDateTime[0];
+        }
+        String from = fromLength == 2 ? tokens[0] + " " + tokens[1] : tokens[0];
+        String to = toLength == 2 ? tokens[fromLength] + " " + tokens[fromLength + 1] : tokens[fromLength];
+        return new LocalDateTime[]{DateTimeParser.parse(from, START_OF_DAY), DateTimeParser.parse(to, END_OF_DAY)};
+    }
+
+    /**
+     * Extracts the date from an agenda command, as in {@code agenda 2024-12-01}.
+     *
+     * @param userInput the agenda command input
+     * @return the date at midnight, or null if no date was given
+     * @throws IllegalArgumentException if the date is not in a supported format
+     */
+    public static LocalDateTime parseAgendaDate(String userInput) {
+        assert userInput != null : "User input cannot be null";
+        assert userInput.startsWith(Command.AGENDA.getKeyword()) : "Input should start with 'agenda'";
+        String date = userInput.substring(Command.AGENDA.getKeyword().length()).trim();
+        return date.isEmpty() ? null : DateTimeParser.parse(date, START_OF_DAY);
+    }
+
+    private static boolean isTime(String token) {
+        return token.length() == 4 && token.chars().allMatch(Character::isDigit);
+    }
 }
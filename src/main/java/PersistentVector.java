@@ -0,0 +1,293 @@
+package sofi;
+
+import java.util.Objects;
+
+/**
+ * Immutable sequence of slots, some of them present and holding a value, that is changed by making
+ * new versions which share all unchanged structure with the old ones.
+ *
+ * <p>Slots are kept in a trie with 32 children per node. A change copies only the nodes on the path to
+ * the slot it touches, so it costs O(log n) and every earlier version stays valid and unchanged.
+ * Each node also counts the present slots below it, which finds the slot of the k-th present value,
+ * and so a position in a list with gaps, in O(log n) as well.</p>
+ *
+ * @param <E> the type of the values
+ */
+public final class PersistentVector<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(new Leaf(), 0, 0);
+
+    private final Node root;
+    private final int shift;
+    private final int slotCount;
+
+    private PersistentVector(Node root, int shift, int slotCount) {
+        this.root = root;
+        this.shift = shift;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Returns the vector with no slots.
+     *
+     * @param <E> the type of the values
+     * @return the empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Returns the number of present slots.
+     *
+     * @return the number of present slots
+     */
+    public int size() {
+        return root.live();
+    }
+
+    /**
+     * Returns the number of slots, present or not.
+     *
+     * @return the number of slots
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Returns a version with one more slot, present and holding the given value.
+     *
+     * @param value the value, which may be null
+     * @return the new version
+     */
+    public PersistentVector<E> append(E value) {
+        Node newRoot = root;
+        int newShift = shift;
+        if (slotCount == capacity(shift)) {
+            Branch grown = new Branch();
+            grown.children[0] = root;
+            grown.counts[0] = root.live();
+            grown.live = root.live();
+            newRoot = grown;
+            newShift += BITS;
+        }
+        return new PersistentVector<>(update(newRoot, newShift, slotCount, value, true), newShift, slotCount + 1);
+    }
+
+    /**
+     * Returns a version in which a slot is present and holds a new value.
+     *
+     * @param slot the slot, which may have been removed
+     * @param value the value, which may be null
+     * @return the new version
+     */
+    public PersistentVector<E> set(int slot, E value) {
+        Objects.checkIndex(slot, slotCount);
+        return new PersistentVector<>(update(root, shift, slot, value, true), shift, slotCount);
+    }
+
+    /**
+     * Returns a version in which a slot is no longer present. The slot itself remains.
+     *
+     * @param slot the slot
+     * @return the new version, or this one if the slot was not present
+     */
+    public PersistentVector<E> remove(int slot) {
+        if (!isPresent(slot)) {
+            return this;
+        }
+        return new PersistentVector<>(update(root, shift, slot, null, false), shift, slotCount);
+    }
+
+    /**
+     * Returns whether a slot is present.
+     *
+     * @param slot the slot
+     * @return true if the slot is present
+     */
+    public boolean isPresent(int slot) {
+        Objects.checkIndex(slot, slotCount);
+        Leaf leaf = leafOf(slot);
+        return (leaf.present & (1 << (slot & MASK))) != 0;
+    }
+
+    /**
+     * Returns the value of a slot.
+     *
+     * @param slot the slot
+     * @return the value, or null if the slot is not present or holds null
+     */
+    @SuppressWarnings("unchecked")
+    public E getSlot(int slot) {
+        Objects.checkIndex(slot, slotCount);
+        return (E) leafOf(slot).values[slot & MASK];
+    }
+
+    /**
+     * Returns the slot of the present value at a position, counting only present slots.
+     *
+     * @param position the position, from 0
+     * @return the slot
+     */
+    public int slotAt(int position) {
+        Objects.checkIndex(position, size());
+        Node node = root;
+        int slot = 0;
+        int remaining = position;
+        for (int level = shift; level > 0; level -= BITS) {
+            Branch branch = (Branch) node;
+            int i = 0;
+            while (remaining >= branch.counts[i]) {
+                remaining -= branch.counts[i];
+                i++;
+            }
+            slot |= i << level;
+            node = branch.children[i];
+        }
+        int bits = ((Leaf) node).present;
+        for (int k = 0; k < remaining; k++) {
+            bits &= bits - 1;
+        }
+        return slot | Integer.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Returns the present value at a position, counting only present slots.
+     *
+     * @param position the position, from 0
+     * @return the value
+     */
+    public E get(int position) {
+        return getSlot(slotAt(position));
+    }
+
+    private Leaf leafOf(int slot) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = ((Branch) node).children[(slot >>> level) & MASK];
+        }
+        return (Leaf) node;
+    }
+
+    private static int capacity(int shift) {
+        return shift + BITS >= Integer.SIZE - 1 ? Integer.MAX_VALUE : 1 << (shift + BITS);
+    }
+
+    /**
+     * Copies the path to a slot, changing the slot at the end of it.
+     */
+    private static Node update(Node node, int level, int slot, Object value, boolean isPresent) {
+        int i = (slot >>> level) & MASK;
+        if (level == 0) {
+            Leaf leaf = node == null ? new Leaf() : ((Leaf) node).copy();
+            leaf.values[i] = value;
+            leaf.present = isPresent ? leaf.present | (1 << i) : leaf.present & ~(1 << i);
+            return leaf;
+        }
+        Branch branch = node == null ? new Branch() : ((Branch) node).copy();
+        Node child = update(branch.children[i], level - BITS, slot, value, isPresent);
+        branch.live += child.live() - branch.counts[i];
+        branch.counts[i] = child.live();
+        branch.children[i] = child;
+        return branch;
+    }
+
+    /**
+     * Builds a vector by appending to nodes that no other version shares yet, without copying them.
+     *
+     * @param <E> the type of the values
+     */
+    public static final class Builder<E> {
+        private Node root = new Leaf();
+        private int shift;
+        private int slotCount;
+
+        /**
+         * Appends a present slot.
+         *
+         * @param value the value, which may be null
+         * @return this builder
+         */
+        public Builder<E> add(E value) {
+            if (slotCount == capacity(shift)) {
+                Branch grown = new Branch();
+                grown.children[0] = root;
+                grown.counts[0] = root.live();
+                grown.live = root.live();
+                root = grown;
+                shift += BITS;
+            }
+            Node node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                Branch branch = (Branch) node;
+                int i = (slotCount >>> level) & MASK;
+                if (branch.children[i] == null) {
+                    branch.children[i] = level == BITS ? new Leaf() : new Branch();
+                }
+                branch.counts[i]++;
+                branch.live++;
+                node = branch.children[i];
+            }
+            Leaf leaf = (Leaf) node;
+            leaf.values[slotCount & MASK] = value;
+            leaf.present |= 1 << (slotCount & MASK);
+            slotCount++;
+            return this;
+        }
+
+        /**
+         * Returns the vector built so far. The builder must not be used afterwards.
+         *
+         * @return the vector
+         */
+        public PersistentVector<E> build() {
+            PersistentVector<E> built = new PersistentVector<>(root, shift, slotCount);
+            root = null;
+            return built;
+        }
+    }
+
+    private abstract static class Node {
+        abstract int live();
+    }
+
+    private static final class Leaf extends Node {
+        private final Object[] values = new Object[WIDTH];
+        private int present;
+
+        @Override
+        int live() {
+            return Integer.bitCount(present);
+        }
+
+        Leaf copy() {
+            Leaf copy = new Leaf();
+            System.arraycopy(values, 0, copy.values, 0, WIDTH);
+            copy.present = present;
+            return copy;
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final Node[] children = new Node[WIDTH];
+        private final int[] counts = new int[WIDTH];
+        private int live;
+
+        @Override
+        int live() {
+            return live;
+        }
+
+        Branch copy() {
+            Branch copy = new Branch();
+            System.arraycopy(children, 0, copy.children, 0, WIDTH);
+            System.arraycopy(counts, 0, copy.counts, 0, WIDTH);
+            copy.live = live;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package sofi;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves relative date phrases against the current time.
+ *
+ * <p>A phrase is a day, optionally followed by a time, or an offset from now:</p>
+ * <ul>
+ *     <li>{@code today}, {@code tomorrow}, {@code tmr}</li>
+ *     <li>a weekday such as {@code fri} or {@code friday}, meaning the next one on or after today,
+ *         or {@code next fri}, meaning the next one after today</li>
+ *     <li>a time after the day: {@code 3pm}, {@code 3:30pm}, {@code 15:30} or {@code 1530}</li>
+ *     <li>{@code in 2h}, {@code in 30 min}, {@code in 3 days}, {@code in 1w}</li>
+ * </ul>
+ *
+ * <p>Resolutions are memoized in a small LRU cache keyed by the normalized phrase and the current day,
+ * so a phrase that is repeated during bulk entry is parsed only once a day. Offsets in hours and minutes
+ * are cached as offsets and applied to the current time on every lookup.</p>
+ */
+public class RelativeDateParser {
+    private static final int CACHE_SIZE = 64;
+    private static final Resolution NOT_RELATIVE = new Resolution(null, null, 0);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String[] WEEKDAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    private final Clock clock;
+    private final LinkedHashMap<String, Resolution> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Constructs a parser that resolves phrases against the given clock.
+     *
+     * @param clock the clock that gives the current time
+     */
+    public RelativeDateParser(Clock clock) {
+        assert clock != null : "Clock cannot be null";
+        this.clock = clock;
+    }
+
+    /**
+     * Resolves a relative date phrase.
+     *
+     * @param text the phrase
+     * @param defaultTime the time to use if the phrase names a day without a time
+     * @return the date and time, or null if the text is not a relative date phrase
+     */
+    public LocalDateTime parse(String text, LocalTime defaultTime) {
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+        String phrase = normalize(text);
+        if (phrase.isEmpty() || !Character.isLetter(phrase.charAt(0))) {
+            return null;
+        }
+        String key = phrase + '|' + now.toLocalDate();
+        Resolution resolution;
+        synchronized (cache) {
+            resolution = cache.get(key);
+            if (resolution == null) {
+                resolution = resolve(phrase, now.toLocalDate());
+                cache.put(key, resolution);
+            }
+        }
+        if (resolution == NOT_RELATIVE) {
+            return null;
+        }
+        if (resolution.date == null) {
+            return now.plusMinutes(resolution.minutesFromNow);
+        }
+        return resolution.date.atTime(resolution.time != null ? resolution.time : defaultTime);
+    }
+
+    /**
+     * Returns the number of phrases in the cache.
+     *
+     * @return the number of cached phrases
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static Resolution resolve(String phrase, LocalDate today) {
+        String[] words = phrase.split(" ");
+        if (words[0].equals("in")) {
+            return resolveOffset(words, today);
+        }
+        LocalDate date;
+        int next = 1;
+        if (words[0].equals("today")) {
+            date = today;
+        } else if (words[0].equals("tomorrow") || words[0].equals("tmr")) {
+            date = today.plusDays(1);
+        } else if (words[0].equals("next") && words.length > 1 && parseWeekday(words[1]) != null) {
+            date = today.with(TemporalAdjusters.next(parseWeekday(words[1])));
+            next = 2;
+        } else if (parseWeekday(words[0]) != null) {
+            date = today.with(TemporalAdjusters.nextOrSame(parseWeekday(words[0])));
+        } else {
+            return NOT_RELATIVE;
+        }
+        if (next == words.length) {
+            return new Resolution(date, null, 0);
+        }
+        LocalTime time = next == words.length - 1 ? parseTime(words[next]) : null;
+        return time == null ? NOT_RELATIVE : new Resolution(date, time, 0);
+    }
+
+    /**
+     * Resolves {@code in <amount><unit>} or {@code in <amount> <unit>}.
+     */
+    private static Resolution resolveOffset(String[] words, LocalDate today) {
+        String amountAndUnit = words.length == 3 ? words[1] + words[2] : words.length == 2 ? words[1] : "";
+        int unitStart = 0;
+        while (unitStart < amountAndUnit.length() && Character.isDigit(amountAndUnit.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0 || unitStart > 6) {
+            return NOT_RELATIVE;
+        }
+        int amount = Integer.parseInt(amountAndUnit.substring(0, unitStart));
+        switch (amountAndUnit.substring(unitStart)) {
+            case "m": case "min": case "mins": case "minute": case "minutes":
+                return new Resolution(null, null, amount);
+            case "h": case "hr": case "hrs": case "hour": case "hours":
+                return new Resolution(null, null, amount * 60L);
+            case "d": case "day": case "days":
+                return new Resolution(today.plusDays(amount), null, 0);
+            case "w": case "wk": case "wks": case "week": case "weeks":
+                return new Resolution(today.plusWeeks(amount), null, 0);
+            default:
+                return NOT_RELATIVE;
+        }
+    }
+
+    private static DayOfWeek parseWeekday(String word) {
+        if (word.length() < 3) {
+            return null;
+        }
+        for (int i = 0; i < WEEKDAY_NAMES.length; i++) {
+            if (word.startsWith(WEEKDAY_NAMES[i])) {
+                DayOfWeek day = DayOfWeek.of(i + 1);
+                String fullName = day.name().toLowerCase(Locale.ROOT);
+                // Accept the full name or any prefix of it, such as tues or thurs
+                return fullName.startsWith(word) ? day : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a time written as {@code 3pm}, {@code 3:30pm}, {@code 15:30} or {@code 1530}.
+     *
+     * @return the time, or null if the word is not a time
+     */
+    private static LocalTime parseTime(String word) {
+        boolean isPm = word.endsWith("pm");
+        boolean isAm = word.endsWith("am");
+        String digits = isPm || isAm ? word.substring(0, word.length() - 2) : word;
+        int colon = digits.indexOf(':');
+        int hour;
+        int minute;
+        try {
+            if (colon >= 0) {
+                hour = Integer.parseInt(digits.substring(0, colon));
+                minute = digits.length() - colon == 3 ? Integer.parseInt(digits.substring(colon + 1)) : -1;
+            } else if (digits.length() == 4 && !isPm && !isAm) {
+                hour = Integer.parseInt(digits.substring(0, 2));
+                minute = Integer.parseInt(digits.substring(2));
+            } else if (digits.length() <= 2 && (isPm || isAm)) {
+                hour = Integer.parseInt(digits);
+                minute = 0;
+            } else {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (isPm || isAm) {
+            if (hour < 1 || hour > 12) {
+                return null;
+            }
+            hour = hour % 12 + (isPm ? 12 : 0);
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return null;
+        }
+        return LocalTime.of(hour, minute);
+    }
+
+    /**
+     * What a phrase means on a given day: a date with an optional time, or an offset from now when the
+     * date is null.
+     */
+    private static class Resolution {
+        private final LocalDate date;
+        private final LocalTime time;
+        private final long minutesFromNow;
+
+        Resolution(LocalDate date, LocalTime time, long minutesFromNow) {
+            this.date = date;
+            this.time = time;
+            this.minutesFromNow = minutesFromNow;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package sofi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a text snapshot by parsing newline-aligned chunks of the file in parallel.
+ *
+ * <p>The file is cut into chunks that each end on a line boundary. A first parallel pass counts
+ * the lines of every chunk, so each chunk knows the number of its first line and warnings keep
+ * their exact line numbers. A second parallel pass parses every line of every chunk. The results
+ * are then merged in file order on the calling thread, which also verifies the checksum blocks,
+ * since a block may span two chunks. Tasks are therefore numbered exactly as a single-threaded
+ * read would number them.</p>
+ */
+public class SnapshotReader {
+    /** Chunks smaller than this are not worth handing to another thread. */
+    static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final byte KIND_TASK = 0;
+    private static final byte KIND_BLANK = 1;
+    private static final byte KIND_SKIPPED = 2;
+    private static final byte KIND_CHECKSUM = 3;
+    private static final byte KIND_NEXT_ID = 4;
+
+    private final byte[] data;
+    private final Chunk[] chunks;
+
+    private SnapshotReader(byte[] data, int chunkCount) {
+        this.data = data;
+        this.chunks = split(data, chunkCount);
+    }
+
+    /**
+     * Reads a snapshot, using as many chunks as the size of the file and the common pool warrant.
+     *
+     * @param data the whole snapshot file
+     * @param tasks the list that loaded tasks are appended to
+     * @param report the report that skipped lines and damaged blocks are recorded in
+     * @return the next unused task id recorded in the snapshot, or 0 if it records none
+     */
+    public static int read(byte[] data, List<Task> tasks, LoadReport report) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkCount = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, data.length / MIN_CHUNK_BYTES);
+        return read(data, tasks, report, chunkCount, pool);
+    }
+
+    /**
+     * Reads a snapshot split into at most the given number of chunks.
+     *
+     * @param data the whole snapshot file
+     * @param tasks the list that loaded tasks are appended to
+     * @param report the report that skipped lines and damaged blocks are recorded in
+     * @param chunkCount the number of chunks to aim for; 1 or less reads on the calling thread
+     * @param pool the pool that parses the chunks
+     * @return the next unused task id recorded in the snapshot, or 0 if it records none
+     */
+    public static int read(byte[] data, List<Task> tasks, LoadReport report, int chunkCount, ForkJoinPool pool) {
+        assert data != null : "Data cannot be null";
+        SnapshotReader reader = new SnapshotReader(data, Math.max(chunkCount, 1));
+        if (reader.chunks.length == 1) {
+            reader.chunks[0].countLines();
+            reader.chunks[0].parse();
+        } else {
+            pool.invoke(new CountTask(reader.chunks, 0, reader.chunks.length));
+            int firstLine = 1;
+            for (Chunk chunk : reader.chunks) {
+                chunk.firstLine = firstLine;
+                firstLine += chunk.lineCount;
+            }
+            pool.invoke(new ParseTask(reader.chunks, 0, reader.chunks.length));
+        }
+        return reader.merge(tasks, report);
+    }
+
+    /**
+     * Cuts the data into roughly equal chunks whose boundaries fall just after a newline.
+     */
+    private static Chunk[] split(byte[] data, int chunkCount) {
+        ArrayList<Chunk> chunks = new ArrayList<>(chunkCount);
+        int start = 0;
+        for (int i = 1; i <= chunkCount && start < data.length; i++) {
+            int end = i == chunkCount ? data.length : (int) ((long) data.length * i / chunkCount);
+            while (end < data.length && end > start && data[end - 1] != '\n') {
+                end++;
+            }
+            if (end > start) {
+                chunks.add(new Chunk(data, start, end));
+                start = end;
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(data, 0, data.length));
+        }
+        return chunks.toArray(new Chunk[0]);
+    }
+
+    /**
+     * Walks the parsed lines in file order and keeps the tasks of every block whose checksum matches,
+     * exactly as the single-threaded reader did.
+     */
+    private int merge(List<Task> tasks, LoadReport report) {
+        int recordedNextId = 0;
+        CRC32C crc = new CRC32C();
+        ArrayList<Task> blockTasks = new ArrayList<>();
+        int blockLines = 0;
+        int blockStartLine = 1;
+        for (Chunk chunk : chunks) {
+            int nextWarning = 0;
+            List<String> warnings = chunk.report.getWarnings();
+            for (int i = 0; i < chunk.lineCount; i++) {
+                int lineNumber = chunk.firstLine + i;
+                int start = chunk.lineStarts[i];
+                int end = chunk.lineEnds[i];
+                if (chunk.kinds[i] == KIND_CHECKSUM) {
+                    String line = new String(data, start, end - start, StandardCharsets.UTF_8);
+                    if (isBlockValid(line, blockLines, crc.getValue())) {
+                        tasks.addAll(blockTasks);
+                        report.recordVerifiedBlock();
+                    } else {
+                        report.recordCorruptBlock(blockStartLine, lineNumber - 1, blockLines);
+                    }
+                    blockTasks.clear();
+                    blockLines = 0;
+                    blockStartLine = lineNumber + 1;
+                    crc.reset();
+                    continue;
+                }
+                crc.update(data, start, end - start);
+                crc.update('\n');
+                blockLines++;
+                if (chunk.kinds[i] == KIND_TASK) {
+                    blockTasks.add(chunk.tasks[i]);
+                } else if (chunk.kinds[i] == KIND_SKIPPED) {
+                    report.recordDroppedLine();
+                    report.addWarning(warnings.get(nextWarning++));
+                } else if (chunk.kinds[i] == KIND_NEXT_ID) {
+                    recordedNextId = Math.max(recordedNextId, parseNextId(start, end));
+                }
+            }
+        }
+        tasks.addAll(blockTasks);
+        report.recordUnverifiedLines(blockLines);
+        return recordedNextId;
+    }
+
+    private int parseNextId(int start, int end) {
+        String value = new String(data, start, end - start, StandardCharsets.UTF_8).trim()
+                .substring(Storage.NEXT_ID_LINE_PREFIX.length()).trim();
+        try {
+            return Math.max(Integer.parseInt(value), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isBlockValid(String checksumLine, int blockLines, long crc) {
+        String[] parts = checksumLine.substring(Storage.CHECKSUM_LINE_PREFIX.length()).trim().split(" ");
+        return parts.length == 2 && parts[0].equals(String.valueOf(blockLines))
+                && parts[1].equals(Checksum.toHex(crc));
+    }
+
+    /**
+     * A newline-aligned range of the file and the results of parsing it.
+     * Each chunk collects its skipped-line warnings in its own report, so chunks never share state.
+     */
+    private static class Chunk {
+        private final byte[] data;
+        private final int start;
+        private final int end;
+        private final LoadReport report = new LoadReport();
+        private int firstLine = 1;
+        private int lineCount;
+        private int[] lineStarts;
+        private int[] lineEnds;
+        private byte[] kinds;
+        private Task[] tasks;
+
+        Chunk(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        void countLines() {
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                if (data[i] == '\n') {
+                    count++;
+                }
+            }
+            if (end > start && data[end - 1] != '\n') {
+                count++; // Last line of a file without a final newline
+            }
+            lineCount = count;
+        }
+
+        void parse() {
+            lineStarts = new int[lineCount];
+            lineEnds = new int[lineCount];
+            kinds = new byte[lineCount];
+            tasks = new Task[lineCount];
+            int lineStart = start;
+            for (int i = 0; i < lineCount; i++) {
+                int newline = lineStart;
+                while (newline < end && data[newline] != '\n') {
+                    newline++;
+                }
+                int lineEnd = newline > lineStart && data[newline - 1] == '\r' ? newline - 1 : newline;
+                lineStarts[i] = lineStart;
+                lineEnds[i] = lineEnd;
+                kinds[i] = parseLine(i, lineStart, lineEnd);
+                lineStart = newline + 1;
+            }
+        }
+
+        private byte parseLine(int index, int lineStart, int lineEnd) {
+            if (lineEnd - lineStart >= 2 && data[lineStart] == '#' && data[lineStart + 1] == ' ') {
+                return KIND_CHECKSUM;
+            }
+            String line = new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).trim();
+            if (line.isEmpty()) {
+                return KIND_BLANK;
+            } else if (line.startsWith(Storage.NEXT_ID_LINE_PREFIX)) {
+                return KIND_NEXT_ID;
+            }
+            tasks[index] = Storage.parseLine(line, firstLine + index, report);
+            return tasks[index] != null ? KIND_TASK : KIND_SKIPPED;
+        }
+    }
+
+    private static class CountTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        CountTask(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].countLines();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CountTask(chunks, from, middle), new CountTask(chunks, middle, to));
+        }
+    }
+
+    private static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].parse();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParseTask(chunks, from, middle), new ParseTask(chunks, middle, to));
+        }
+    }
+}
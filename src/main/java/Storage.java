@@ -3,38 +3,216 @@ package sofi;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
 
 /**
  * Handles file I/O operations for persisting task data.
  * Provides methods to load tasks from file and save tasks to file.
+ * In journal mode, mutations are appended to a {@link Journal} and periodically
+ * folded back into the snapshot file by a background compaction.
+ * Snapshots are written to a temporary file, synced and atomically renamed into place,
+ * and every block of lines is followed by a checksum line that {@link #load()} verifies.
  */
 public class Storage {
+    /**
+     * On-disk formats for the snapshot file.
+     * The journal always uses the text record format.
+     */
+    public enum Format {
+        /** Human-readable, pipe-delimited lines. */
+        TEXT,
+        /** Compact binary records, see {@link BinaryTaskCodec}. */
+        BINARY,
+        /** Fixed-width records that are memory-mapped and read on demand, see {@link MappedTaskStore}. */
+        MAPPED
+    }
+
+    /** Journal size after which a compaction into a new snapshot is started. */
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String READY_INFIX = ".ready.";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+    // A snapshot that could not replace the data file while it was mapped; it is switched in on the next load
+    private static final String PENDING_SUFFIX = ".pending";
+    // A new checkpoint of the history is started after this many compactions' worth of changes
+    private static final int COMPACTIONS_PER_CHECKPOINT = 4;
+
+    // Each block of snapshot lines is followed by "# <line count> <checksum>"
+    static final String CHECKSUM_LINE_PREFIX = "# ";
+    // The first line records the next unused task id, so ids of deleted tasks are never handed out again
+    static final String NEXT_ID_LINE_PREFIX = "#next-id ";
+    private static final int LINES_PER_BLOCK = 256;
+
     private final String filePath;
+    private final boolean isJournalEnabled;
+    private final long compactionThresholdBytes;
+    private final Journal journal;
+    private final HistoryArchive archive;
+    private Format format = Format.TEXT;
+    private int nextTaskId = 1;
+    private WriteBehindQueue writeBehind;
+    private long writeBehindIntervalMillis;
+    private int writeBehindBatchSize;
+    private ExecutorService compactor;
+    private volatile boolean isCompacting;
+    private volatile boolean hasCompactionFailed;
+    private volatile boolean isDataFileMapped;
+    private LoadReport lastLoadReport = new LoadReport();
+    private long lastSequence;
+    private long baseSequence;
     private static final DateTimeFormatter STORAGE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+    private static final long MINUTES_PER_DAY = 24 * 60;
+    private static final long DAYS_PER_ERA = 146097;
+    private static final long DAYS_0000_TO_1970 = 719528;
 
     /**
      * Constructs a Storage instance with the specified file path.
-     * 
+     *
      * @param filePath the path to the file for storing tasks
      */
     public Storage(String filePath) {
+        this(filePath, false);
+    }
+
+    /**
+     * Constructs a Storage instance that optionally persists mutations through a journal.
+     *
+     * @param filePath the path to the file for storing tasks
+     * @param isJournalEnabled true to append mutations to a journal instead of rewriting the file
+     */
+    public Storage(String filePath, boolean isJournalEnabled) {
+        this(filePath, isJournalEnabled, DEFAULT_COMPACTION_THRESHOLD_BYTES);
+    }
+
+    /**
+     * Constructs a Storage instance with a custom journal compaction threshold.
+     *
+     * @param filePath the path to the file for storing tasks
+     * @param isJournalEnabled true to append mutations to a journal instead of rewriting the file
+     * @param compactionThresholdBytes the journal size that triggers a background compaction
+     */
+    public Storage(String filePath, boolean isJournalEnabled, long compactionThresholdBytes) {
         assert filePath != null : "File path cannot be null";
         assert !filePath.trim().isEmpty() : "File path cannot be empty";
+        assert compactionThresholdBytes > 0 : "Compaction threshold must be positive";
         this.filePath = filePath;
+        this.isJournalEnabled = isJournalEnabled;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        this.journal = isJournalEnabled ? new Journal(filePath) : null;
+        this.archive = isJournalEnabled
+                ? new HistoryArchive(filePath, compactionThresholdBytes * COMPACTIONS_PER_CHECKPOINT) : null;
+    }
+
+    /**
+     * Returns whether mutations are persisted through the journal.
+     *
+     * @return true if journal mode is enabled
+     */
+    public boolean isJournalEnabled() {
+        return isJournalEnabled;
+    }
+
+    /**
+     * Selects the format used when writing snapshots.
+     * Loading detects the format of the existing file, so switching formats needs no conversion step.
+     *
+     * @param format the snapshot format
+     */
+    public void setFormat(Format format) {
+        assert format != null : "Format cannot be null";
+        this.format = format;
+    }
+
+    /**
+     * Rewrites a data file, including any journal next to it, in the given format.
+     *
+     * @param sourcePath the data file to read
+     * @param targetPath the data file to write; may be the same as {@code sourcePath}
+     * @param format the format to write
+     * @return the number of tasks converted
+     * @throws IOException if either file cannot be read or written
+     */
+    public static int convert(String sourcePath, String targetPath, Format format) throws IOException {
+        Storage source = new Storage(sourcePath, true);
+        boolean isInPlace = new File(sourcePath).getAbsoluteFile().equals(new File(targetPath).getAbsoluteFile());
+        // A file that is replaced must not be mapped, or the new one would only be switched in on the next load
+        List<Task> tasks = isInPlace ? source.load() : source.loadLazily();
+        if (isInPlace) {
+            // Saving through the journal-mode storage also retires the journal it just replayed
+            source.setFormat(format);
+            source.save(tasks);
+            source.close();
+        } else {
+            source.close();
+            Storage target = new Storage(targetPath);
+            target.setFormat(format);
+            target.save(tasks);
+        }
+        return tasks.size();
+    }
+
+    /**
+     * Routes journal appends through a background {@link WriteBehindQueue} so that
+     * recording a mutation no longer waits for the disk. Must be called before {@link #load()}.
+     *
+     * @param flushIntervalMillis the longest time a mutation waits before it is written
+     * @param maxBatchSize the number of pending mutations that triggers an immediate write
+     */
+    public void enableWriteBehind(long flushIntervalMillis, int maxBatchSize) {
+        assert isJournalEnabled : "Write-behind requires journal mode";
+        assert writeBehind == null : "Write-behind must be enabled before loading";
+        this.writeBehindIntervalMillis = flushIntervalMillis;
+        this.writeBehindBatchSize = maxBatchSize;
     }
 
     /**
      * Loads tasks from the storage file.
-     * 
+     * In journal mode, the snapshot is loaded first and the journal is replayed on top of it.
+     * Lines that are damaged or fail checksum verification are skipped and described in
+     * the report returned by {@link #getLastLoadReport()}.
+     *
      * @return ArrayList of loaded tasks
      * @throws IOException if there is an error reading the file
      */
     public ArrayList<Task> load() throws IOException {
+        List<Task> tasks = loadTasks(false);
+        return tasks instanceof ArrayList ? (ArrayList<Task>) tasks : new ArrayList<>(tasks);
+    }
+
+    /**
+     * Loads tasks like {@link #load()}, except that a data file in the {@link Format#MAPPED} format
+     * is mapped into memory and its tasks are only built when they are first read. Since a mapped file cannot
+     * be replaced on every platform, later saves and compactions of this storage leave their snapshot beside
+     * the data file, and the next load switches it in.
+     *
+     * @return the loaded tasks
+     * @throws IOException if there is an error reading the file
+     */
+    public List<Task> loadLazily() throws IOException {
+        return loadTasks(true);
+    }
+
+    private List<Task> loadTasks(boolean isLazy) throws IOException {
         File file = new File(filePath);
         File parent = file.getParentFile();
         if (parent != null && !parent.exists()) {
@@ -42,84 +220,540 @@ public class Storage {
                 throw new IOException("Failed to create data directory: " + parent.getAbsolutePath());
             }
         }
-        if (!file.exists()) {
-            if (!file.createNewFile()) {
-                throw new IOException("Failed to create data file: " + file.getAbsolutePath());
+        Path pending = Path.of(filePath + PENDING_SUFFIX);
+        if (Files.exists(pending)) {
+            // Nothing is mapped yet, so the snapshot left by an earlier session can replace the data file now
+            move(pending, file.toPath());
+        }
+        if (isJournalEnabled) {
+            recoverInterruptedCompaction();
+        }
+
+        if (!file.exists() && !file.createNewFile()) {
+            throw new IOException("Failed to create data file: " + file.getAbsolutePath());
+        }
+        LoadReport report = new LoadReport();
+        List<Task> tasks = readTasks(file, isLazy, isJournalEnabled ? journal.listSegments() : null, Long.MAX_VALUE,
+                report);
+        report.setTasksLoaded(tasks.size());
+        if (report.hasProblems() && file.length() > 0) {
+            // Keep the damaged file around, since the next save replaces it
+            Path backup = Path.of(filePath + CORRUPT_SUFFIX);
+            Files.copy(file.toPath(), backup, StandardCopyOption.REPLACE_EXISTING);
+            report.setBackupPath(backup.toString());
+        }
+        lastLoadReport = report;
+
+        if (isJournalEnabled) {
+            journal.open(Journal.sequenceRecord(lastSequence));
+            if (writeBehindBatchSize > 0) {
+                writeBehind = new WriteBehindQueue(journal, writeBehindIntervalMillis, writeBehindBatchSize);
+            }
+            // Sessions that each change a little still add up, so check what earlier ones left behind
+            compactIfNeeded(tasks);
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads the data file and, in journal mode, replays the journal on top of it up to a given change.
+     */
+    private List<Task> readTasks(File file, boolean isLazy, List<File> journalFiles, long untilSequence,
+            LoadReport report) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        int recordedNextId = 0;
+        if (file.exists()) {
+            switch (detectFormat(file)) {
+                case BINARY:
+                    recordedNextId = BinaryTaskCodec.decode(Files.readAllBytes(file.toPath()),
+                            (ArrayList<Task>) tasks, report);
+                    break;
+                case MAPPED:
+                    MappedTaskStore store = isLazy ? MappedTaskStore.open(file.toPath())
+                            : MappedTaskStore.read(file.toPath());
+                    isDataFileMapped |= isLazy;
+                    recordedNextId = store.getNextId();
+                    LazyTaskList mapped = new LazyTaskList(store);
+                    if (isLazy) {
+                        tasks = mapped;
+                    } else {
+                        tasks.addAll(mapped);
+                    }
+                    break;
+                default:
+                    // Blocks are verified against their checksum lines; lines after the last
+                    // checksum line, and files written before checksums existed, load unverified
+                    recordedNextId = SnapshotReader.read(Files.readAllBytes(file.toPath()), tasks, report);
+                    break;
+            }
+        }
+        nextTaskId = Math.max(recordedNextId, 1);
+        assignIds(tasks);
+
+        if (isJournalEnabled) {
+            List<Task> replayed = tasks;
+            boolean hasLostTasks = report.getDroppedLines() > 0;
+            replayJournal(journalFiles, untilSequence, report, (entry, lineNumber, source) -> {
+                if (!applyEntry(entry, lineNumber, source, replayed, hasLostTasks, report)) {
+                    return false;
+                }
+                report.recordReplayedRecord();
+                return true;
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Rebuilds the task list as it was right after a given change, by replaying the history and the journal
+     * on top of the latest checkpoint before it. No file is changed. Saves and compactions keep the changes
+     * they fold into the data file in the {@link HistoryArchive}, so every change since its oldest checkpoint
+     * can be reached; earlier ones cannot.
+     *
+     * @param sequence the number of the change
+     * @return the tasks as they were after that change
+     * @throws IOException if the files cannot be read or the change is not recorded
+     */
+    public ArrayList<Task> loadAt(long sequence) throws IOException {
+        if (!isJournalEnabled) {
+            throw new IOException("Changes are only recorded in journal mode");
+        }
+        flush();
+        awaitCompaction();
+        long checkpoint = archive.checkpointAtOrBefore(sequence);
+        long oldest = archive.getOldestCheckpoint();
+        if (checkpoint < 0 && oldest >= 0) {
+            throw new IOException("Change #" + sequence + " was made before history was kept; the oldest change"
+                    + " that can be shown is #" + oldest);
+        }
+        Storage replay = new Storage(filePath, true, compactionThresholdBytes);
+        File start = checkpoint >= 0 ? archive.checkpointFile(checkpoint) : currentDataFile().toFile();
+        List<File> files = new ArrayList<>(archive.historyFrom(checkpoint));
+        files.addAll(journal.listSegments());
+        List<Task> tasks = replay.readTasks(start, false, files, sequence, new LoadReport());
+        if (sequence < replay.baseSequence) {
+            throw new IOException("Change #" + sequence + " was made before history was kept; the oldest change"
+                    + " that can be shown is #" + replay.baseSequence);
+        } else if (sequence > replay.lastSequence) {
+            throw new IOException("No change #" + sequence + " was recorded; the last is #" + replay.lastSequence);
+        }
+        return new ArrayList<>(tasks);
+    }
+
+    /**
+     * Returns every recorded change, from the history and the journal, oldest first.
+     *
+     * @return the recorded changes, or an empty list if the journal is not enabled
+     * @throws IOException if the history or the journal cannot be read
+     */
+    public List<JournalEntry> readHistory() throws IOException {
+        ArrayList<JournalEntry> history = new ArrayList<>();
+        if (!isJournalEnabled) {
+            return history;
+        }
+        flush();
+        awaitCompaction();
+        Storage replay = new Storage(filePath, true, compactionThresholdBytes);
+        List<File> files = new ArrayList<>(archive.historyFrom(-1));
+        files.addAll(journal.listSegments());
+        replay.replayJournal(files, Long.MAX_VALUE, new LoadReport(),
+                (entry, lineNumber, source) -> history.add(entry));
+        return history;
+    }
+
+    /**
+     * Returns the number of the last change recorded in the journal.
+     *
+     * @return the sequence number, or 0 if no change has been recorded
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gives every loaded task that has no id yet, such as those from files written before ids
+     * existed, the next unused id in file order, so the same file always yields the same ids.
+     */
+    private void assignIds(List<Task> tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            nextTaskId = Math.max(nextTaskId, LazyTaskList.peekId(tasks, i) + 1);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (LazyTaskList.peekId(tasks, i) == 0) {
+                tasks.get(i).setId(nextTaskId++);
             }
-            return new ArrayList<>(); // Return empty list for new file
         }
+    }
 
-        ArrayList<Task> tasks = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+    private void assignId(Task task) {
+        if (task.getId() == 0) {
+            task.setId(nextTaskId++);
+        } else {
+            nextTaskId = Math.max(nextTaskId, task.getId() + 1);
+        }
+    }
+
+    /**
+     * Returns the id that the next new task should get: one more than any id that was ever
+     * stored, including ids of tasks that have since been deleted.
+     *
+     * @return the next unused task id
+     */
+    public int getNextTaskId() {
+        return nextTaskId;
+    }
+
+    private static Format detectFormat(File file) throws IOException {
+        byte[] header = new byte[BinaryTaskCodec.MAGIC.length];
+        int length;
+        try (FileInputStream in = new FileInputStream(file)) {
+            length = in.readNBytes(header, 0, header.length);
+        }
+        if (BinaryTaskCodec.hasMagic(header, length)) {
+            return Format.BINARY;
+        } else if (MappedTaskStore.hasMagic(header, length)) {
+            return Format.MAPPED;
+        }
+        return Format.TEXT;
+    }
+
+    /**
+     * Returns the report of the most recent {@link #load()}.
+     *
+     * @return the load report
+     */
+    public LoadReport getLastLoadReport() {
+        return lastLoadReport;
+    }
+
+    /**
+     * Parses one line of the snapshot format into a task.
+     * Safe to call from several threads as long as each uses its own report.
+     *
+     * @param line the trimmed, non-empty line
+     * @param lineNumber the line number used in warnings
+     * @param report the report that skipped lines are recorded in
+     * @return the parsed task, or null if the line was skipped
+     */
+    static Task parseLine(String line, int lineNumber, LoadReport report) {
+        try {
+            String[] parts = line.split("\\s*\\|\\s*");
+            // Lines written before task ids existed start directly with the task type
+            int idFields = isTaskId(parts[0]) ? 1 : 0;
+            if (parts.length < idFields + 3) {
+                skipLine(report, "Skipping malformed line " + lineNumber + ": " + line);
+                return null; // Skip malformed lines
+            }
+            String type = parts[idFields];
+            boolean isDone = "1".equals(parts[idFields + 1]);
+            String description = parts[idFields + 2];
+            Task task;
+            int firstTagIndex;
+            switch (type) {
+                case "T":
+                    task = new Todo(description);
+                    firstTagIndex = idFields + 3;
+                    break;
+                case "D":
+                    if (parts.length < idFields + 4) {
+                        skipLine(report, "Skipping incomplete deadline on line " + lineNumber + ": " + line);
+                        return null;
+                    }
+                    task = new Deadline(description, parts[idFields + 3]);
+                    firstTagIndex = idFields + 4;
+                    break;
+                case "E":
+                    if (parts.length < idFields + 5) {
+                        skipLine(report, "Skipping incomplete event on line " + lineNumber + ": " + line);
+                        return null;
+                    }
+                    task = new Event(description, parts[idFields + 3], parts[idFields + 4]);
+                    firstTagIndex = idFields + 5;
+                    break;
+                default:
+                    skipLine(report, "Skipping unknown task type on line " + lineNumber + ": " + line);
+                    return null;
+            }
+            if (isDone) {
+                task.markAsDone();
+            }
+            if (idFields == 1) {
+                task.setId(Integer.parseInt(parts[0]));
+            }
+
+            // Load tags if they exist (the fields after the task's own fields)
+            for (int i = firstTagIndex; i < parts.length; i++) {
+                if (!parts[i].trim().isEmpty()) {
+                    task.addTag(parts[i].trim());
+                }
+            }
+            return task;
+        } catch (Exception e) {
+            skipLine(report, "Error processing line " + lineNumber + ": " + line + " - " + e.getMessage());
+            return null; // Skip problematic lines but continue loading
+        }
+    }
+
+    private static boolean isTaskId(String field) {
+        if (field.isEmpty() || field.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) < '0' || field.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return Integer.parseInt(field) > 0;
+    }
+
+    private static void skipLine(LoadReport report, String warning) {
+        report.recordDroppedLine();
+        report.addWarning(warning);
+    }
+
+    /**
+     * Reads journal files in order, verifying the checksum of every record, and hands each change
+     * up to {@code untilSequence} to a handler. Records refer to tasks by position, so reading stops at
+     * the first damaged record: anything after it could otherwise be applied to the wrong task.
+     */
+    private void replayJournal(List<File> files, long untilSequence, LoadReport report, ChangeHandler handler)
+            throws IOException {
+        lastSequence = 0;
+        baseSequence = -1;
+        for (File segment : files) {
+            if (!replaySegment(segment, untilSequence, report, handler)) {
+                break;
+            }
+        }
+        if (baseSequence < 0) {
+            baseSequence = lastSequence;
+        }
+    }
+
+    /**
+     * Replays one journal segment.
+     *
+     * @return true if the whole segment was replayed
+     */
+    private boolean replaySegment(File segment, long untilSequence, LoadReport report, ChangeHandler handler)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(segment, StandardCharsets.UTF_8))) {
             String line;
             int lineNumber = 0;
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                
-                try {
-                    String[] parts = line.split("\\s*\\|\\s*");
-                    if (parts.length < 3) {
-                        System.err.println("Warning: Skipping malformed line " + lineNumber + ": " + line);
-                        continue; // Skip malformed lines
-                    }
-                String type = parts[0];
-                boolean isDone = "1".equals(parts[1]);
-                String description = parts[2];
-                Task task;
-                switch (type) {
-                    case "T":
-                        task = new Todo(description);
-                        break;
-                    case "D":
-                        if (parts.length < 4) {
-                            System.err.println("Warning: Skipping incomplete deadline on line " + lineNumber + ": " + line);
-                            continue;
-                        }
-                        task = new Deadline(description, parts[3]);
-                        break;
-                    case "E":
-                        if (parts.length < 5) {
-                            System.err.println("Warning: Skipping incomplete event on line " + lineNumber + ": " + line);
-                            continue;
-                        }
-                        task = new Event(description, parts[3], parts[4]);
-                        break;
-                    default:
-                        System.err.println("Warning: Skipping unknown task type on line " + lineNumber + ": " + line);
-                        continue;
+                if (line.trim().isEmpty()) continue;
+                String record = Journal.verifiedRecord(line);
+                if (record == null) {
+                    report.recordJournalTruncated("Damaged change on line " + lineNumber + " of " + segment.getName()
+                            + "; it and any later changes were not applied");
+                    return false;
                 }
-                if (isDone) {
-                    task.markAsDone();
+                if (record.startsWith(Journal.RECORD_SEQUENCE + Journal.RECORD_DELIMITER)) {
+                    // Starts a segment with the number of the last change before it
+                    lastSequence = Math.max(lastSequence, Long.parseLong(
+                            record.substring(Journal.RECORD_SEQUENCE.length() + Journal.RECORD_DELIMITER.length())));
+                    continue;
                 }
-                
-                // Load tags if they exist (parts[5] and beyond)
-                for (int i = 5; i < parts.length; i++) {
-                    if (!parts[i].trim().isEmpty()) {
-                        task.addTag(parts[i].trim());
-                    }
+                JournalEntry entry = parseRecord(record.trim(), lineNumber, segment.getName(), report);
+                if (entry == null) {
+                    continue;
                 }
-                    
-                    tasks.add(task);
-                } catch (Exception e) {
-                    System.err.println("Warning: Error processing line " + lineNumber + ": " + line + " - " + e.getMessage());
-                    continue; // Skip problematic lines but continue loading
+                if (entry.getSequence() <= lastSequence) {
+                    // Archived again after a compaction was interrupted
+                    continue;
+                }
+                if (entry.getSequence() > untilSequence) {
+                    return false;
+                }
+                if (baseSequence < 0) {
+                    baseSequence = lastSequence;
+                }
+                lastSequence = entry.getSequence();
+                if (!handler.apply(entry, lineNumber, segment.getName())) {
+                    return false;
                 }
             }
+            return true;
         } catch (IOException e) {
-            throw new IOException("Error reading data file: " + e.getMessage(), e);
+            throw new IOException("Error reading journal: " + e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Error reading journal: bad sequence in " + segment.getName(), e);
         }
-        return tasks;
+    }
+
+    /**
+     * Parses a record into a change. A record written before changes were numbered takes the number after
+     * the previous change.
+     *
+     * @return the change, or null if the record was skipped
+     */
+    private JournalEntry parseRecord(String record, int lineNumber, String source, LoadReport report) {
+        long sequence = lastSequence + 1;
+        Instant time = null;
+        int delimiter = record.indexOf(Journal.RECORD_DELIMITER);
+        int kindStart = 0;
+        try {
+            if (!record.isEmpty() && Character.isDigit(record.charAt(0))) {
+                int sequenceEnd = record.indexOf(' ');
+                int timeEnd = record.indexOf(' ', sequenceEnd + 1);
+                sequence = Long.parseLong(record, 0, sequenceEnd, 10);
+                time = Instant.ofEpochMilli(Long.parseLong(record, sequenceEnd + 1, timeEnd, 10));
+                kindStart = timeEnd + 1;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            delimiter = -1;
+        }
+        if (delimiter < kindStart) {
+            skipLine(report, "Skipping malformed record " + lineNumber + " in " + source + ": " + record);
+            return null;
+        }
+        JournalEntry.Kind kind = JournalEntry.Kind.of(record.substring(kindStart, delimiter));
+        String body = record.substring(delimiter + Journal.RECORD_DELIMITER.length());
+        if (kind == null) {
+            skipLine(report, "Skipping unknown record type " + lineNumber + " in " + source + ": " + record);
+            return null;
+        } else if (kind == JournalEntry.Kind.ADD) {
+            return new JournalEntry(sequence, time, kind, -1, 0, body.trim());
+        }
+
+        String[] parts = body.split("\\s*\\|\\s*", 2);
+        String target = parts[0].trim();
+        int idStart = target.indexOf(Journal.TASK_ID_MARKER);
+        int index;
+        int taskId = 0;
+        try {
+            if (idStart >= 0) {
+                taskId = Integer.parseInt(target.substring(idStart + Journal.TASK_ID_MARKER.length()));
+                target = target.substring(0, idStart).trim();
+            }
+            index = Integer.parseInt(target);
+        } catch (NumberFormatException e) {
+            skipLine(report, "Skipping malformed record " + lineNumber + " in " + source + ": " + record);
+            return null;
+        }
+        if (kind == JournalEntry.Kind.INSERT) {
+            if (parts.length < 2) {
+                skipLine(report, "Skipping incomplete insert record " + lineNumber + " in " + source + ": " + record);
+                return null;
+            }
+            // The task is split again when it is parsed, so only the first delimiter may be consumed
+            return new JournalEntry(sequence, time, kind, index, 0, body.substring(body.indexOf('|') + 1).trim());
+        } else if (kind != JournalEntry.Kind.TAG && kind != JournalEntry.Kind.UNTAG) {
+            return new JournalEntry(sequence, time, kind, index, taskId, null);
+        } else if (parts.length < 2 || parts[1].trim().isEmpty()) {
+            skipLine(report, "Skipping incomplete tag record " + lineNumber + " in " + source + ": " + record);
+            return null;
+        }
+        return new JournalEntry(sequence, time, kind, index, taskId, parts[1].trim());
+    }
+
+    /**
+     * Applies one change to the tasks read so far. A change names its task by id where it can, so that it
+     * reaches the right task even when damaged snapshot lines were dropped and the positions after them moved.
+     *
+     * @param hasLostTasks whether snapshot lines were dropped before the journal was replayed
+     * @return false if replay has to stop, because the change names its task only by a position that
+     *         can no longer be trusted
+     */
+    private boolean applyEntry(JournalEntry entry, int lineNumber, String source, List<Task> tasks,
+            boolean hasLostTasks, LoadReport report) {
+        if (entry.getKind() == JournalEntry.Kind.ADD) {
+            Task task = parseLine(entry.getArgument(), lineNumber, report);
+            if (task != null) {
+                assignId(task);
+                tasks.add(task);
+            }
+            return true;
+        }
+        int index = entry.getIndex();
+        if (entry.getKind() == JournalEntry.Kind.INSERT) {
+            if (index < 0 || (index > tasks.size() && !hasLostTasks)) {
+                skipLine(report, "Skipping out-of-range record " + lineNumber + " in " + source + ": " + entry);
+                return true;
+            }
+            Task task = parseLine(entry.getArgument(), lineNumber, report);
+            if (task != null) {
+                assignId(task);
+                // The position only orders the list, so after lost lines the task goes as close to it as it can
+                tasks.add(Math.min(index, tasks.size()), task);
+            }
+            return true;
+        }
+        if (entry.getTaskId() > 0) {
+            index = indexOfId(tasks, index, entry.getTaskId());
+            if (index < 0) {
+                skipLine(report, "Skipping change to a missing task " + lineNumber + " in " + source + ": " + entry);
+                return true;
+            }
+        } else if (hasLostTasks) {
+            report.recordJournalTruncated("Change on line " + lineNumber + " of " + source + " names its task by"
+                    + " position, which damaged lines in the data file have shifted; it and any later changes"
+                    + " were not applied");
+            return false;
+        } else if (index < 0 || index >= tasks.size()) {
+            skipLine(report, "Skipping out-of-range record " + lineNumber + " in " + source + ": " + entry);
+            return true;
+        }
+        switch (entry.getKind()) {
+            case MARK:
+                tasks.get(index).markAsDone();
+                break;
+            case UNMARK:
+                tasks.get(index).markAsNotDone();
+                break;
+            case DELETE:
+                tasks.remove(index);
+                break;
+            case TAG:
+                tasks.get(index).addTag(entry.getArgument());
+                break;
+            default:
+                tasks.get(index).removeTag(entry.getArgument());
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the position of the task with the given id, trying the position it was recorded at first.
+     *
+     * @return the position, or -1 if no task has the id
+     */
+    private static int indexOfId(List<Task> tasks, int recordedIndex, int taskId) {
+        if (recordedIndex >= 0 && recordedIndex < tasks.size()
+                && LazyTaskList.peekId(tasks, recordedIndex) == taskId) {
+            return recordedIndex;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (LazyTaskList.peekId(tasks, i) == taskId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Receives the changes read back from the journal.
+     */
+    private interface ChangeHandler {
+        /**
+         * Handles one change.
+         *
+         * @return false to stop reading the journal
+         */
+        boolean apply(JournalEntry entry, int lineNumber, String source);
     }
 
     /**
      * Saves the given list of tasks to the storage file.
-     * 
+     * The file is replaced atomically, so a crash leaves either the old or the new list.
+     * In journal mode, the snapshot replaces every journal segment written so far.
+     *
      * @param tasks the list of tasks to save
      * @throws IOException if there is an error writing to the file
      */
-    public void save(ArrayList<Task> tasks) throws IOException {
+    public void save(List<Task> tasks) throws IOException {
         assert tasks != null : "Task list cannot be null";
         File file = new File(filePath);
         assert filePath != null : "File path should not be null";
@@ -127,52 +761,531 @@ public class Storage {
         if (parent != null && !parent.exists()) {
             parent.mkdirs();
         }
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (Task task : tasks) {
-                assert task != null : "Task in list should not be null";
-                writer.write(serialize(task));
-                writer.newLine();
+        if (isJournalEnabled) {
+            flush();
+            awaitCompaction();
+            int coveredSegment = journal.rotate(Journal.sequenceRecord(lastSequence));
+            writeSnapshot(encodeSnapshot(tasks), coveredSegment);
+            return;
+        }
+        Path temp = Path.of(filePath + TEMP_SUFFIX);
+        writeSnapshotFile(temp, encodeSnapshot(tasks));
+        move(temp, dataFileTarget());
+    }
+
+    /**
+     * Records the addition of a task at the end of the list.
+     *
+     * @param task the task that was added
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendAdd(Task task) throws IOException {
+        nextTaskId = Math.max(nextTaskId, task.getId() + 1);
+        appendRecord(Journal.addRecord(serialize(task)));
+    }
+
+    /**
+     * Records a task being put back at a position, such as when a removal is undone.
+     *
+     * @param index the index the task was inserted at
+     * @param task the task that was inserted
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendInsert(int index, Task task) throws IOException {
+        nextTaskId = Math.max(nextTaskId, task.getId() + 1);
+        appendRecord(Journal.insertRecord(index, serialize(task)));
+    }
+
+    /**
+     * Records a change to the completion status of a task.
+     *
+     * @param index the index of the task
+     * @param task the task
+     * @param isDone the new completion status
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendMark(int index, Task task, boolean isDone) throws IOException {
+        appendRecord(Journal.markRecord(index, task.getId(), isDone));
+    }
+
+    /**
+     * Records the removal of a task.
+     *
+     * @param index the index of the removed task
+     * @param task the removed task
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendDelete(int index, Task task) throws IOException {
+        appendRecord(Journal.deleteRecord(index, task.getId()));
+    }
+
+    /**
+     * Records a tag being added to or removed from a task.
+     *
+     * @param index the index of the task
+     * @param task the task
+     * @param tag the tag
+     * @param isTagged true if the tag was added, false if it was removed
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendTag(int index, Task task, String tag, boolean isTagged) throws IOException {
+        appendRecord(Journal.tagRecord(index, task.getId(), escape(tag), isTagged));
+    }
+
+    /**
+     * Records a change to the completion status of several tasks, as one write.
+     *
+     * @param indices the indexes of the tasks
+     * @param tasks the tasks, in the same order as their indexes
+     * @param isDone the new completion status
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendMarks(int[] indices, List<Task> tasks, boolean isDone) throws IOException {
+        ArrayList<String> records = new ArrayList<>(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            records.add(Journal.markRecord(indices[i], tasks.get(i).getId(), isDone));
+        }
+        appendRecords(records);
+    }
+
+    /**
+     * Records the removal of several tasks, as one write. The removals are recorded from the last
+     * index to the first, so every index is still valid when its record is replayed.
+     *
+     * @param indices the indexes the tasks had before any of them was removed, in ascending order
+     * @param removed the removed tasks, in the same order as their indexes
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendDeletes(int[] indices, List<Task> removed) throws IOException {
+        ArrayList<String> records = new ArrayList<>(indices.length);
+        for (int i = indices.length - 1; i >= 0; i--) {
+            records.add(Journal.deleteRecord(indices[i], removed.get(i).getId()));
+        }
+        appendRecords(records);
+    }
+
+    /**
+     * Records a tag being added to or removed from several tasks, as one write.
+     *
+     * @param indices the indexes of the tasks
+     * @param tasks the tasks, in the same order as their indexes
+     * @param tag the tag
+     * @param isTagged true if the tag was added, false if it was removed
+     * @throws IOException if the journal cannot be written
+     */
+    public void appendTags(int[] indices, List<Task> tasks, String tag, boolean isTagged) throws IOException {
+        String escapedTag = escape(tag);
+        ArrayList<String> records = new ArrayList<>(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            records.add(Journal.tagRecord(indices[i], tasks.get(i).getId(), escapedTag, isTagged));
+        }
+        appendRecords(records);
+    }
+
+    private void appendRecords(List<String> records) throws IOException {
+        long now = System.currentTimeMillis();
+        records.replaceAll(record -> Journal.numberedRecord(++lastSequence, now, record));
+        if (writeBehind != null) {
+            writeBehind.submitAll(records);
+        } else {
+            journal.appendAll(records);
+        }
+    }
+
+    private void appendRecord(String unnumbered) throws IOException {
+        String record = Journal.numberedRecord(++lastSequence, System.currentTimeMillis(), unnumbered);
+        if (writeBehind != null) {
+            writeBehind.submit(record);
+        } else {
+            journal.append(record);
+        }
+    }
+
+    /**
+     * Blocks until every recorded mutation has been written to disk.
+     *
+     * @throws IOException if a pending mutation could not be written
+     */
+    public void flush() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Returns the number of write-behind batches that failed to be written.
+     *
+     * @return the number of failed background writes
+     */
+    public long getWriteFailureCount() {
+        return writeBehind == null ? 0 : writeBehind.getFailureCount();
+    }
+
+    /**
+     * Returns the number of mutations waiting to be written by the write-behind stage.
+     *
+     * @return the number of pending mutations
+     */
+    public int getPendingWriteCount() {
+        return writeBehind == null ? 0 : writeBehind.getPendingCount();
+    }
+
+    /**
+     * Starts a background compaction if the journal, counting every segment, has grown past the threshold.
+     * The tasks are serialized on the calling thread so later mutations cannot leak into the snapshot.
+     *
+     * @param tasks the current list of tasks
+     * @throws IOException if the journal cannot be rotated
+     */
+    public void compactIfNeeded(List<Task> tasks) throws IOException {
+        assert tasks != null : "Task list cannot be null";
+        if (!isJournalEnabled || isCompacting || hasCompactionFailed
+                || journal.getTotalSize() < compactionThresholdBytes) {
+            return;
+        }
+        // Queued records describe changes that are already in the task list, so they must land
+        // in the segment the snapshot covers rather than in the one that follows it
+        flush();
+        isCompacting = true;
+        int coveredSegment = journal.rotate(Journal.sequenceRecord(lastSequence));
+        byte[] snapshot = encodeSnapshot(tasks);
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sofi-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compactor.submit(() -> {
+            try {
+                writeSnapshot(snapshot, coveredSegment);
+            } catch (IOException e) {
+                // The journal is left intact, so nothing is lost; stop retrying for this session
+                hasCompactionFailed = true;
+                System.err.println("Warning: Journal compaction failed - " + e.getMessage());
+            } finally {
+                isCompacting = false;
+            }
+        });
+    }
+
+    /**
+     * Writes pending mutations, waits for any running compaction and closes the journal.
+     *
+     * @throws IOException if pending mutations could not be written or the journal cannot be closed
+     */
+    public void close() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        awaitCompaction();
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void awaitCompaction() {
+        if (compactor == null) {
+            return;
+        }
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (Exception e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a snapshot that covers every journal segment up to {@code coveredSegment}.
+     * The snapshot is first completed under a temporary name, then renamed to a "ready" name
+     * that records the covered segment, so recovery can always tell whether the journal
+     * segments it finds are already part of the snapshot.
+     */
+    private void writeSnapshot(byte[] snapshot, int coveredSegment) throws IOException {
+        Path temp = Path.of(filePath + TEMP_SUFFIX);
+        Path ready = Path.of(filePath + READY_INFIX + coveredSegment);
+        writeSnapshotFile(temp, snapshot);
+        move(temp, ready);
+        archiveSegmentsUpTo(coveredSegment);
+        journal.deleteSegmentsUpTo(coveredSegment);
+        move(ready, dataFileTarget());
+    }
+
+    /**
+     * Returns where a new snapshot should be moved to: the data file itself, or the pending name beside it
+     * while this storage has the data file mapped.
+     */
+    private Path dataFileTarget() {
+        return isDataFileMapped ? Path.of(filePath + PENDING_SUFFIX) : Path.of(filePath);
+    }
+
+    /**
+     * Returns the file that holds the latest snapshot, which is the pending one if it has not been switched in.
+     */
+    private Path currentDataFile() {
+        Path pending = Path.of(filePath + PENDING_SUFFIX);
+        return Files.exists(pending) ? pending : Path.of(filePath);
+    }
+
+    /**
+     * Keeps the journal segments that a compaction covers in the {@link HistoryArchive} before they are
+     * deleted, so that {@link #loadAt(long)} and {@link #readHistory()} can still reach their changes.
+     */
+    private void archiveSegmentsUpTo(int coveredSegment) throws IOException {
+        List<File> covered = new ArrayList<>();
+        for (File segment : journal.listSegments()) {
+            if (Journal.segmentNumber(segment) <= coveredSegment) {
+                covered.add(segment);
+            }
+        }
+        archive.archive(covered, currentDataFile());
+    }
+
+    /**
+     * Cuts a file back to its last complete line, dropping what a crash left half written.
+     */
+    static void dropTornTail(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            file.setLength(end);
+        }
+    }
+
+    /**
+     * Writes an encoded snapshot and syncs the file to disk.
+     */
+    private static void writeSnapshotFile(Path path, byte[] snapshot) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(path.toFile())) {
+            out.write(snapshot);
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Encodes the tasks in the configured format. For the text format, a checksum line
+     * follows every block of lines.
+     */
+    private byte[] encodeSnapshot(List<Task> tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            nextTaskId = Math.max(nextTaskId, LazyTaskList.peekId(tasks, i) + 1);
+        }
+        if (format == Format.BINARY) {
+            return BinaryTaskCodec.encode(tasks, nextTaskId);
+        } else if (format == Format.MAPPED) {
+            return MappedTaskStore.encode(tasks, nextTaskId);
+        }
+        String newLine = System.lineSeparator();
+        StringBuilder sb = new StringBuilder(tasks.size() * 48);
+        CRC32C crc = new CRC32C();
+        byte[] scratch = new byte[Checksum.SCRATCH_SIZE];
+        String header = NEXT_ID_LINE_PREFIX + nextTaskId;
+        sb.append(header).append(newLine);
+        Checksum.update(crc, header);
+        int blockLines = 1;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = LazyTaskList.peek(tasks, i);
+            assert task != null : "Task in list should not be null";
+            int lineStart = sb.length();
+            appendSerialized(sb, task);
+            Checksum.update(crc, sb, lineStart, sb.length(), scratch);
+            sb.append(newLine);
+            blockLines++;
+            if (blockLines == LINES_PER_BLOCK) {
+                appendChecksumLine(sb, blockLines, crc);
+                blockLines = 0;
+            }
+        }
+        if (blockLines > 0) {
+            appendChecksumLine(sb, blockLines, crc);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendChecksumLine(StringBuilder sb, int blockLines, CRC32C crc) {
+        sb.append(CHECKSUM_LINE_PREFIX).append(blockLines).append(' ').append(Checksum.toHex(crc.getValue()))
+                .append(System.lineSeparator());
+        crc.reset();
+    }
+
+    /**
+     * Finishes a compaction that was interrupted after its snapshot was complete,
+     * and discards a snapshot that never finished writing.
+     */
+    private void recoverInterruptedCompaction() throws IOException {
+        File base = new File(filePath).getAbsoluteFile();
+        File dir = base.getParentFile();
+        File[] files = dir == null ? null : dir.listFiles();
+        File latestReady = null;
+        int latestCovered = -1;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith(base.getName() + READY_INFIX)) {
+                    continue;
+                }
+                int covered;
+                try {
+                    covered = Integer.parseInt(name.substring(base.getName().length() + READY_INFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (covered > latestCovered) {
+                    if (latestReady != null) {
+                        Files.deleteIfExists(latestReady.toPath());
+                    }
+                    latestReady = file;
+                    latestCovered = covered;
+                } else {
+                    Files.deleteIfExists(file.toPath());
+                }
             }
         }
+        if (latestReady != null) {
+            archiveSegmentsUpTo(latestCovered);
+            journal.deleteSegmentsUpTo(latestCovered);
+            move(latestReady.toPath(), base.toPath());
+        }
+        Files.deleteIfExists(Path.of(filePath + TEMP_SUFFIX));
+    }
+
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Syncs a directory so a rename inside it survives a crash.
+     * Not every platform allows opening a directory, so this is best effort.
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Renames are still atomic; they may just not be durable yet on this platform
+        }
     }
 
     private String serialize(Task task) {
+        StringBuilder sb = new StringBuilder(task.getDescription().length() + 48);
+        appendSerialized(sb, task);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the stored line of a task straight into the builder, without building the line, its fields
+     * or its dates as separate strings.
+     */
+    private static void appendSerialized(StringBuilder sb, Task task) {
         assert task != null : "Task cannot be null";
         assert task.getDescription() != null : "Task description cannot be null";
-        
-        String baseLine;
-        String status = task.getStatusIcon().equals("[X]") ? "1" : "0";
-        
+
+        char type;
         if (task instanceof Todo) {
-            baseLine = "T | " + status + " | " + escape(task.getDescription());
+            type = 'T';
         } else if (task instanceof Deadline) {
-            Deadline d = (Deadline) task;
-            assert d.getBy() != null : "Deadline 'by' time cannot be null";
-            baseLine = "D | " + status + " | " + escape(task.getDescription()) 
-                    + " | " + escape(d.getBy().format(STORAGE_FORMAT));
+            type = 'D';
         } else if (task instanceof Event) {
-            Event e = (Event) task;
-            assert e.getFrom() != null : "Event 'from' time cannot be null";
-            assert e.getTo() != null : "Event 'to' time cannot be null";
-            baseLine = "E | " + status + " | " + escape(task.getDescription()) 
-                    + " | " + escape(e.getFrom().format(STORAGE_FORMAT)) 
-                    + " | " + escape(e.getTo().format(STORAGE_FORMAT));
+            type = 'E';
         } else {
-            return "";
+            return;
+        }
+        if (task.getId() > 0) {
+            sb.append(task.getId()).append(" | ");
+        }
+        sb.append(type).append(" | ").append(task.isDone() ? '1' : '0').append(" | ");
+        appendEscaped(sb, task.getDescription());
+        if (task instanceof Deadline) {
+            sb.append(" | ");
+            appendStorageDate(sb, ((Deadline) task).getByMinute());
+        } else if (task instanceof Event) {
+            Event e = (Event) task;
+            sb.append(" | ");
+            appendStorageDate(sb, e.getFromMinute());
+            sb.append(" | ");
+            appendStorageDate(sb, e.getToMinute());
         }
-        
+
         // Add tags to the serialized line
-        StringBuilder result = new StringBuilder(baseLine);
         for (String tag : task.getTags()) {
-            result.append(" | ").append(escape(tag));
+            sb.append(" | ");
+            appendEscaped(sb, tag);
+        }
+    }
+
+    /**
+     * Appends an epoch minute in {@link #STORAGE_FORMAT} digit by digit, working out the calendar date
+     * from the day number without a {@link java.time.LocalDateTime}. Years that do not have four digits
+     * are left to the formatter.
+     */
+    private static void appendStorageDate(StringBuilder sb, long epochMinute) {
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        int minuteOfDay = (int) Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        // Days since 0000-03-01, split into 400-year eras so that leap days fall at the end of a year
+        long days = epochDay + DAYS_0000_TO_1970 - 60;
+        long era = Math.floorDiv(days, DAYS_PER_ERA);
+        int dayOfEra = (int) (days - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            STORAGE_FORMAT.formatTo(DateTimeParser.fromEpochMinute(epochMinute), sb);
+            return;
+        }
+        appendDigits(sb, (int) year, 4);
+        sb.append('-');
+        appendDigits(sb, month, 2);
+        sb.append('-');
+        appendDigits(sb, day, 2);
+        sb.append(' ');
+        appendDigits(sb, minuteOfDay / 60, 2);
+        appendDigits(sb, minuteOfDay % 60, 2);
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static void appendEscaped(StringBuilder sb, String s) {
+        if (s.indexOf('\n') < 0) {
+            sb.append(s);
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
         }
-        
-        return result.toString();
     }
 
     private String escape(String s) {
         return s.replace("\n", "\\n");
     }
 }
-
-
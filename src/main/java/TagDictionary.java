@@ -0,0 +1,78 @@
+package sofi;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns tags to small integer ids shared by every task, so that a tag is held in memory once however
+ * many tasks carry it and tasks can keep their tags as a few ints.
+ *
+ * <p>Ids are given out from 0 in the order that tags are first seen, and are never reused. The dictionary
+ * only grows, which suits the few hundred distinct tags that a task list has. Lookups do not lock.</p>
+ */
+public final class TagDictionary {
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int count;
+
+    private TagDictionary() {
+    }
+
+    /**
+     * Returns the id of a tag, giving it a new one if it has not been seen before.
+     *
+     * @param tag the tag
+     * @return the id
+     */
+    public static int intern(String tag) {
+        assert tag != null : "Tag cannot be null";
+        Integer id = ids.get(tag);
+        return id != null ? id : add(tag);
+    }
+
+    private static synchronized int add(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+        }
+        current[count] = tag;
+        // Publish the name before the id, so that anyone holding the id can look the name up
+        names = current;
+        ids.put(tag, count);
+        return count++;
+    }
+
+    /**
+     * Returns the id of a tag without interning it.
+     *
+     * @param tag the tag
+     * @return the id, or -1 if no task has ever had the tag
+     */
+    public static int find(String tag) {
+        Integer id = ids.get(tag);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the tag with the given id.
+     *
+     * @param id an id returned by {@link #intern(String)}
+     * @return the tag
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of distinct tags interned so far.
+     *
+     * @return the number of tags
+     */
+    public static int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,221 @@
+package sofi;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of tags held as ids from the {@link TagDictionary}.
+ *
+ * <p>Most tasks have no tags and share {@link #EMPTY}. Other sets keep their ids either as a sorted int
+ * array or as a bitset, whichever is smaller: a bitset wins when a task has many tags with low ids.
+ * Adding or removing a tag returns a new set, so a set can be shared between copies of a task and read
+ * while the task changes.</p>
+ */
+public abstract class TagSet extends AbstractSet<String> {
+    /** The set with no tags. */
+    public static final TagSet EMPTY = new Sorted(new int[0]);
+
+    private TagSet() {
+    }
+
+    /**
+     * Returns whether the set holds the tag with the given id.
+     *
+     * @param id the tag id
+     * @return true if the tag is in the set
+     */
+    abstract boolean containsId(int id);
+
+    /**
+     * Returns the ids in the set in ascending order. The array must not be changed. A bitset builds the
+     * array on every call, so this is only for changing the set; reading it goes through the iterator.
+     *
+     * @return the sorted ids
+     */
+    abstract int[] ids();
+
+    /**
+     * Returns the set with a tag added.
+     *
+     * @param tag the tag to add
+     * @return this set if it already holds the tag, otherwise a new set
+     */
+    public TagSet with(String tag) {
+        int id = TagDictionary.intern(tag);
+        if (containsId(id)) {
+            return this;
+        }
+        int[] current = ids();
+        int insertAt = -Arrays.binarySearch(current, id) - 1;
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = id;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        return of(updated);
+    }
+
+    /**
+     * Returns the set with a tag removed.
+     *
+     * @param tag the tag to remove
+     * @return this set if it does not hold the tag, otherwise a new set
+     */
+    public TagSet without(String tag) {
+        int id = TagDictionary.find(tag);
+        if (id < 0 || !containsId(id)) {
+            return this;
+        }
+        int[] current = ids();
+        int removeAt = Arrays.binarySearch(current, id);
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, removeAt);
+        System.arraycopy(current, removeAt + 1, updated, removeAt, updated.length - removeAt);
+        return of(updated);
+    }
+
+    /**
+     * Returns a set holding the given ids, in whichever form is smaller.
+     */
+    private static TagSet of(int[] sortedIds) {
+        if (sortedIds.length == 0) {
+            return EMPTY;
+        }
+        int words = (sortedIds[sortedIds.length - 1] >>> 6) + 1;
+        if (words * 2 >= sortedIds.length) {
+            return new Sorted(sortedIds);
+        }
+        long[] bits = new long[words];
+        for (int id : sortedIds) {
+            bits[id >>> 6] |= 1L << id;
+        }
+        return new Bits(bits, sortedIds.length);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String) || isEmpty()) {
+            return false;
+        }
+        int id = TagDictionary.find((String) o);
+        return id >= 0 && containsId(id);
+    }
+
+    /**
+     * Ids as a sorted array, which is compact for the usual task with one to a few tags.
+     */
+    private static final class Sorted extends TagSet {
+        private final int[] ids;
+
+        Sorted(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        boolean containsId(int id) {
+            // Linear beats binary search on the handful of tags a task has
+            for (int tagId : ids) {
+                if (tagId >= id) {
+                    return tagId == id;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int[] ids() {
+            return ids;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return TagDictionary.nameOf(ids[next++]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * Ids as a bitset, for a task with many tags whose ids are low.
+     */
+    private static final class Bits extends TagSet {
+        private final long[] bits;
+        private final int size;
+
+        Bits(long[] bits, int size) {
+            this.bits = bits;
+            this.size = size;
+        }
+
+        @Override
+        boolean containsId(int id) {
+            int word = id >>> 6;
+            return word < bits.length && (bits[word] & (1L << id)) != 0;
+        }
+
+        @Override
+        int[] ids() {
+            int[] ids = new int[size];
+            int count = 0;
+            for (int word = 0; word < bits.length; word++) {
+                for (long remaining = bits[word]; remaining != 0; remaining &= remaining - 1) {
+                    ids[count++] = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Walks the set bits in place, so reading the tags does not build the array of ids.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int word;
+                private long remaining = bits.length == 0 ? 0 : bits[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (remaining == 0 && word < bits.length - 1) {
+                        remaining = bits[++word];
+                    }
+                    return remaining != 0;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int id = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return TagDictionary.nameOf(id);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
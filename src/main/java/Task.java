@@ -1,16 +1,23 @@
 package sofi;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
  * Abstract base class for all types of tasks in the SOFI application.
  * Provides common functionality for task management including status tracking and tagging.
+ *
+ * <p>The status and the tags may be read by other threads while a task changes. The set of tags is
+ * replaced rather than changed in place, so a reader always sees a whole set.</p>
+ *
+ * <p>Tags are interned in the {@link TagDictionary} and kept as a {@link TagSet} of ids. A task without
+ * tags shares the empty set, so it pays for no set of its own.</p>
  */
-public abstract class Task {
+public abstract class Task implements Cloneable {
     protected String description;
-    protected boolean isDone;
-    protected Set<String> tags;
+    protected volatile boolean isDone;
+    private volatile TagSet tags = TagSet.EMPTY;
+    private volatile Rendering rendering;
+    private int id;
 
     /**
      * Constructs a new Task with the given description.
@@ -22,7 +29,36 @@ public abstract class Task {
         assert !description.trim().isEmpty() : "Task description cannot be empty";
         this.description = description;
         this.isDone = false;
-        this.tags = new HashSet<>();
+    }
+
+    /**
+     * Returns the stable id of this task.
+     * Ids are assigned by the {@link TaskList} that first holds the task and never change or get reused,
+     * unlike the task's position in the list.
+     *
+     * @return the id, or 0 if the task has not been assigned one yet
+     */
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        assert id > 0 : "Task ids must be positive";
+        this.id = id;
+    }
+
+    /**
+     * Returns a copy of this task that later changes to this task do not affect.
+     * The copy shares the set of tags, which is never changed in place, and the rendered form.
+     *
+     * @return the copy
+     */
+    Task copy() {
+        try {
+            return (Task) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
     }
 
     /**
@@ -68,13 +104,14 @@ public abstract class Task {
 
     /**
      * Adds a tag to this task.
+     * Tasks held by a {@link TaskList} should be tagged through it, so that its tag index sees the change.
      * 
      * @param tag the tag to add
      */
     public void addTag(String tag) {
         assert tag != null : "Tag cannot be null";
         assert !tag.trim().isEmpty() : "Tag cannot be empty";
-        tags.add(tag.trim());
+        tags = tags.with(tag.trim());
     }
 
     /**
@@ -84,16 +121,16 @@ public abstract class Task {
      */
     public void removeTag(String tag) {
         assert tag != null : "Tag cannot be null";
-        tags.remove(tag.trim());
+        tags = tags.without(tag.trim());
     }
 
     /**
-     * Returns all tags for this task.
+     * Returns all tags for this task, in the order they were first used by any task.
      * 
-     * @return a set of all tags
+     * @return an unmodifiable set of all tags, which later changes to this task do not affect
      */
     public Set<String> getTags() {
-        return new HashSet<>(tags);
+        return tags;
     }
 
     /**
@@ -113,20 +150,86 @@ public abstract class Task {
      * @return string representation of tags, empty string if no tags
      */
     public String getTagsString() {
-        if (tags.isEmpty()) {
+        TagSet current = tags;
+        if (current.isEmpty()) {
             return "";
         }
         StringBuilder sb = new StringBuilder();
+        appendTagsTo(sb, current);
+        return sb.substring(1);
+    }
+
+    /**
+     * Appends the tags as they are shown after the task, each with a space before it.
+     */
+    private static void appendTagsTo(StringBuilder sb, TagSet tags) {
         for (String tag : tags) {
-            sb.append("#").append(tag).append(" ");
+            sb.append(" #").append(tag);
         }
-        return sb.toString().trim();
+    }
+
+    /**
+     * Appends the string representation of this task, as returned by {@link #toString()}.
+     * Once a task has been rendered, this copies the rendered form and allocates nothing.
+     *
+     * @param sb the builder to append to
+     */
+    public void appendTo(StringBuilder sb) {
+        sb.append(toString());
     }
 
     /**
      * Returns a string representation of this task.
+     * The result is kept until the status or the tags change, so listing a task again is free.
      * 
      * @return string representation of the task
      */
-    public abstract String toString();
+    @Override
+    public final String toString() {
+        TagSet currentTags = tags;
+        boolean currentIsDone = isDone;
+        Rendering current = rendering;
+        if (current != null && current.tags == currentTags && current.isDone == currentIsDone) {
+            return current.text;
+        }
+        StringBuilder sb = new StringBuilder(description.length() + 48);
+        sb.append(typeIcon()).append(currentIsDone ? "[X]" : "[ ]").append(' ').append(description);
+        appendDetailsTo(sb);
+        appendTagsTo(sb, currentTags);
+        String text = sb.toString();
+        rendering = new Rendering(currentTags, currentIsDone, text);
+        return text;
+    }
+
+    /**
+     * Returns the icon that shows the type of this task.
+     *
+     * @return the icon, such as "[T]"
+     */
+    protected abstract String typeIcon();
+
+    /**
+     * Appends what is shown between the description and the tags, such as the dates of the task.
+     *
+     * @param sb the builder to append to
+     */
+    protected void appendDetailsTo(StringBuilder sb) {
+    }
+
+    /**
+     * A rendered task with the state it was rendered from. Since tag sets are never changed in place, a
+     * rendering is current exactly when its tag set and status are the task's, so a task changed by one
+     * thread while another renders it cannot keep a stale rendering.
+     */
+    private static final class Rendering {
+        private final TagSet tags;
+        private final boolean isDone;
+        private final String text;
+
+        Rendering(TagSet tags, boolean isDone, String text) {
+            this.tags = tags;
+            this.isDone = isDone;
+            this.text = text;
+        }
+    }
 }
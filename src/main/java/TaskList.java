@@ -1,123 +1,1286 @@
 package sofi;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 /**
  * Manages a collection of tasks, providing operations to add, remove, and modify tasks.
  * Acts as the central data structure for task management in the SOFI application.
+ *
+ * <p>Every task has a stable id as well as a position. Tasks are kept in slots in the order they
+ * were added, and a removed task only frees its slot, so no other task moves. A {@link FenwickTree}
+ * over the live slots converts between positions and slots, and an {@link IntIntMap} finds the slot
+ * of an id, so lookups and removals by either take O(log n). Freed slots are reclaimed once they
+ * outnumber the live ones.</p>
+ *
+ * <p>Tags are indexed too: each tag maps to a {@link CompressedBitmap} of the slots whose task has it.
+ * The index is built on the first tag query and then kept up to date, so tasks that are tagged
+ * through {@link #addTag(int, String)} and {@link #removeTag(int, String)} can be found by tag
+ * without scanning the list.</p>
+ *
+ * <p>Descriptions are indexed the same way, by a {@link TextIndex} that is built on the first search,
+ * so {@link #findTasks(String)} only touches the posting lists of the words it looks for.</p>
+ *
+ * <p>Times are indexed on the first date query: deadlines in a map from due minute to the slots due
+ * then, and events in an {@link IntervalTree}. An event occupies the minutes from its start up to, but not
+ * including, its end, so back-to-back events do not overlap. Date range queries take O(log n + k).</p>
+ *
+ * <p>A TaskList may be shared between threads. Changes are serialized by the write side of a
+ * {@link StampedLock}. Lookups by position or id first read without locking and only take the read lock
+ * if a change got in the way, and queries hold the read lock, so readers never wait for one another.
+ * A missing index is built under the write lock by the first query that needs it.</p>
+ *
+ * <p>Every change also makes a new version of a {@link PersistentVector} that holds frozen copies of the
+ * tasks, at O(log n) per changed task. {@link #snapshot()} hands out the latest version without locking
+ * or copying, so a save, an export or a listing on another thread reads a consistent list while changes
+ * go on. Tasks that are still only in the store of a {@link LazyTaskList} are left out of the vector and
+ * read from the store, which does not change, when a snapshot needs them.</p>
+ *
+ * <p>With an {@link UndoHistory} attached, every change also records the operations that revert it, so
+ * {@link #undo()} and {@link #redo()} can step back and forth through recent changes.</p>
  */
 public class TaskList {
-    private ArrayList<Task> tasks;
+    private static final int MIN_SLOTS_TO_RECLAIM = 64;
+    private static final String SELECT_DONE = "done";
+
+    private List<Task> slots;
+    private int[] slotIds;
+    private FenwickTree liveSlots;
+    private IntIntMap slotById;
+    private int size;
+    private int freeSlots;
+    private int nextId;
+    private HashMap<String, CompressedBitmap> slotsByTag;
+    private TextIndex textIndex;
+    private TreeMap<Long, CompressedBitmap> slotsByDue;
+    private IntervalTree eventSlots;
+    private PersistentVector<Task> frozenTasks;
+    private MappedTaskStore store;
+    private int[] storedRecords;
+    private volatile Snapshot current;
+    private UndoHistory history;
+    private final StampedLock lock = new StampedLock();
 
     /**
      * Constructs an empty TaskList.
      */
     public TaskList() {
-        this.tasks = new ArrayList<>();
+        this(new ArrayList<>(), 1);
     }
 
     /**
      * Constructs a TaskList with the given list of tasks.
-     * 
+     * The list may be a {@link LazyTaskList}, in which case tasks are only built when first accessed.
+     *
      * @param tasks the initial list of tasks
      */
-    public TaskList(ArrayList<Task> tasks) {
-        this.tasks = tasks;
+    public TaskList(List<Task> tasks) {
+        this(tasks, 1);
     }
 
     /**
-     * Adds a task to the list.
-     * 
+     * Constructs a TaskList with the given list of tasks, continuing id assignment at {@code nextId}.
+     * Tasks without an id are given one in order.
+     *
+     * @param tasks the initial list of tasks
+     * @param nextId the smallest id that may be given to a new task
+     */
+    public TaskList(List<Task> tasks, int nextId) {
+        assert tasks != null : "Task list cannot be null";
+        this.slots = tasks;
+        this.nextId = Math.max(nextId, 1);
+        for (int i = 0; i < tasks.size(); i++) {
+            this.nextId = Math.max(this.nextId, LazyTaskList.peekId(tasks, i) + 1);
+        }
+        rebuildIndex();
+        current = new Snapshot(frozenTasks, 0, store, storedRecords);
+    }
+
+    /**
+     * Rebuilds the id and order indexes over {@link #slots}, which must hold only live tasks.
+     */
+    private void rebuildIndex() {
+        slotsByTag = null;
+        textIndex = null;
+        slotsByDue = null;
+        eventSlots = null;
+        size = slots.size();
+        freeSlots = 0;
+        slotIds = new int[Math.max(size, 16)];
+        liveSlots = new FenwickTree();
+        slotById = new IntIntMap(size);
+        LazyTaskList lazy = slots instanceof LazyTaskList ? (LazyTaskList) slots : null;
+        store = lazy != null ? lazy.getStore() : null;
+        storedRecords = lazy != null ? new int[size] : null;
+        PersistentVector.Builder<Task> frozen = new PersistentVector.Builder<>();
+        for (int slot = 0; slot < size; slot++) {
+            int id = LazyTaskList.peekId(slots, slot);
+            if (id == 0 || slotById.get(id) >= 0) {
+                id = nextId++;
+                slots.get(slot).setId(id);
+            }
+            slotIds[slot] = id;
+            slotById.put(id, slot);
+            liveSlots.append(1);
+            Task built = lazy != null ? lazy.builtAt(slot) : slots.get(slot);
+            if (built == null) {
+                storedRecords[slot] = lazy.recordAt(slot);
+            }
+            frozen.add(built != null ? built.copy() : null);
+        }
+        frozenTasks = frozen.build();
+    }
+
+    /**
+     * Publishes the changes made under the write lock as the next snapshot, then releases the lock.
+     */
+    private void unlockWrite(long stamp) {
+        if (frozenTasks != current.tasks) {
+            current = new Snapshot(frozenTasks, current.version + 1, store, storedRecords);
+        }
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Adds a task to the list, giving it an id if it has none.
+     *
      * @param task the task to add
      */
     public void addTask(Task task) {
         assert task != null : "Task cannot be null";
-        tasks.add(task);
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            addTaskLocked(task);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void addTaskLocked(Task task) {
+        if (task.getId() == 0 || slotById.get(task.getId()) >= 0) {
+            task.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+        int slot = slots.size();
+        slots.add(task);
+        if (slot == slotIds.length) {
+            slotIds = Arrays.copyOf(slotIds, slot * 2);
+        }
+        slotIds[slot] = task.getId();
+        slotById.put(task.getId(), slot);
+        liveSlots.append(1);
+        size++;
+        frozenTasks = frozenTasks.append(task.copy());
+        addToIndexes(task, slot);
+        if (history != null) {
+            history.recordRemove(task.getId());
+        }
+    }
+
+    private void addToIndexes(Task task, int slot) {
+        if (slotsByTag != null) {
+            for (String tag : task.getTags()) {
+                slotsByTag.computeIfAbsent(tag, t -> new CompressedBitmap()).add(slot);
+            }
+        }
+        if (textIndex != null) {
+            textIndex.add(slot, task.getDescription());
+        }
+        if (slotsByDue != null) {
+            addToDateIndex(task, slot);
+        }
+    }
+
+    /**
+     * Puts a task back at a position. A removed task keeps its slot until free slots are reclaimed, so
+     * the slot is looked for between the neighbours of the position and brought back to life, which moves
+     * no other task. Only if it has been reclaimed is the whole list rebuilt with the task inserted.
+     */
+    private void insertTaskLocked(Task task, int index) {
+        int slot = freeSlotOf(task.getId(), index);
+        if (slot < 0) {
+            reclaimFreeSlots();
+            slots.add(index, task);
+            rebuildIndex();
+        } else {
+            slots.set(slot, task);
+            slotIds[slot] = task.getId();
+            slotById.put(task.getId(), slot);
+            liveSlots.add(slot, 1);
+            size++;
+            freeSlots--;
+            frozenTasks = frozenTasks.set(slot, task.copy());
+            addToIndexes(task, slot);
+        }
+        if (history != null) {
+            history.recordRemove(task.getId());
+        }
+    }
+
+    private int freeSlotOf(int id, int index) {
+        int from = index == 0 ? 0 : toSlot(index - 1) + 1;
+        int to = index == size ? slots.size() : toSlot(index);
+        for (int slot = from; slot < to; slot++) {
+            if (slotIds[slot] == 0 && LazyTaskList.peekId(slots, slot) == id) {
+                return slot;
+            }
+        }
+        return -1;
     }
 
     /**
      * Removes and returns the task at the specified index.
-     * 
+     *
      * @param index the index of the task to remove
      * @return the removed task
      */
     public Task removeTask(int index) {
-        // Let the ArrayList handle bounds checking to maintain expected exception behavior
-        return tasks.remove(index);
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            Task removed = removeSlot(toSlot(index));
+            reclaimFreeSlotsIfSparse();
+            return removed;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the tasks at the given indexes in one pass. The indexes are converted to slots before
+     * any task is removed, and the freed slots are reclaimed at most once, at the end.
+     *
+     * @param indices the indexes of the tasks to remove, in ascending order
+     * @return the removed tasks, in list order
+     */
+    public ArrayList<Task> removeTasks(int[] indices) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            int[] removedSlots = toSlots(indices);
+            ArrayList<Task> removed = new ArrayList<>(removedSlots.length);
+            for (int slot : removedSlots) {
+                removed.add(removeSlot(slot));
+            }
+            reclaimFreeSlotsIfSparse();
+            return removed;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private Task removeSlot(int slot) {
+        Task removed = LazyTaskList.peek(slots, slot);
+        if (history != null) {
+            history.recordInsert(removed, (int) liveSlots.prefixSum(slot));
+        }
+        if (slotsByTag != null) {
+            for (String tag : removed.getTags()) {
+                removeFromTagIndex(tag, slot);
+            }
+        }
+        if (textIndex != null) {
+            textIndex.remove(slot, removed.getDescription());
+        }
+        if (slotsByDue != null) {
+            removeFromDateIndex(removed, slot);
+        }
+        slotById.remove(slotIds[slot]);
+        slotIds[slot] = 0;
+        liveSlots.add(slot, -1);
+        size--;
+        freeSlots++;
+        frozenTasks = frozenTasks.remove(slot);
+        return removed;
+    }
+
+    private void reclaimFreeSlotsIfSparse() {
+        if (freeSlots >= MIN_SLOTS_TO_RECLAIM && freeSlots > size) {
+            reclaimFreeSlots();
+        }
+    }
+
+    /**
+     * Removes and returns the task with the given id.
+     *
+     * @param id the task id
+     * @return the removed task, or null if no task has that id
+     */
+    public Task removeTaskById(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = id > 0 ? slotById.get(id) : -1;
+            if (slot < 0) {
+                return null;
+            }
+            beginStep();
+            Task removed = removeSlot(slot);
+            reclaimFreeSlotsIfSparse();
+            return removed;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void reclaimFreeSlots() {
+        boolean[] keep = new boolean[slots.size()];
+        for (int slot = 0; slot < keep.length; slot++) {
+            keep[slot] = slotIds[slot] != 0;
+        }
+        if (slots instanceof LazyTaskList) {
+            ((LazyTaskList) slots).retain(keep);
+        } else {
+            ArrayList<Task> live = new ArrayList<>(size);
+            for (int slot = 0; slot < keep.length; slot++) {
+                if (keep[slot]) {
+                    live.add(slots.get(slot));
+                }
+            }
+            slots = live;
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * Tags the task at the specified index, keeping the tag index up to date.
+     *
+     * @param index the index of the task
+     * @param tag the tag to add
+     * @return the tagged task
+     */
+    public Task addTag(int index, String tag) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            return tagSlot(toSlot(index), tag);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private Task tagSlot(int slot, String tag) {
+        Task task = slots.get(slot);
+        if (history != null && !task.hasTag(tag)) {
+            history.recordTag(task.getId(), tag, false);
+        }
+        task.addTag(tag);
+        frozenTasks = frozenTasks.set(slot, task.copy());
+        if (slotsByTag != null) {
+            slotsByTag.computeIfAbsent(tag.trim(), t -> new CompressedBitmap()).add(slot);
+        }
+        return task;
+    }
+
+    /**
+     * Removes a tag from the task at the specified index, keeping the tag index up to date.
+     *
+     * @param index the index of the task
+     * @param tag the tag to remove
+     * @return the untagged task
+     */
+    public Task removeTag(int index, String tag) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            return untagSlot(toSlot(index), tag);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private Task untagSlot(int slot, String tag) {
+        Task task = slots.get(slot);
+        if (history != null && task.hasTag(tag)) {
+            history.recordTag(task.getId(), tag, true);
+        }
+        task.removeTag(tag);
+        frozenTasks = frozenTasks.set(slot, task.copy());
+        if (slotsByTag != null) {
+            removeFromTagIndex(tag.trim(), slot);
+        }
+        return task;
+    }
+
+    /**
+     * Tags the tasks at the given indexes.
+     *
+     * @param indices the indexes of the tasks, in ascending order
+     * @param tag the tag to add
+     * @return the tagged tasks, in list order
+     */
+    public ArrayList<Task> addTag(int[] indices, String tag) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            ArrayList<Task> tagged = new ArrayList<>(indices.length);
+            for (int slot : toSlots(indices)) {
+                tagged.add(tagSlot(slot, tag));
+            }
+            return tagged;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a tag from the tasks at the given indexes.
+     *
+     * @param indices the indexes of the tasks, in ascending order
+     * @param tag the tag to remove
+     * @return the untagged tasks, in list order
+     */
+    public ArrayList<Task> removeTag(int[] indices, String tag) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            ArrayList<Task> untagged = new ArrayList<>(indices.length);
+            for (int slot : toSlots(indices)) {
+                untagged.add(untagSlot(slot, tag));
+            }
+            return untagged;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void removeFromTagIndex(String tag, int slot) {
+        CompressedBitmap tagged = slotsByTag.get(tag);
+        if (tagged != null) {
+            tagged.remove(slot);
+            if (tagged.isEmpty()) {
+                slotsByTag.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * Returns the tasks with the given tag, in list order.
+     *
+     * @param tag the tag
+     * @return an ArrayList of the tagged tasks
+     */
+    public ArrayList<Task> findByTag(String tag) {
+        assert tag != null : "Tag cannot be null";
+        long stamp = readLockWithIndex(() -> slotsByTag == null, this::buildTagIndex);
+        try {
+            CompressedBitmap tagged = slotsByTag.get(tag.trim());
+            return tagged == null ? new ArrayList<>() : tasksInSlots(tagged);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Answers a tag query of the form {@code tag [and|or tag]...}, evaluated from left to right.
+     * The query is answered from the tag index, so it costs time in proportion to the bitmaps involved
+     * and the number of results, not the size of the list.
+     *
+     * @param terms the tags at even positions and {@code and} or {@code or} at odd positions
+     * @return an ArrayList of the matching tasks, in list order
+     */
+    public ArrayList<Task> findTagged(String[] terms) {
+        assert terms.length % 2 == 1 : "A tag query alternates tags and operators";
+        long stamp = readLockWithIndex(() -> slotsByTag == null, this::buildTagIndex);
+        try {
+            CompressedBitmap empty = new CompressedBitmap();
+            CompressedBitmap result = slotsByTag.getOrDefault(terms[0], empty);
+            for (int i = 1; i < terms.length; i += 2) {
+                CompressedBitmap next = slotsByTag.getOrDefault(terms[i + 1], empty);
+                result = terms[i].equals("and") ? CompressedBitmap.and(result, next)
+                        : CompressedBitmap.or(result, next);
+            }
+            return tasksInSlots(result);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void buildTagIndex() {
+        slotsByTag = new HashMap<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            if (slotIds[slot] == 0) {
+                continue;
+            }
+            for (String tag : LazyTaskList.peek(slots, slot).getTags()) {
+                slotsByTag.computeIfAbsent(tag, t -> new CompressedBitmap()).add(slot);
+            }
+        }
+    }
+
+    private ArrayList<Task> tasksInSlots(CompressedBitmap bitmap) {
+        int[] matches = bitmap.toArray();
+        ArrayList<Task> result = new ArrayList<>(matches.length);
+        for (int slot : matches) {
+            result.add(slots.get(slot));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the deadlines due within a range, earliest first.
+     *
+     * @param from the start of the range
+     * @param to the end of the range, inclusive
+     * @return an ArrayList of the deadlines, with deadlines due at the same time in list order
+     */
+    public ArrayList<Task> findDue(LocalDateTime from, LocalDateTime to) {
+        long stamp = readLockWithIndex(() -> slotsByDue == null, this::buildDateIndex);
+        try {
+            return dueBetween(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private ArrayList<Task> dueBetween(LocalDateTime from, LocalDateTime to) {
+        ArrayList<Task> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        for (CompressedBitmap due : slotsByDue.subMap(minuteOf(from), true, minuteOf(to), true).values()) {
+            result.addAll(tasksInSlots(due));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the events that overlap a range, in order of their start.
+     *
+     * @param from the start of the range
+     * @param to the end of the range, inclusive
+     * @return an ArrayList of the events, with events that start at the same time in list order
+     */
+    public ArrayList<Task> findEventsDuring(LocalDateTime from, LocalDateTime to) {
+        long stamp = readLockWithIndex(() -> slotsByDue == null, this::buildDateIndex);
+        try {
+            return eventsDuring(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private ArrayList<Task> eventsDuring(LocalDateTime from, LocalDateTime to) {
+        ArrayList<Task> result = new ArrayList<>();
+        eventSlots.forEachOverlapping(minuteOf(from), minuteOf(to), slot -> result.add(slots.get(slot)));
+        return result;
+    }
+
+    /**
+     * Returns the agenda of a day: the deadlines due on it and the events that overlap it,
+     * in order of time. An event that started on an earlier day comes first.
+     *
+     * @param date the day
+     * @return an ArrayList of the deadlines and events
+     */
+    public ArrayList<Task> findAgenda(LocalDate date) {
+        LocalDateTime from = date.atStartOfDay();
+        LocalDateTime to = date.atTime(LocalTime.MAX);
+        ArrayList<Task> deadlines;
+        ArrayList<Task> events;
+        long stamp = readLockWithIndex(() -> slotsByDue == null, this::buildDateIndex);
+        try {
+            deadlines = dueBetween(from, to);
+            events = eventsDuring(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        ArrayList<Task> result = new ArrayList<>(deadlines.size() + events.size());
+        int i = 0;
+        int j = 0;
+        while (i < deadlines.size() || j < events.size()) {
+            if (j == events.size() || (i < deadlines.size()
+                    && ((Event) events.get(j)).getFromMinute() >= ((Deadline) deadlines.get(i)).getByMinute())) {
+                result.add(deadlines.get(i++));
+            } else {
+                result.add(events.get(j++));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the events that overlap a given event, in order of their start.
+     * The event itself is left out if it is in the list.
+     *
+     * @param event the event
+     * @return an ArrayList of the overlapping events
+     */
+    public ArrayList<Task> findConflicting(Event event) {
+        long stamp = readLockWithIndex(() -> slotsByDue == null, this::buildDateIndex);
+        try {
+            ArrayList<Task> result = new ArrayList<>();
+            long start = event.getFromMinute();
+            eventSlots.forEachOverlapping(start, lastMinuteOf(event, start), slot -> {
+                Task task = slots.get(slot);
+                if (task != event) {
+                    result.add(task);
+                }
+            });
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns every pair of events that overlap each other, among the events that overlap a range.
+     *
+     * @param from the start of the range
+     * @param to the end of the range, inclusive
+     * @return an ArrayList of pairs, each with the event that starts first first,
+     *         ordered by the start of the second event
+     */
+    public ArrayList<Task[]> findConflicts(LocalDateTime from, LocalDateTime to) {
+        long stamp = readLockWithIndex(() -> slotsByDue == null, this::buildDateIndex);
+        try {
+            ArrayList<Task[]> result = new ArrayList<>();
+            eventSlots.forEachOverlappingPair(minuteOf(from), minuteOf(to),
+                    (first, second) -> result.add(new Task[]{slots.get(first), slots.get(second)}));
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void buildDateIndex() {
+        slotsByDue = new TreeMap<>();
+        eventSlots = new IntervalTree();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            if (slotIds[slot] != 0) {
+                addToDateIndex(LazyTaskList.peek(slots, slot), slot);
+            }
+        }
+    }
+
+    /**
+     * Takes the read lock, first building an index under the write lock if it is missing.
+     *
+     * @param isMissing tells whether the index is missing
+     * @param build builds the index
+     * @return the stamp of the read lock
+     */
+    private long readLockWithIndex(BooleanSupplier isMissing, Runnable build) {
+        long stamp = lock.readLock();
+        if (!isMissing.getAsBoolean()) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        if (isMissing.getAsBoolean()) {
+            try {
+                build.run();
+            } catch (RuntimeException | Error e) {
+                lock.unlockWrite(stamp);
+                throw e;
+            }
+        }
+        return lock.tryConvertToReadLock(stamp);
+    }
+
+    /**
+     * Runs a read without locking, and again under the read lock if a change got in the way.
+     * The first attempt may see the list mid-change, so anything it throws is discarded with its result.
+     *
+     * @param reader the read, which must not change anything
+     * @return the result of the read
+     */
+    private int readOptimistically(IntSupplier reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = reader.getAsInt();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state from a concurrent change; retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T readOptimistically(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state from a concurrent change; retry under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void addToDateIndex(Task task, int slot) {
+        if (task instanceof Deadline) {
+            long due = ((Deadline) task).getByMinute();
+            slotsByDue.computeIfAbsent(due, d -> new CompressedBitmap()).add(slot);
+        } else if (task instanceof Event) {
+            long start = ((Event) task).getFromMinute();
+            eventSlots.insert(start, lastMinuteOf((Event) task, start), slot);
+        }
+    }
+
+    private void removeFromDateIndex(Task task, int slot) {
+        if (task instanceof Deadline) {
+            long due = ((Deadline) task).getByMinute();
+            CompressedBitmap dueSlots = slotsByDue.get(due);
+            dueSlots.remove(slot);
+            if (dueSlots.isEmpty()) {
+                slotsByDue.remove(due);
+            }
+        } else if (task instanceof Event) {
+            eventSlots.remove(((Event) task).getFromMinute(), slot);
+        }
+    }
+
+    /**
+     * Returns the last minute that an event occupies. An event that ends when it starts occupies that minute.
+     */
+    private static long lastMinuteOf(Event event, long start) {
+        return Math.max(start, event.getToMinute() - 1);
+    }
+
+    /**
+     * Returns the epoch minute of a query bound, to compare with the times that deadlines and events keep.
+     */
+    private static long minuteOf(LocalDateTime time) {
+        return DateTimeParser.toEpochMinute(time);
     }
 
     /**
      * Returns the task at the specified index.
-     * 
+     *
      * @param index the index of the task
      * @return the task at the specified index
      */
     public Task getTask(int index) {
-        // Let the ArrayList handle bounds checking to maintain expected exception behavior
-        return tasks.get(index);
+        if (slots instanceof LazyTaskList) {
+            // Building a task from the store is not a pure read
+            long stamp = lock.readLock();
+            try {
+                return slots.get(toSlot(index));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return readOptimistically(() -> slots.get(toSlot(index)));
+    }
+
+    /**
+     * Returns the task with the given id.
+     *
+     * @param id the task id
+     * @return the task, or null if no task has that id
+     */
+    public Task getTaskById(int id) {
+        long stamp = lock.readLock();
+        try {
+            int slot = id > 0 ? slotById.get(id) : -1;
+            return slot < 0 ? null : slots.get(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the current position of the task with the given id.
+     *
+     * @param id the task id
+     * @return the 0-based index, or -1 if no task has that id
+     */
+    public int indexOfId(int id) {
+        return readOptimistically(() -> positionOfId(id));
+    }
+
+    private int positionOfId(int id) {
+        int slot = id > 0 ? slotById.get(id) : -1;
+        return slot < 0 ? -1 : (int) liveSlots.prefixSum(slot);
+    }
+
+    /**
+     * Converts a task reference typed by the user to a 0-based index.
+     * A reference is either a 1-based display number, such as {@code 3}, or a task id prefixed
+     * with {@code @}, such as {@code @42}.
+     *
+     * @param reference the task reference
+     * @return the index, which is out of range if no task matches
+     * @throws NumberFormatException if the reference is not a number
+     */
+    public int resolveIndex(String reference) {
+        int start = 0;
+        int end = reference.length();
+        while (start < end && reference.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && reference.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return resolveIndex(reference, start, end);
+    }
+
+    /**
+     * Converts a task reference that is part of a longer text to a 0-based index, without copying it.
+     *
+     * @param text the text that holds the reference
+     * @param start the start of the reference
+     * @param end the end of the reference
+     * @return the index, which is out of range if no task matches
+     * @throws NumberFormatException if the reference is not a number
+     */
+    public int resolveIndex(CharSequence text, int start, int end) {
+        if (start < end && text.charAt(start) == '@') {
+            return indexOfId(Integer.parseInt(text, start + 1, end, 10));
+        }
+        return Integer.parseInt(text, start, end, 10) - 1;
+    }
+
+    private int resolveIndexLocked(CharSequence text, int start, int end) {
+        if (start < end && text.charAt(start) == '@') {
+            return positionOfId(Integer.parseInt(text, start + 1, end, 10));
+        }
+        return Integer.parseInt(text, start, end, 10) - 1;
+    }
+
+    /**
+     * Converts a selection of tasks typed by the user to 0-based indexes. A selection is a comma-separated
+     * list of task references, as accepted by {@link #resolveIndex(String)}, and ranges of them such as
+     * {@code 3-40}; the word {@code done} selects every task that is done.
+     *
+     * @param text the text that holds the selection
+     * @param start the start of the selection
+     * @param end the end of the selection
+     * @return the selected indexes, in ascending order and without repeats
+     * @throws NumberFormatException if a reference is not a number or a range runs backwards
+     * @throws IndexOutOfBoundsException if a reference matches no task
+     */
+    public int[] resolveIndices(CharSequence text, int start, int end) {
+        long stamp = lock.readLock();
+        try {
+            BitSet selected = new BitSet(size);
+            int itemStart = start;
+            while (itemStart <= end) {
+                int itemEnd = itemStart;
+                while (itemEnd < end && text.charAt(itemEnd) != ',') {
+                    itemEnd++;
+                }
+                selectItem(text, trimStart(text, itemStart, itemEnd), trimEnd(text, itemStart, itemEnd), selected);
+                itemStart = itemEnd + 1;
+            }
+            return selected.stream().toArray();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void selectItem(CharSequence text, int start, int end, BitSet selected) {
+        if (end - start == SELECT_DONE.length() && SELECT_DONE.contentEquals(text.subSequence(start, end))) {
+            for (int slot = 0, index = 0; slot < slots.size(); slot++) {
+                if (slotIds[slot] != 0 && LazyTaskList.peek(slots, slot).isDone()) {
+                    selected.set(index);
+                }
+                index += slotIds[slot] != 0 ? 1 : 0;
+            }
+            return;
+        }
+        // A dash after the first character separates a range; a leading one is a negative number
+        int dash = Math.min(start + 1, end);
+        while (dash < end && text.charAt(dash) != '-') {
+            dash++;
+        }
+        int first = checkIndex(resolveIndexLocked(text, start, trimEnd(text, start, dash)));
+        int last = dash < end ? checkIndex(resolveIndexLocked(text, trimStart(text, dash + 1, end), end)) : first;
+        if (last < first) {
+            throw new NumberFormatException("Range runs backwards: " + text.subSequence(start, end));
+        }
+        selected.set(first, last + 1);
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    private static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private int[] toSlots(int[] indices) {
+        int[] selectedSlots = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            selectedSlots[i] = toSlot(indices[i]);
+        }
+        return selectedSlots;
+    }
+
+    private int toSlot(int index) {
+        Objects.checkIndex(index, size);
+        return freeSlots == 0 ? index : liveSlots.select(index);
     }
 
     /**
      * Returns the number of tasks in the list.
-     * 
+     *
      * @return the size of the task list
      */
     public int size() {
-        return tasks.size();
+        return readOptimistically(() -> size);
+    }
+
+    /**
+     * Returns the id that the next new task without an id will get.
+     *
+     * @return the next task id
+     */
+    public int getNextId() {
+        return readOptimistically(() -> nextId);
     }
 
     /**
-     * Returns the list of all tasks.
-     * 
+     * Returns a copy of the list of all tasks.
+     * When the tasks are lazily loaded, this builds every task; prefer {@link #asList()} for reading.
+     *
      * @return the ArrayList of tasks
      */
     public ArrayList<Task> getTasks() {
-        return tasks;
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Task> tasks = new ArrayList<>(size);
+            for (int slot = 0; slot < slots.size(); slot++) {
+                if (slotIds[slot] != 0) {
+                    tasks.add(slots.get(slot));
+                }
+            }
+            return tasks;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the tasks in order as they were after the last change, for code that reads every task, such
+     * as a save or a listing on another thread. Later changes to the list do not show in the snapshot.
+     * Taking it neither locks nor copies, and holding it does not hold up changes.
+     *
+     * @return the latest snapshot
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the tasks in order without copying or building them.
+     * The returned list is a read-only view that follows later changes to this TaskList, so it is meant
+     * for the thread that makes the changes; other threads should use {@link #snapshot()}.
+     *
+     * @return the list of tasks
+     */
+    public List<Task> asList() {
+        return new View();
     }
 
     /**
      * Marks a task as done or not done.
-     * 
+     *
      * @param index the index of the task to mark
      * @param isDone true to mark as done, false to mark as not done
      */
     public void markTask(int index, boolean isDone) {
-        // Let the ArrayList handle bounds checking to maintain expected exception behavior
-        Task task = tasks.get(index);
-        assert task != null : "Task at index " + index + " should not be null";
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            markSlot(toSlot(index), isDone);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Marks the tasks at the given indexes as done or not done.
+     *
+     * @param indices the indexes of the tasks to mark, in ascending order
+     * @param isDone true to mark as done, false to mark as not done
+     * @return the marked tasks, in list order
+     */
+    public ArrayList<Task> markTasks(int[] indices, boolean isDone) {
+        long stamp = lock.writeLock();
+        try {
+            beginStep();
+            ArrayList<Task> marked = new ArrayList<>(indices.length);
+            for (int slot : toSlots(indices)) {
+                marked.add(markSlot(slot, isDone));
+            }
+            return marked;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private Task markSlot(int slot, boolean isDone) {
+        Task task = slots.get(slot);
+        assert task != null : "Task should not be null";
+        if (history != null && task.isDone() != isDone) {
+            history.recordMark(task.getId(), task.isDone());
+        }
         if (isDone) {
             task.markAsDone();
         } else {
             task.markAsNotDone();
         }
+        frozenTasks = frozenTasks.set(slot, task.copy());
+        return task;
+    }
+
+    /**
+     * Keeps the operations that revert each later change in a history, for {@link #undo()} and
+     * {@link #redo()}.
+     *
+     * @param history the history, or null to stop keeping one
+     */
+    public void setUndoHistory(UndoHistory history) {
+        long stamp = lock.writeLock();
+        try {
+            this.history = history;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void beginStep() {
+        if (history != null) {
+            history.beginStep();
+        }
+    }
+
+    /**
+     * Reverts the last change that has not been undone yet.
+     *
+     * @return the operations that reverted it, in the order they were applied, or an empty list if
+     *         there is nothing to undo
+     */
+    public ArrayList<UndoHistory.Operation> undo() {
+        return replay(true);
+    }
+
+    /**
+     * Applies again the last change that was undone, if nothing has changed since.
+     *
+     * @return the operations that applied it, in the order they were applied, or an empty list if
+     *         there is nothing to redo
+     */
+    public ArrayList<UndoHistory.Operation> redo() {
+        return replay(false);
+    }
+
+    private ArrayList<UndoHistory.Operation> replay(boolean isUndo) {
+        long stamp = lock.writeLock();
+        try {
+            ArrayList<UndoHistory.Operation> applied = new ArrayList<>();
+            UndoHistory.Operation[] step = history == null ? null : history.startReplay(isUndo);
+            if (step == null) {
+                return applied;
+            }
+            try {
+                for (int i = step.length - 1; i >= 0; i--) {
+                    UndoHistory.Operation operation = apply(step[i]);
+                    if (operation != null) {
+                        applied.add(operation);
+                    }
+                }
+            } finally {
+                history.endReplay();
+            }
+            reclaimFreeSlotsIfSparse();
+            return applied;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies one operation from the history, which records the operation that reverts it.
+     *
+     * @return the operation with the task and the position it was applied to, or null if the task
+     *         is no longer in the list
+     */
+    private UndoHistory.Operation apply(UndoHistory.Operation operation) {
+        UndoHistory.Kind kind = operation.getKind();
+        if (kind == UndoHistory.Kind.INSERT) {
+            int index = Math.min(operation.getIndex(), size);
+            insertTaskLocked(operation.getTask(), index);
+            return new UndoHistory.Operation(kind, operation.getId(), index, operation.getTask(), null);
+        }
+        int slot = slotById.get(operation.getId());
+        if (slot < 0) {
+            return null;
+        }
+        int index = (int) liveSlots.prefixSum(slot);
+        Task task;
+        switch (kind) {
+            case REMOVE:
+                task = removeSlot(slot);
+                break;
+            case MARK:
+            case UNMARK:
+                task = markSlot(slot, kind == UndoHistory.Kind.MARK);
+                break;
+            case TAG:
+                task = tagSlot(slot, operation.getTag());
+                break;
+            default:
+                task = untagSlot(slot, operation.getTag());
+                break;
+        }
+        return new UndoHistory.Operation(kind, operation.getId(), index, task, operation.getTag());
     }
 
     /**
      * Checks if the given index is valid for this task list.
-     * 
+     *
      * @param index the index to check
      * @return true if the index is valid, false otherwise
      */
     public boolean isValidIndex(int index) {
-        return index >= 0 && index < tasks.size();
+        return index >= 0 && index < size();
     }
 
     /**
-     * Finds tasks whose descriptions contain the given keyword (case-insensitive).
-     * 
-     * @param keyword the keyword to search for
+     * Finds tasks whose descriptions contain every word of the keyword, case-insensitively.
+     * Each word also matches the longer words it starts, so {@code "proj rep"} finds
+     * "Project report". The results are ranked by BM25 relevance, best first, with equally relevant
+     * tasks kept in list order.
+     *
+     * @param keyword the words to search for
      * @return an ArrayList of tasks that match the keyword
      */
     public ArrayList<Task> findTasks(String keyword) {
         assert keyword != null : "Search keyword cannot be null";
-        ArrayList<Task> matchingTasks = new ArrayList<>();
-        for (Task task : tasks) {
-            assert task != null : "Task in list should not be null";
-            assert task.getDescription() != null : "Task description should not be null";
-            if (task.getDescription().toLowerCase().contains(keyword.toLowerCase())) {
-                matchingTasks.add(task);
+        long stamp = readLockWithIndex(() -> textIndex == null, this::buildTextIndex);
+        try {
+            int[] matches = textIndex.search(keyword);
+            ArrayList<Task> matchingTasks = new ArrayList<>(matches.length);
+            for (int slot : matches) {
+                matchingTasks.add(slots.get(slot));
+            }
+            return matchingTasks;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void buildTextIndex() {
+        textIndex = new TextIndex();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            if (slotIds[slot] != 0) {
+                textIndex.add(slot, LazyTaskList.peek(slots, slot).getDescription());
             }
         }
-        return matchingTasks;
+    }
+
+    /**
+     * The tasks of a TaskList as they were at one version. A snapshot never changes; its tasks are copies
+     * that must only be read. Tasks left in the store are built on every read and not kept.
+     */
+    public static class Snapshot extends AbstractList<Task> implements RandomAccess {
+        private final PersistentVector<Task> tasks;
+        private final long version;
+        private final MappedTaskStore store;
+        private final int[] records;
+
+        private Snapshot(PersistentVector<Task> tasks, long version, MappedTaskStore store, int[] records) {
+            this.tasks = tasks;
+            this.version = version;
+            this.store = store;
+            this.records = records;
+        }
+
+        @Override
+        public Task get(int index) {
+            int slot = tasks.slotAt(index);
+            Task task = tasks.getSlot(slot);
+            return task != null ? task : store.materialize(records[slot]);
+        }
+
+        @Override
+        public int size() {
+            return tasks.size();
+        }
+
+        /**
+         * Returns the version of the list that this snapshot shows. Versions start at 0 and grow by one
+         * with every operation that changes the list.
+         *
+         * @return the version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        int peekId(int index) {
+            int slot = tasks.slotAt(index);
+            Task task = tasks.getSlot(slot);
+            return task != null ? task.getId() : store.idAt(records[slot]);
+        }
+    }
+
+    /**
+     * Read-only view of the live tasks in order.
+     */
+    class View extends AbstractList<Task> implements RandomAccess {
+        @Override
+        public Task get(int index) {
+            return getTask(index);
+        }
+
+        @Override
+        public int size() {
+            return TaskList.this.size();
+        }
+
+        Task peek(int index) {
+            return readOptimistically(() -> LazyTaskList.peek(slots, toSlot(index)));
+        }
+
+        int peekId(int index) {
+            return readOptimistically(() -> slotIds[toSlot(index)]);
+        }
     }
 }
@@ -0,0 +1,240 @@
+package sofi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over task descriptions with BM25 ranking.
+ *
+ * <p>Descriptions are split into lower-cased runs of letters and digits. Each distinct token maps to a
+ * posting list of the slots that contain it, in ascending slot order, with the number of times it occurs.
+ * Tokens are kept sorted, so every query term also matches the tokens it is a prefix of. A query matches
+ * the documents that contain all of its terms, and they are ranked by their BM25 score.</p>
+ *
+ * <p>Removed slots stay in the posting lists and are skipped at query time; the collection statistics
+ * that BM25 uses are updated straight away.</p>
+ */
+public class TextIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final TreeMap<String, Postings> postingsByToken = new TreeMap<>();
+    private final BitSet removedSlots = new BitSet();
+    private int[] lengths = new int[16];
+    private int documentCount;
+    private long totalLength;
+
+    /**
+     * Splits text into lower-cased tokens of letters and digits.
+     *
+     * @param text the text to split
+     * @return the tokens, in order
+     */
+    public static List<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean isWordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Indexes the text of a slot. Slots must be added in ascending order.
+     *
+     * @param slot the slot
+     * @param text the text to index
+     */
+    public void add(int slot, String text) {
+        List<String> tokens = tokenize(text);
+        if (slot >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(slot + 1, lengths.length * 2));
+        }
+        lengths[slot] = tokens.size();
+        removedSlots.clear(slot);
+        documentCount++;
+        totalLength += tokens.size();
+        for (String token : tokens) {
+            postingsByToken.computeIfAbsent(token, t -> new Postings()).add(slot);
+        }
+    }
+
+    /**
+     * Removes a slot from the index.
+     *
+     * @param slot the slot
+     * @param text the text that the slot was indexed with
+     */
+    public void remove(int slot, String text) {
+        if (removedSlots.get(slot)) {
+            return;
+        }
+        removedSlots.set(slot);
+        documentCount--;
+        totalLength -= lengths[slot];
+        String previous = null;
+        List<String> tokens = tokenize(text);
+        tokens.sort(null);
+        for (String token : tokens) {
+            if (!token.equals(previous)) {
+                postingsByToken.get(token).documentFrequency--;
+                previous = token;
+            }
+        }
+    }
+
+    /**
+     * Finds the slots whose text contains every term of the query, each term also matching the
+     * tokens it is a prefix of.
+     *
+     * @param query the query text
+     * @return the matching slots, best match first; slots with equal scores are in ascending order
+     */
+    public int[] search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || documentCount == 0) {
+            return new int[0];
+        }
+        double averageLength = Math.max((double) totalLength / documentCount, 1);
+        Matches matches = null;
+        for (String term : terms) {
+            Matches termMatches = new Matches(0);
+            for (Postings postings : expand(term)) {
+                termMatches = Matches.union(termMatches, score(postings, averageLength));
+            }
+            matches = matches == null ? termMatches : Matches.intersect(matches, termMatches);
+            if (matches.size == 0) {
+                return new int[0];
+            }
+        }
+        return matches.rank();
+    }
+
+    private Collection<Postings> expand(String prefix) {
+        return postingsByToken.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+    }
+
+    private Matches score(Postings postings, double averageLength) {
+        double df = Math.max(postings.documentFrequency, 0);
+        double idf = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+        Matches result = new Matches(postings.size);
+        for (int i = 0; i < postings.size; i++) {
+            int slot = postings.slots[i];
+            if (removedSlots.get(slot)) {
+                continue;
+            }
+            double tf = postings.frequencies[i];
+            double norm = K1 * (1 - B + B * lengths[slot] / averageLength);
+            result.slots[result.size] = slot;
+            result.scores[result.size] = idf * tf * (K1 + 1) / (tf + norm);
+            result.size++;
+        }
+        return result;
+    }
+
+    /**
+     * Slots that contain one token, in ascending order, with the token's count in each.
+     */
+    private static class Postings {
+        private int[] slots = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+        private int documentFrequency;
+
+        void add(int slot) {
+            if (size > 0 && slots[size - 1] == slot) {
+                frequencies[size - 1]++;
+                return;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            slots[size] = slot;
+            frequencies[size] = 1;
+            size++;
+            documentFrequency++;
+        }
+    }
+
+    /**
+     * Scored slots in ascending slot order.
+     */
+    private static class Matches {
+        private final int[] slots;
+        private final double[] scores;
+        private int size;
+
+        Matches(int capacity) {
+            this.slots = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        static Matches union(Matches a, Matches b) {
+            Matches result = new Matches(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while (i < a.size || j < b.size) {
+                if (j == b.size || (i < a.size && a.slots[i] < b.slots[j])) {
+                    result.append(a.slots[i], a.scores[i++]);
+                } else if (i == a.size || a.slots[i] > b.slots[j]) {
+                    result.append(b.slots[j], b.scores[j++]);
+                } else {
+                    result.append(a.slots[i], a.scores[i++] + b.scores[j++]);
+                }
+            }
+            return result;
+        }
+
+        static Matches intersect(Matches a, Matches b) {
+            Matches result = new Matches(Math.min(a.size, b.size));
+            int i = 0;
+            int j = 0;
+            while (i < a.size && j < b.size) {
+                if (a.slots[i] < b.slots[j]) {
+                    i++;
+                } else if (a.slots[i] > b.slots[j]) {
+                    j++;
+                } else {
+                    result.append(a.slots[i], a.scores[i++] + b.scores[j++]);
+                }
+            }
+            return result;
+        }
+
+        private void append(int slot, double score) {
+            slots[size] = slot;
+            scores[size] = score;
+            size++;
+        }
+
+        /**
+         * Orders the slots by descending score, breaking ties by slot, with a single primitive sort:
+         * the bits of a positive float sort like the float itself.
+         */
+        int[] rank() {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                int scoreBits = Float.floatToIntBits((float) Math.max(scores[i], 0));
+                keys[i] = ((long) (Integer.MAX_VALUE - scoreBits) << 32) | slots[i];
+            }
+            Arrays.sort(keys);
+            int[] ranked = new int[size];
+            for (int i = 0; i < size; i++) {
+                ranked[i] = (int) keys[i];
+            }
+            return ranked;
+        }
+    }
+}
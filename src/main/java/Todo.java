@@ -7,9 +7,7 @@ public class Todo extends Task {
     }
 
     @Override
-    public String toString() {
-        String tagsString = getTagsString();
-        return "[T]" + getStatusIcon() + " " + description + 
-               (tagsString.isEmpty() ? "" : " " + tagsString);
+    protected String typeIcon() {
+        return "[T]";
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,33 @@
 package sofi;
 
+import java.io.PrintStream;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.List;
 
 public class Ui {
+    // Set -Dsofi.ids=true to show each task's id after it in lists, for use with commands that accept @id
+    private static final String IDS_PROPERTY = "sofi.ids";
+
     private Scanner scanner;
+    private final PrintStream out;
+    private final boolean isShowingIds;
 
     public Ui() {
-        this.scanner = new Scanner(System.in);
+        this(System.out);
+    }
+
+    /**
+     * Constructs a Ui that reads commands from standard input and writes its messages to the given stream.
+     * Batch mode passes a buffered stream so that messages are not flushed line by line. Standard input
+     * is only opened when the first command is read.
+     *
+     * @param out the stream to write messages to
+     */
+    public Ui(PrintStream out) {
+        assert out != null : "Output stream cannot be null";
+        this.out = out;
+        this.isShowingIds = Boolean.getBoolean(IDS_PROPERTY);
     }
 
     public void showWelcome() {
@@ -15,88 +35,209 @@ public class Ui {
                 "Hello! I'm SOFI\n" +
                 "What can I do for you?\n" +
                 "____________________________________________________________";
-        System.out.println(greet);
+        out.println(greet);
     }
 
     public void showGoodbye() {
-        System.out.println("____________________________________________________________");
-        System.out.println("Bye. Hope to see you again soon!");
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+        out.println("Bye. Hope to see you again soon!");
+        out.println("____________________________________________________________");
     }
 
     public void showLine() {
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
     }
 
     public String readCommand() {
+        if (scanner == null) {
+            scanner = new Scanner(System.in);
+        }
         return scanner.nextLine();
     }
 
     public void showError(String message) {
-        System.out.println("____________________________________________________________");
-        System.out.println(message);
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+        out.println(message);
+        out.println("____________________________________________________________");
     }
 
     public void showTaskAdded(Task task, int totalTasks) {
-        System.out.println("____________________________________________________________");
-        System.out.println("Added this task:\n   " + task.toString());
-        System.out.println("Now you have " + totalTasks + " tasks in the list.");
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+        out.println("Added this task:\n   " + task.toString());
+        out.println("Now you have " + totalTasks + " tasks in the list.");
+        out.println("____________________________________________________________");
     }
 
-    public void showTaskList(ArrayList<Task> tasks) {
-        System.out.println("____________________________________________________________");
-        System.out.println("Here are the tasks in your list:");
-        for (int i = 0; i < tasks.size(); i++) {
-            System.out.println((i + 1) + ". " + tasks.get(i).toString());
+    public void showConflictWarning(ArrayList<Task> conflicting) {
+        out.println("____________________________________________________________");
+        out.println("Heads up! This event overlaps:");
+        for (Task task : conflicting) {
+            out.println("   " + task.toString() + idSuffix(task));
+        }
+        out.println("____________________________________________________________");
+    }
+
+    public void showConflicts(ArrayList<Task[]> conflicts) {
+        out.println("____________________________________________________________");
+        if (conflicts.isEmpty()) {
+            out.println("No overlapping events found.");
+        } else {
+            out.println("Here are the overlapping events:");
+            for (int i = 0; i < conflicts.size(); i++) {
+                Task[] pair = conflicts.get(i);
+                out.println((i + 1) + ". " + pair[0].toString() + idSuffix(pair[0]));
+                out.println("   overlaps " + pair[1].toString() + idSuffix(pair[1]));
+            }
         }
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+    }
+
+    public void showTaskList(List<Task> tasks) {
+        out.println("____________________________________________________________");
+        out.println("Here are the tasks in your list:");
+        out.print(formatNumbered(tasks));
+        out.println("____________________________________________________________");
     }
 
     public void showTaskMarked(Task task, boolean isDone) {
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
         if (isDone) {
-            System.out.println("Nice! I've marked this task as done:\n" + "   " + task.toString());
+            out.println("Nice! I've marked this task as done:\n" + "   " + task.toString());
         } else {
-            System.out.println("OK, I've marked this task as not done yet:\n" + "   " + task.toString());
+            out.println("OK, I've marked this task as not done yet:\n" + "   " + task.toString());
         }
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
     }
 
     public void showTaskRemoved(Task task, int totalTasks) {
-        System.out.println("____________________________________________________________");
-        System.out.println("Noted. I've removed this task:\n  " + task.toString());
-        System.out.println("Now you have " + totalTasks + " tasks in the list.");
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+        out.println("Noted. I've removed this task:\n  " + task.toString());
+        out.println("Now you have " + totalTasks + " tasks in the list.");
+        out.println("____________________________________________________________");
     }
 
-    public void showLoadingError() {
-        System.out.println("____________________________________________________________");
-        System.out.println("Couldn't load previous tasks. Starting fresh.");
-        System.out.println("____________________________________________________________");
+    public void showTasksMarked(List<Task> tasks, boolean isDone) {
+        if (tasks.size() == 1) {
+            showTaskMarked(tasks.get(0), isDone);
+            return;
+        }
+        out.println("____________________________________________________________");
+        if (isDone) {
+            out.println("Nice! I've marked these " + tasks.size() + " tasks as done:");
+        } else {
+            out.println("OK, I've marked these " + tasks.size() + " tasks as not done yet:");
+        }
+        showIndented(tasks);
+        out.println("____________________________________________________________");
     }
 
-    public void showFoundTasks(ArrayList<Task> tasks) {
-        System.out.println("____________________________________________________________");
-        System.out.println("Here are the matching tasks in your list:");
+    public void showTasksRemoved(List<Task> tasks, int totalTasks) {
+        if (tasks.size() == 1) {
+            showTaskRemoved(tasks.get(0), totalTasks);
+            return;
+        }
+        out.println("____________________________________________________________");
+        out.println("Noted. I've removed these " + tasks.size() + " tasks:");
+        showIndented(tasks);
+        out.println("Now you have " + totalTasks + " tasks in the list.");
+        out.println("____________________________________________________________");
+    }
+
+    public void showTasksTagged(List<Task> tasks, String tag, boolean isTagged) {
+        if (tasks.size() == 1) {
+            showTaskTagged(tasks.get(0), tag, isTagged);
+            return;
+        }
+        out.println("____________________________________________________________");
+        if (isTagged) {
+            out.println("Nice! I've tagged these " + tasks.size() + " tasks with #" + tag + ":");
+        } else {
+            out.println("OK, I've removed the #" + tag + " tag from these " + tasks.size() + " tasks:");
+        }
+        showIndented(tasks);
+        out.println("____________________________________________________________");
+    }
+
+    public void showUndone(List<UndoHistory.Operation> operations, boolean isUndo, int totalTasks) {
+        out.println("____________________________________________________________");
+        out.println(isUndo ? "OK, I've undone your last change:" : "OK, I've redone that change:");
+        for (UndoHistory.Operation operation : operations) {
+            out.println("   " + operation.toString());
+        }
+        out.println("Now you have " + totalTasks + " tasks in the list.");
+        out.println("____________________________________________________________");
+    }
+
+    /**
+     * Formats tasks as a numbered list in one builder, one line per task, so that a long list costs one
+     * string rather than several per task.
+     */
+    private String formatNumbered(List<Task> tasks) {
+        String newLine = System.lineSeparator();
+        StringBuilder sb = new StringBuilder(tasks.size() * 64);
         for (int i = 0; i < tasks.size(); i++) {
-            System.out.println((i + 1) + ". " + tasks.get(i).toString());
+            Task task = tasks.get(i);
+            sb.append(i + 1).append(". ");
+            task.appendTo(sb);
+            if (isShowingIds) {
+                sb.append(" (@").append(task.getId()).append(')');
+            }
+            sb.append(newLine);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the id to show after a task, or nothing unless ids were asked for.
+     */
+    private String idSuffix(Task task) {
+        return isShowingIds ? " (@" + task.getId() + ")" : "";
+    }
+
+    private void showIndented(List<Task> tasks) {
+        for (Task task : tasks) {
+            out.println("   " + task.toString());
         }
-        System.out.println("____________________________________________________________");
+    }
+
+    public void showLoadingError() {
+        out.println("____________________________________________________________");
+        out.println("Couldn't load previous tasks. Starting fresh.");
+        out.println("____________________________________________________________");
+    }
+
+    public void showLoadReport(LoadReport report) {
+        out.println("____________________________________________________________");
+        out.println("Some saved data was damaged and could not be fully restored.");
+        out.println(report.getSummary());
+        out.println("____________________________________________________________");
+    }
+
+    public void showFoundTasks(ArrayList<Task> tasks) {
+        out.println("____________________________________________________________");
+        out.println("Here are the matching tasks in your list:");
+        out.print(formatNumbered(tasks));
+        out.println("____________________________________________________________");
     }
 
     public void showTaskTagged(Task task, String tag, boolean isTagged) {
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
         if (isTagged) {
-            System.out.println("Nice! I've tagged this task with #" + tag + ":\n   " + task.toString());
+            out.println("Nice! I've tagged this task with #" + tag + ":\n   " + task.toString());
         } else {
-            System.out.println("OK, I've removed the #" + tag + " tag from this task:\n   " + task.toString());
+            out.println("OK, I've removed the #" + tag + " tag from this task:\n   " + task.toString());
         }
-        System.out.println("____________________________________________________________");
+        out.println("____________________________________________________________");
+    }
+
+    public void flush() {
+        out.flush();
     }
 
     public void close() {
-        scanner.close();
+        out.flush();
+        if (scanner != null) {
+            scanner.close();
+        }
     }
 }
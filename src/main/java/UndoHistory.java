@@ -0,0 +1,352 @@
+package sofi;
+
+/**
+ * Bounded history of changes to a {@link TaskList}, for undo and redo.
+ *
+ * <p>A change is not kept as a copy of the list but as the operations that revert it, such as
+ * "re-insert this task at position 4" or "clear the done bit of task @12". Operations are stored in
+ * parallel arrays used as ring buffers, so recording one costs O(1) whatever the size of the list.
+ * Each command that changes the list is one step, however many tasks it touched. The oldest steps are
+ * dropped once there are more than {@code maxSteps} of them or their estimated size passes
+ * {@code maxBytes}; a single step that is larger than that on its own is not kept at all.</p>
+ *
+ * <p>Undoing a step applies its operations in reverse and records what reverts them as a step that can
+ * be redone. Any new change clears the steps that could be redone.</p>
+ */
+public class UndoHistory {
+    /** Number of steps kept by default. */
+    public static final int DEFAULT_MAX_STEPS = 100;
+    /** Estimated memory that the kept steps may use by default. */
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * The operations that revert a change.
+     */
+    public enum Kind {
+        /** Puts a removed task back at its position. */
+        INSERT,
+        /** Removes an added task. */
+        REMOVE,
+        /** Marks a task as done. */
+        MARK,
+        /** Marks a task as not done. */
+        UNMARK,
+        /** Adds a tag to a task. */
+        TAG,
+        /** Removes a tag from a task. */
+        UNTAG
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final byte STEP_START = (byte) 0x80;
+    // Estimated bytes of one operation in the arrays, and of the objects an operation keeps alive
+    private static final int OPERATION_BYTES = 17;
+    private static final int OBJECT_BYTES = 48;
+
+    private final int maxSteps;
+    private final long maxBytes;
+    private final OperationRing undoSteps = new OperationRing();
+    private final OperationRing redoSteps = new OperationRing();
+    private OperationRing recording = undoSteps;
+    private boolean isReplaying;
+    private boolean isStepStart;
+    private boolean isDiscardingStep;
+
+    /**
+     * Constructs a history with the default limits.
+     */
+    public UndoHistory() {
+        this(DEFAULT_MAX_STEPS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a history with the given limits.
+     *
+     * @param maxSteps the number of steps to keep
+     * @param maxBytes the estimated memory that the kept steps may use
+     */
+    public UndoHistory(int maxSteps, long maxBytes) {
+        assert maxSteps > 0 : "Need room for at least one step";
+        assert maxBytes > 0 : "Memory cap must be positive";
+        this.maxSteps = maxSteps;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns whether there is a step to undo.
+     *
+     * @return true if {@link TaskList#undo()} would change the list
+     */
+    public boolean canUndo() {
+        return undoSteps.steps > 0;
+    }
+
+    /**
+     * Returns whether there is a step to redo.
+     *
+     * @return true if {@link TaskList#redo()} would change the list
+     */
+    public boolean canRedo() {
+        return redoSteps.steps > 0;
+    }
+
+    /**
+     * Returns the number of steps that can be undone.
+     *
+     * @return the number of undo steps
+     */
+    public int getUndoDepth() {
+        return undoSteps.steps;
+    }
+
+    /**
+     * Returns the estimated memory used by the steps that can be undone or redone.
+     *
+     * @return the estimate in bytes
+     */
+    public long getEstimatedBytes() {
+        return undoSteps.bytes + redoSteps.bytes;
+    }
+
+    /**
+     * Starts a new step. The operations recorded until the next step revert one change together.
+     */
+    void beginStep() {
+        isStepStart = true;
+        isDiscardingStep = false;
+    }
+
+    void recordInsert(Task task, int index) {
+        record(Kind.INSERT, task.getId(), index, task);
+    }
+
+    void recordRemove(int id) {
+        record(Kind.REMOVE, id, -1, null);
+    }
+
+    void recordMark(int id, boolean isDone) {
+        record(isDone ? Kind.MARK : Kind.UNMARK, id, -1, null);
+    }
+
+    void recordTag(int id, String tag, boolean isTagged) {
+        record(isTagged ? Kind.TAG : Kind.UNTAG, id, -1, tag);
+    }
+
+    private void record(Kind kind, int id, int index, Object payload) {
+        if (isDiscardingStep) {
+            return;
+        }
+        if (isStepStart && !isReplaying) {
+            redoSteps.clear();
+        }
+        recording.push((byte) (kind.ordinal() | (isStepStart ? STEP_START : 0)), id, index, payload);
+        isStepStart = false;
+        while (recording.steps > maxSteps || recording.bytes > maxBytes) {
+            if (recording.steps == 1) {
+                // The step being recorded is too large to keep on its own
+                recording.clear();
+                isDiscardingStep = true;
+                return;
+            }
+            recording.dropOldestStep();
+        }
+    }
+
+    /**
+     * Takes the last step off the undo or redo history and records what reverts it as a new step of
+     * the other one, until {@link #endReplay()}.
+     *
+     * @param isUndo true to take an undo step, false to take a redo step
+     * @return the operations of the step in the order they were recorded, or null if there is none
+     */
+    Operation[] startReplay(boolean isUndo) {
+        OperationRing source = isUndo ? undoSteps : redoSteps;
+        if (source.steps == 0) {
+            return null;
+        }
+        Operation[] step = source.popStep();
+        recording = isUndo ? redoSteps : undoSteps;
+        isReplaying = true;
+        beginStep();
+        return step;
+    }
+
+    void endReplay() {
+        recording = undoSteps;
+        isReplaying = false;
+        isStepStart = false;
+    }
+
+    private static long sizeOf(Object payload) {
+        if (payload instanceof Task) {
+            return OBJECT_BYTES + 2L * ((Task) payload).getDescription().length();
+        } else if (payload instanceof String) {
+            return OBJECT_BYTES + 2L * ((String) payload).length();
+        }
+        return 0;
+    }
+
+    /**
+     * One operation of a step, as it is applied to the list.
+     */
+    public static final class Operation {
+        private final Kind kind;
+        private final int id;
+        private final int index;
+        private final Task task;
+        private final String tag;
+
+        Operation(Kind kind, int id, int index, Task task, String tag) {
+            this.kind = kind;
+            this.id = id;
+            this.index = index;
+            this.task = task;
+            this.tag = tag;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the position of the task that the operation changed, when it was applied.
+         *
+         * @return the 0-based index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        /**
+         * Returns the tag that the operation added or removed.
+         *
+         * @return the tag, or null for other operations
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case INSERT:
+                    return "restored " + task;
+                case REMOVE:
+                    return "removed " + task;
+                case MARK:
+                    return "marked as done " + task;
+                case UNMARK:
+                    return "marked as not done " + task;
+                case TAG:
+                    return "tagged #" + tag + " " + task;
+                default:
+                    return "untagged #" + tag + " " + task;
+            }
+        }
+    }
+
+    /**
+     * Operations in parallel arrays used as a ring buffer, oldest first. The first operation of each
+     * step has the {@link #STEP_START} bit set in its kind.
+     */
+    private static final class OperationRing {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private byte[] kinds = new byte[INITIAL_CAPACITY];
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int[] indexes = new int[INITIAL_CAPACITY];
+        private Object[] payloads = new Object[INITIAL_CAPACITY];
+        private int head;
+        private int count;
+        private int steps;
+        private long bytes;
+
+        void push(byte kind, int id, int index, Object payload) {
+            if (count == kinds.length) {
+                grow();
+            }
+            int i = (head + count) & (kinds.length - 1);
+            kinds[i] = kind;
+            ids[i] = id;
+            indexes[i] = index;
+            payloads[i] = payload;
+            count++;
+            bytes += OPERATION_BYTES + sizeOf(payload);
+            if ((kind & STEP_START) != 0) {
+                steps++;
+            }
+        }
+
+        void dropOldestStep() {
+            do {
+                bytes -= OPERATION_BYTES + sizeOf(payloads[head]);
+                payloads[head] = null;
+                head = (head + 1) & (kinds.length - 1);
+                count--;
+            } while (count > 0 && (kinds[head] & STEP_START) == 0);
+            steps--;
+        }
+
+        Operation[] popStep() {
+            int mask = kinds.length - 1;
+            int length = 1;
+            while ((kinds[(head + count - length) & mask] & STEP_START) == 0) {
+                length++;
+            }
+            Operation[] step = new Operation[length];
+            for (int k = 0; k < length; k++) {
+                int i = (head + count - length + k) & mask;
+                Object payload = payloads[i];
+                step[k] = new Operation(KINDS[kinds[i] & ~STEP_START], ids[i], indexes[i],
+                        payload instanceof Task ? (Task) payload : null,
+                        payload instanceof String ? (String) payload : null);
+                bytes -= OPERATION_BYTES + sizeOf(payload);
+                payloads[i] = null;
+            }
+            count -= length;
+            steps--;
+            return step;
+        }
+
+        void clear() {
+            for (int k = 0; k < count; k++) {
+                payloads[(head + k) & (kinds.length - 1)] = null;
+            }
+            head = 0;
+            count = 0;
+            steps = 0;
+            bytes = 0;
+        }
+
+        /**
+         * Doubles the capacity, moving the operations to the start of the new arrays.
+         */
+        private void grow() {
+            int capacity = kinds.length * 2;
+            byte[] newKinds = new byte[capacity];
+            int[] newIds = new int[capacity];
+            int[] newIndexes = new int[capacity];
+            Object[] newPayloads = new Object[capacity];
+            for (int k = 0; k < count; k++) {
+                int i = (head + k) & (kinds.length - 1);
+                newKinds[k] = kinds[i];
+                newIds[k] = ids[i];
+                newIndexes[k] = indexes[i];
+                newPayloads[k] = payloads[i];
+            }
+            kinds = newKinds;
+            ids = newIds;
+            indexes = newIndexes;
+            payloads = newPayloads;
+            head = 0;
+        }
+    }
+}
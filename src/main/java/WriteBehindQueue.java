@@ -0,0 +1,274 @@
+package sofi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asynchronous persistence stage that sits in front of a {@link Journal}.
+ * Records submitted by the command thread are buffered and written by a background
+ * thread in batches, so a burst of mutations costs one write and one sync instead of one each.
+ * A record is on disk at most one flush interval after it was submitted.
+ *
+ * <p>A failed batch is kept and retried, waiting twice as long after each failure. After
+ * {@value #MAX_ATTEMPTS} failures in a row the writer stops until the next {@link #flush()}.
+ * The first failure is reported by the next {@link #submit(String)}, {@link #submitAll(List)}
+ * or {@link #flush()}, so the caller hears of it while the records are still pending.</p>
+ */
+public class WriteBehindQueue {
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Journal journal;
+    private final long flushIntervalMillis;
+    private final int maxBatchSize;
+    private final Thread writerThread;
+
+    private final ArrayList<String> pending = new ArrayList<>();
+    private long submittedCount;
+    private long writtenCount;
+    private long batchCount;
+    private long failureCount;
+    private String lastFailureMessage;
+    private IOException unreportedFailure;
+    private int consecutiveFailures;
+    private boolean isStalled;
+    private boolean isFlushRequested;
+    private boolean isClosed;
+
+    /**
+     * Constructs a WriteBehindQueue and starts its writer thread.
+     *
+     * @param journal the journal that batches are appended to
+     * @param flushIntervalMillis the longest time a record waits before it is written
+     * @param maxBatchSize the number of pending records that triggers an immediate write
+     */
+    public WriteBehindQueue(Journal journal, long flushIntervalMillis, int maxBatchSize) {
+        assert journal != null : "Journal cannot be null";
+        assert flushIntervalMillis > 0 : "Flush interval must be positive";
+        assert maxBatchSize > 0 : "Batch size must be positive";
+        this.journal = journal;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.writerThread = new Thread(this::runWriter, "sofi-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a record to be appended to the journal.
+     *
+     * @param record the journal record
+     * @throws IOException if an earlier write failed; the record is queued even so
+     */
+    public synchronized void submit(String record) throws IOException {
+        assert record != null : "Journal record cannot be null";
+        assert !isClosed : "Cannot submit to a closed queue";
+        pending.add(record);
+        submittedCount++;
+        if (pending.size() == 1 || pending.size() >= maxBatchSize) {
+            notifyAll();
+        }
+        reportFailure();
+    }
+
+    /**
+     * Queues several records to be appended to the journal together, in order.
+     *
+     * @param records the journal records
+     * @throws IOException if an earlier write failed; the records are queued even so
+     */
+    public synchronized void submitAll(List<String> records) throws IOException {
+        assert records != null : "Journal records cannot be null";
+        assert !isClosed : "Cannot submit to a closed queue";
+        boolean wasEmpty = pending.isEmpty();
+        pending.addAll(records);
+        submittedCount += records.size();
+        if (wasEmpty || pending.size() >= maxBatchSize) {
+            notifyAll();
+        }
+        reportFailure();
+    }
+
+    /**
+     * Blocks until every record submitted so far has been written. A writer that gave up after
+     * repeated failures starts retrying again.
+     *
+     * @throws IOException if an earlier write failed, or a write failed before the records could be written
+     */
+    public synchronized void flush() throws IOException {
+        if (isStalled) {
+            isStalled = false;
+            consecutiveFailures = 0;
+            notifyAll();
+        }
+        reportFailure();
+        long target = submittedCount;
+        long failuresBefore = failureCount;
+        while (writtenCount < target) {
+            if (failureCount > failuresBefore) {
+                unreportedFailure = null;
+                throw new IOException("Failed to write journal: " + lastFailureMessage);
+            }
+            isFlushRequested = true;
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing journal", e);
+            }
+        }
+    }
+
+    /**
+     * Flushes every pending record and stops the writer thread.
+     *
+     * @throws IOException if the pending records could not be written
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                isClosed = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of records still waiting to be written.
+     *
+     * @return the number of pending records
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of records written so far.
+     *
+     * @return the number of written records
+     */
+    public synchronized long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * Returns the number of batches written so far.
+     *
+     * @return the number of batches
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the number of batch writes that failed.
+     *
+     * @return the number of failed writes
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the message of the most recent failed write.
+     *
+     * @return the failure message, or null if no write has failed
+     */
+    public synchronized String getLastFailureMessage() {
+        return lastFailureMessage;
+    }
+
+    /**
+     * Throws the first failure that no caller has heard of yet.
+     */
+    private void reportFailure() throws IOException {
+        if (unreportedFailure == null) {
+            return;
+        }
+        IOException failure = unreportedFailure;
+        unreportedFailure = null;
+        throw new IOException("Failed to write journal: " + failure.getMessage(), failure);
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<String> batch = takeBatch();
+            if (batch == null) {
+                return;
+            }
+            try {
+                journal.appendAll(batch);
+                synchronized (this) {
+                    writtenCount += batch.size();
+                    batchCount++;
+                    consecutiveFailures = 0;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    // Put the batch back in front so ordering is kept for the next attempt
+                    pending.addAll(0, batch);
+                    failureCount++;
+                    consecutiveFailures++;
+                    lastFailureMessage = e.getMessage();
+                    if (unreportedFailure == null) {
+                        unreportedFailure = e;
+                    }
+                    if (consecutiveFailures >= MAX_ATTEMPTS) {
+                        isStalled = true;
+                    }
+                    notifyAll();
+                    if (!isStalled) {
+                        backOff(flushIntervalMillis << (consecutiveFailures - 1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a batch is due and removes it from the pending records.
+     *
+     * @return the batch to write, or null if the queue was closed and drained, or closed after the writer gave up
+     */
+    private synchronized List<String> takeBatch() {
+        while (pending.isEmpty() || isStalled) {
+            if (isClosed) {
+                return null;
+            }
+            waitQuietly(0);
+        }
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        long remaining = flushIntervalMillis;
+        while (pending.size() < maxBatchSize && !isFlushRequested && !isClosed && remaining > 0) {
+            waitQuietly(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        isFlushRequested = false;
+        int size = Math.min(pending.size(), maxBatchSize);
+        List<String> batch = new ArrayList<>(pending.subList(0, size));
+        pending.subList(0, size).clear();
+        return batch;
+    }
+
+    /**
+     * Waits out the delay before a retry. Submits and flushes do not cut it short.
+     */
+    private void backOff(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        for (long remaining = millis; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+            waitQuietly(remaining);
+        }
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
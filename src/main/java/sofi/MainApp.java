@@ -31,6 +31,11 @@ public class MainApp extends Application {
         }
     }
     
+    @Override
+    public void stop() {
+        sofi.close();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,5 +1,7 @@
 package sofi;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ScrollPane;
@@ -7,13 +9,15 @@ import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.VBox;
-
-import java.util.ArrayList;
+import javafx.util.Duration;
 
 /**
  * Controller for MainWindow. Provides the layout for the other controls.
+ * Commands go through the same dispatch as the console, by way of {@link SOFI#respond(String)}.
  */
 public class MainWindow extends AnchorPane {
+    private static final Duration EXIT_DELAY = Duration.seconds(1.5);
+
     @FXML
     private ScrollPane scrollPane;
     @FXML
@@ -38,7 +42,8 @@ public class MainWindow extends AnchorPane {
 
     /**
      * Creates two dialog boxes, one echoing user input and the other containing SOFI's reply and then appends them to
-     * the dialog container. Clears the user input after processing.
+     * the dialog container. Clears the user input after processing. After {@code bye}, the window closes once the
+     * reply has been seen.
      */
     @FXML
     private void handleUserInput() {
@@ -49,210 +54,37 @@ public class MainWindow extends AnchorPane {
                 DialogBox.getSofiDialog(response, sofiImage)
         );
         userInput.clear();
+        if (sofi.isExiting()) {
+            userInput.setDisable(true);
+            sendButton.setDisable(true);
+            PauseTransition delay = new PauseTransition(EXIT_DELAY);
+            delay.setOnFinished(event -> Platform.exit());
+            delay.play();
+        }
     }
 
     /**
-     * You should have your own function to generate a response to user input.
-     * Replace this stub with your completed method.
+     * Computes SOFI's reply to a line of input, without the divider lines that frame it on the console.
      */
     private String getResponse(String input) {
-        try {
-            if (input == null || input.trim().isEmpty()) {
-                return "Please enter a command. Type 'help' for available commands.";
-            }
-            
-            if (input.equals("bye")) {
-                return "Bye. Hope to see you again soon!";
-            }
-            
-            // Process the command through SOFI
-            String command = Parser.parseCommand(input);
-                
-                if (command.equals("list")) {
-                    return formatTaskList(sofi.getTasks().getTasks());
-                } else if (command.equals("todo")) {
-                    String taskDescription = Parser.parseTodoDescription(input);
-                    if (taskDescription.isEmpty()) {
-                        return "A todo needs a description. Try: todo read book";
-                    }
-                    sofi.getTasks().addTask(new Todo(taskDescription));
-                    sofi.saveTasks();
-                return "Got it. I've added this task:\n   " 
-                        + sofi.getTasks().getTask(sofi.getTasks().size() - 1).toString() 
-                        + "\nNow you have " + sofi.getTasks().size() + " tasks in the list.";
-            } else if (command.equals("deadline")) {
-                if (!input.contains(" /by ")) {
-                    return "Deadlines must include /by. Example: deadline return book /by Sunday";
-                }
-                String[] parts = Parser.parseDeadline(input);
-                String taskDescription = parts[0];
-                String by = parts[1];
-                if (taskDescription.isEmpty()) {
-                    return "The deadline description cannot be empty.";
-                }
-                if (by.isEmpty()) {
-                    return "The /by time cannot be empty.";
-                }
-                sofi.getTasks().addTask(new Deadline(taskDescription, by));
-                sofi.saveTasks();
-                return "Got it. I've added this task:\n   " 
-                        + sofi.getTasks().getTask(sofi.getTasks().size() - 1).toString() 
-                        + "\nNow you have " + sofi.getTasks().size() + " tasks in the list.";
-            } else if (command.equals("event")) {
-                if (!input.contains(" /from ") || !input.contains(" /to ")) {
-                    return "Events need /from and /to. Example: event team meeting /from Mon 2pm /to Mon 3pm";
-                }
-                String[] parts = Parser.parseEvent(input);
-                String taskDescription = parts[0];
-                String from = parts[1];
-                String to = parts[2];
-                if (taskDescription.isEmpty()) {
-                    return "The event description cannot be empty.";
-                }
-                if (from.isEmpty() || to.isEmpty()) {
-                    return "Both /from and /to times must be provided.";
-                }
-                sofi.getTasks().addTask(new Event(taskDescription, from, to));
-                sofi.saveTasks();
-                return "Got it. I've added this task:\n   " 
-                        + sofi.getTasks().getTask(sofi.getTasks().size() - 1).toString() 
-                        + "\nNow you have " + sofi.getTasks().size() + " tasks in the list.";
-            } else if (command.equals("mark")) {
-                String[] tokens = input.split(" ", 2);
-                if (tokens.length < 2 || tokens[1].trim().isEmpty()) {
-                    return "Please provide a task number to mark. Example: mark 2";
-                }
-                int taskNumber;
-                try {
-                    taskNumber = Parser.parseTaskNumber(input);
-                } catch (NumberFormatException e) {
-                    return "That doesn't look like a number. Try: mark 2";
-                }
-                if (!sofi.getTasks().isValidIndex(taskNumber)) {
-                    return "Task number out of range. You have " + sofi.getTasks().size() + " task(s).";
-                }
-                sofi.getTasks().markTask(taskNumber, true);
-                sofi.saveTasks();
-                return "Nice! I've marked this task as done:\n   " + sofi.getTasks().getTask(taskNumber).toString();
-            } else if (command.equals("unmark")) {
-                String[] tokens = input.split(" ", 2);
-                if (tokens.length < 2 || tokens[1].trim().isEmpty()) {
-                    return "Please provide a task number to unmark. Example: unmark 2";
-                }
-                int taskNumber;
-                try {
-                    taskNumber = Parser.parseTaskNumber(input);
-                } catch (NumberFormatException e) {
-                    return "That doesn't look like a number. Try: unmark 2";
-                }
-                if (!sofi.getTasks().isValidIndex(taskNumber)) {
-                    return "Task number out of range. You have " + sofi.getTasks().size() + " task(s).";
-                }
-                sofi.getTasks().markTask(taskNumber, false);
-                sofi.saveTasks();
-                return "OK, I've marked this task as not done yet:\n   " + sofi.getTasks().getTask(taskNumber).toString();
-            } else if (command.equals("delete")) {
-                String[] tokens = input.split(" ", 2);
-                if (tokens.length < 2 || tokens[1].trim().isEmpty()) {
-                    return "Please provide the task number to delete. Example: delete 3";
-                }
-                int taskNumber;
-                try {
-                    taskNumber = Parser.parseTaskNumber(input);
-                } catch (NumberFormatException e) {
-                    return "That doesn't look like a number. Try: delete 3";
-                }
-                if (!sofi.getTasks().isValidIndex(taskNumber)) {
-                    return "Task number out of range. You have " + sofi.getTasks().size() + " task(s).";
-                }
-                Task removed = sofi.getTasks().removeTask(taskNumber);
-                sofi.saveTasks();
-                return "Noted. I've removed this task:\n   " + removed.toString() 
-                        + "\nNow you have " + sofi.getTasks().size() + " tasks in the list.";
-            } else if (command.equals("find")) {
-                String searchTerm = Parser.parseFindKeyword(input);
-                if (searchTerm.isEmpty()) {
-                    return "Please provide a search term. Example: find book";
-                }
-                ArrayList<Task> matchingTasks = sofi.getTasks().findTasks(searchTerm);
-                return formatFoundTasks(matchingTasks);
-            } else if (command.equals("tag")) {
-                String[] parts = Parser.parseTagCommand(input);
-                String taskNumberStr = parts[0];
-                String tag = parts[1];
-                
-                if (taskNumberStr.isEmpty() || tag.isEmpty()) {
-                    return "Please provide a task number and tag. Example: tag 1 fun";
-                }
-                
-                int taskNumber;
-                try {
-                    taskNumber = Integer.parseInt(taskNumberStr) - 1;
-                } catch (NumberFormatException e) {
-                    return "That doesn't look like a number. Try: tag 1 fun";
-                }
-                
-                if (!sofi.getTasks().isValidIndex(taskNumber)) {
-                    return "Task number out of range. You have " + sofi.getTasks().size() + " task(s).";
-                }
-                
-                Task task = sofi.getTasks().getTask(taskNumber);
-                task.addTag(tag);
-                sofi.saveTasks();
-                return "Nice! I've tagged this task with #" + tag + ":\n   " + task.toString();
-            } else if (command.equals("untag")) {
-                String[] parts = Parser.parseUntagCommand(input);
-                String taskNumberStr = parts[0];
-                String tag = parts[1];
-                
-                if (taskNumberStr.isEmpty() || tag.isEmpty()) {
-                    return "Please provide a task number and tag. Example: untag 1 fun";
-                }
-                
-                int taskNumber;
-                try {
-                    taskNumber = Integer.parseInt(taskNumberStr) - 1;
-                } catch (NumberFormatException e) {
-                    return "That doesn't look like a number. Try: untag 1 fun";
-                }
-                
-                if (!sofi.getTasks().isValidIndex(taskNumber)) {
-                    return "Task number out of range. You have " + sofi.getTasks().size() + " task(s).";
-                }
-                
-                Task task = sofi.getTasks().getTask(taskNumber);
-                task.removeTag(tag);
-                sofi.saveTasks();
-                return "OK, I've removed the #" + tag + " tag from this task:\n   " + task.toString();
-            } else {
-                return "I don't recognize that command. Try: list, todo, deadline, event, mark, unmark, delete, find, tag, untag, bye";
+        StringBuilder reply = new StringBuilder();
+        for (String line : sofi.respond(input).split("\\R")) {
+            if (!isDivider(line)) {
+                reply.append(line).append('\n');
             }
-        } catch (Exception e) {
-            return "An error occurred: " + e.getMessage() + "\nPlease try again or restart the application.";
         }
+        return reply.toString().trim();
     }
-    
-    private String formatTaskList(ArrayList<Task> tasks) {
-        if (tasks.isEmpty()) {
-            return "You have no tasks in your list.";
-        }
-        
-        StringBuilder result = new StringBuilder("Here are the tasks in your list:\n");
-        for (int i = 0; i < tasks.size(); i++) {
-            result.append((i + 1)).append(". ").append(tasks.get(i).toString()).append("\n");
-        }
-        return result.toString().trim();
-    }
-    
-    private String formatFoundTasks(ArrayList<Task> tasks) {
-        if (tasks.isEmpty()) {
-            return "No matching tasks found.";
+
+    private static boolean isDivider(String line) {
+        if (line.isEmpty()) {
+            return false;
         }
-        
-        StringBuilder result = new StringBuilder("Here are the matching tasks in your list:\n");
-        for (int i = 0; i < tasks.size(); i++) {
-            result.append((i + 1)).append(". ").append(tasks.get(i).toString()).append("\n");
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) != '_') {
+                return false;
+            }
         }
-        return result.toString().trim();
+        return true;
     }
 }
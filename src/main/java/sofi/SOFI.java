@@ -1,8 +1,18 @@
 package sofi;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * SOFI is a task management application that allows users to manage their tasks.
@@ -10,19 +20,6 @@ import java.util.ArrayList;
  * The application provides a command-line interface for task management.
  */
 public class SOFI {
-    // Command constants
-    private static final String COMMAND_BYE = "bye";
-    private static final String COMMAND_LIST = "list";
-    private static final String COMMAND_TODO = "todo";
-    private static final String COMMAND_DEADLINE = "deadline";
-    private static final String COMMAND_EVENT = "event";
-    private static final String COMMAND_MARK = "mark";
-    private static final String COMMAND_UNMARK = "unmark";
-    private static final String COMMAND_DELETE = "delete";
-    private static final String COMMAND_FIND = "find";
-    private static final String COMMAND_TAG = "tag";
-    private static final String COMMAND_UNTAG = "untag";
-    
     // Error message constants
     private static final String ERROR_TODO_DESCRIPTION = "A todo needs a description. Try: todo read book";
     private static final String ERROR_DEADLINE_BY = "Deadlines must include /by. Example: deadline return book /by Sunday";
@@ -36,15 +33,70 @@ public class SOFI {
     private static final String ERROR_TASK_NUMBER_DELETE = "Please provide the task number to delete. Example: delete 3";
     private static final String ERROR_NOT_A_NUMBER = "That doesn't look like a number. Try: ";
     private static final String ERROR_TASK_OUT_OF_RANGE = "Task number out of range. You have ";
+    private static final String ERROR_NOTHING_SELECTED = "No tasks match that selection.";
     private static final String ERROR_FIND_TERM = "Please provide a search term. Example: find book";
     private static final String ERROR_TAG_TASK_NUMBER = "Please provide a task number and tag. Example: tag 1 fun";
     private static final String ERROR_UNTAG_TASK_NUMBER = "Please provide a task number and tag. Example: untag 1 fun";
     private static final String ERROR_TAG_EMPTY = "Tag cannot be empty. Example: tag 1 fun";
-    private static final String ERROR_UNKNOWN_COMMAND = "I don't recognize that command. Try: list, todo, deadline, event, mark, unmark, delete, find, tag, untag, bye";
+    private static final String ERROR_TAGGED_QUERY = "Please provide tags joined by 'and' or 'or'. Example: tagged work and urgent";
+    private static final String ERROR_DUE_RANGE = "Please provide a start and end date. Example: due 2024-12-01 2024-12-07";
+    private static final String ERROR_AGENDA_DATE = "Please provide a date. Example: agenda 2024-12-01";
+    private static final String ERROR_CONFLICTS_RANGE = "Please provide a start and end date, or none. Example: conflicts 2024-12-01 2024-12-07";
+    private static final String ERROR_SAVE_FAILED = "Some of your changes could not be saved to disk.";
+    private static final String ERROR_UNKNOWN_COMMAND = "I don't recognize that command. Try: list, todo, deadline, event, mark, unmark, delete, find, tag, untag, tagged, due, agenda, conflicts, undo, redo, bye";
+    private static final String ERROR_NOTHING_TO_UNDO = "There is nothing to undo.";
+    private static final String ERROR_NOTHING_TO_REDO = "There is nothing to redo.";
     
+    // Write-behind settings: a mutation reaches the disk within the interval, or once this many are pending.
+    // Set -Dsofi.flush.millis and -Dsofi.flush.batch to change them
+    private static final String FLUSH_MILLIS_PROPERTY = "sofi.flush.millis";
+    private static final String FLUSH_BATCH_PROPERTY = "sofi.flush.batch";
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    // Set -Dsofi.format=binary (or mapped) to write the data file in a compact format
+    private static final String FORMAT_PROPERTY = "sofi.format";
+    private static final String ARG_CONVERT = "--convert";
+
+    // --batch <file|-> [N] applies a command file, saving every N commands or only at the end
+    private static final String ARG_BATCH = "--batch";
+    private static final String STANDARD_INPUT = "-";
+    private static final int BATCH_OUTPUT_BUFFER_BYTES = 1 << 16;
+
+    // --serve <port|unix:path> serves the task list to many local clients at once
+    private static final String ARG_SERVE = "--serve";
+
+    // --history [N] lists the changes in the journal, or shows the tasks as they were after change N
+    private static final String ARG_HISTORY = "--history";
+
+    // Set -Dsofi.undo.steps and -Dsofi.undo.bytes to change how much undo history is kept
+    private static final String UNDO_STEPS_PROPERTY = "sofi.undo.steps";
+    private static final String UNDO_BYTES_PROPERTY = "sofi.undo.bytes";
+
     private Storage storage;
     private TaskList tasks;
     private Ui ui;
+    private long saveFailureCount;
+    private final CommandRegistry<CommandHandler> commands = new CommandRegistry<>();
+    private boolean isExiting;
+    private BatchReport batchReport;
+    private int batchChangeCount;
+
+    /**
+     * Carries out one command typed at the command line.
+     */
+    @FunctionalInterface
+    private interface CommandHandler {
+        void handle(String userInput) throws SofiException;
+    }
+
+    /**
+     * Appends the journal records for one change.
+     */
+    @FunctionalInterface
+    private interface JournalWrite {
+        void append() throws IOException;
+    }
 
     /**
      * Constructs a new SOFI instance with the specified file path for data storage.
@@ -52,10 +104,28 @@ public class SOFI {
      * @param filePath the path to the file where tasks will be stored
      */
     public SOFI(String filePath) {
-        ui = new Ui();
-        storage = new Storage(filePath);
+        this(filePath, new Ui());
+    }
+
+    /**
+     * Constructs a new SOFI instance that talks to the user through the given Ui.
+     *
+     * @param filePath the path to the file where tasks will be stored
+     * @param ui the Ui to read commands from and show messages with
+     */
+    public SOFI(String filePath, Ui ui) {
+        registerCommands();
+        this.ui = ui;
+        storage = new Storage(filePath, true);
+        storage.enableWriteBehind(
+                Math.max(Long.getLong(FLUSH_MILLIS_PROPERTY, DEFAULT_FLUSH_INTERVAL_MILLIS), 1),
+                Math.max(Integer.getInteger(FLUSH_BATCH_PROPERTY, DEFAULT_MAX_BATCH_SIZE), 1));
+        storage.setFormat(parseFormat(System.getProperty(FORMAT_PROPERTY, "text")));
         try {
-            tasks = new TaskList(storage.load());
+            tasks = new TaskList(storage.loadLazily(), storage.getNextTaskId());
+            if (storage.getLastLoadReport().hasProblems()) {
+                ui.showLoadReport(storage.getLastLoadReport());
+            }
             ui.showWelcome();
         } catch (IOException e) {
             // Start fresh if can't load existing tasks
@@ -68,105 +138,342 @@ public class SOFI {
             tasks = new TaskList();
             ui.showWelcome();
         }
+        tasks.setUndoHistory(new UndoHistory(
+                Math.max(Integer.getInteger(UNDO_STEPS_PROPERTY, UndoHistory.DEFAULT_MAX_STEPS), 1),
+                Math.max(Long.getLong(UNDO_BYTES_PROPERTY, UndoHistory.DEFAULT_MAX_BYTES), 1)));
+    }
+
+    private void registerCommands() {
+        commands.register(Command.BYE, userInput -> handleByeCommand());
+        commands.register(Command.LIST, userInput -> handleListCommand());
+        commands.register(Command.TODO, this::handleTodoCommand);
+        commands.register(Command.DEADLINE, this::handleDeadlineCommand);
+        commands.register(Command.EVENT, this::handleEventCommand);
+        commands.register(Command.MARK, this::handleMarkCommand);
+        commands.register(Command.UNMARK, this::handleUnmarkCommand);
+        commands.register(Command.DELETE, this::handleDeleteCommand);
+        commands.register(Command.FIND, this::handleFindCommand);
+        commands.register(Command.TAG, this::handleTagCommand);
+        commands.register(Command.UNTAG, this::handleUntagCommand);
+        commands.register(Command.TAGGED, this::handleTaggedCommand);
+        commands.register(Command.DUE, this::handleDueCommand);
+        commands.register(Command.AGENDA, this::handleAgendaCommand);
+        commands.register(Command.CONFLICTS, this::handleConflictsCommand);
+        commands.register(Command.UNDO, userInput -> handleUndoCommand(true));
+        commands.register(Command.REDO, userInput -> handleUndoCommand(false));
+        assert commands.size() == Command.values().length : "Every command needs a handler";
     }
 
     /**
      * Starts the main application loop, processing user commands until the user exits.
-     * Handles all user interactions including adding, listing, marking, and deleting tasks.
+     * Each line is dispatched through the command registry straight to its handler.
      */
     public void run() {
-        String userInput;
-
-        while (true) {
-            userInput = ui.readCommand();
-
-            try {
-                String command = Parser.parseCommand(userInput);
-                
-                if (command.equals(COMMAND_BYE)) {
-                    ui.showGoodbye();
-                    break;
-                } else if (command.equals(COMMAND_LIST)) {
-                    handleListCommand();
-                } else if (command.equals(COMMAND_TODO)) {
-                    handleTodoCommand(userInput);
-                } else if (command.equals(COMMAND_DEADLINE)) {
-                    handleDeadlineCommand(userInput);
-                } else if (command.equals(COMMAND_EVENT)) {
-                    handleEventCommand(userInput);
-                } else if (command.equals(COMMAND_MARK)) {
-                    handleMarkCommand(userInput);
-                } else if (command.equals(COMMAND_UNMARK)) {
-                    handleUnmarkCommand(userInput);
-                } else if (command.equals(COMMAND_DELETE)) {
-                    handleDeleteCommand(userInput);
-                } else if (command.equals(COMMAND_FIND)) {
-                    handleFindCommand(userInput);
-                } else if (command.equals(COMMAND_TAG)) {
-                    handleTagCommand(userInput);
-                } else if (command.equals(COMMAND_UNTAG)) {
-                    handleUntagCommand(userInput);
-                } else {
-                    throw new SofiException(ERROR_UNKNOWN_COMMAND);
+        while (!isExiting) {
+            execute(ui.readCommand());
+        }
+        ui.close();
+    }
+
+    /**
+     * Applies every command read from a script, in order, until the script ends or says {@code bye}.
+     * Changes are journaled like any other, so they are numbered and show up in the history; on top of
+     * that, the whole list is saved after every {@code saveInterval} commands, or only once at the end if
+     * the interval is 0. Storage is closed afterwards.
+     *
+     * @param commandReader the script, one command per line
+     * @param saveInterval the number of commands between saves, or 0 to save only at the end
+     * @return a summary of the run
+     * @throws IOException if the script cannot be read
+     */
+    public BatchReport runBatch(BufferedReader commandReader, int saveInterval) throws IOException {
+        assert saveInterval >= 0 : "Save interval cannot be negative";
+        batchReport = new BatchReport();
+        long failuresBefore = getSaveFailureCount();
+        long start = System.nanoTime();
+        try {
+            int commandsSinceSave = 0;
+            String userInput;
+            while (!isExiting && (userInput = commandReader.readLine()) != null) {
+                long commandStart = System.nanoTime();
+                boolean isError = !execute(userInput);
+                batchReport.recordCommand(System.nanoTime() - commandStart, isError);
+                commandsSinceSave++;
+                if (saveInterval > 0 && commandsSinceSave >= saveInterval) {
+                    saveBatchChanges();
+                    commandsSinceSave = 0;
                 }
-            } catch (SofiException e) {
-                ui.showError(e.getMessage());
-            } catch (Exception e) {
-                // Handle any unexpected errors during command processing
-                ui.showError("An unexpected error occurred. Please try again or restart the application.");
             }
+        } finally {
+            if (!isExiting) {
+                saveBatchChanges();
+                close();
+            }
+            ui.flush();
+            batchReport.setElapsedNanos(System.nanoTime() - start);
+            batchReport.setSaveFailureCount(getSaveFailureCount() - failuresBefore);
         }
-        ui.close();
+        BatchReport report = batchReport;
+        batchReport = null;
+        return report;
+    }
+
+    /**
+     * Carries out one command and returns the messages it would have shown, for callers such as
+     * {@link SofiServer} that talk to the user over something other than the console.
+     * Must not be called while {@link #run()} or {@link #runBatch(BufferedReader, int)} is running.
+     *
+     * @param userInput the command line
+     * @return the messages the command showed
+     */
+    public String respond(String userInput) {
+        Ui console = ui;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ui = new Ui(new PrintStream(output, false, StandardCharsets.UTF_8));
+        try {
+            execute(userInput);
+        } finally {
+            ui.flush();
+            ui = console;
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Looks up and carries out one command, showing any error to the user.
+     *
+     * @param userInput the command line
+     * @return true if the command succeeded, false if an error was shown
+     */
+    private boolean execute(String userInput) {
+        try {
+            CommandHandler handler = commands.lookup(userInput);
+            if (handler == null) {
+                throw new SofiException(ERROR_UNKNOWN_COMMAND);
+            }
+            handler.handle(userInput);
+            return true;
+        } catch (SofiException e) {
+            ui.showError(e.getMessage());
+        } catch (Exception e) {
+            // Handle any unexpected errors during command processing
+            ui.showError("An unexpected error occurred. Please try again or restart the application.");
+        }
+        return false;
+    }
+
+    /**
+     * Counts a change made while a batch is running, so that the batch knows it has something to save.
+     */
+    private void countBatchChange() {
+        if (batchReport != null) {
+            batchChangeCount++;
+        }
+    }
+
+    /**
+     * Saves the whole list once if anything changed since the last save.
+     */
+    private void saveBatchChanges() {
+        if (batchChangeCount == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        saveTasks();
+        batchChangeCount = 0;
+        batchReport.recordSave(System.nanoTime() - start);
     }
 
     /**
      * Saves the current task list to storage.
-     * Silently handles save errors to prevent application interruption.
+     * Save errors are counted and reported as warnings rather than interrupting the user.
      */
     public void saveTasks() {
         try {
-            storage.save(tasks.getTasks());
-        } catch (IOException ignore) {
-            // Ignore save errors to prevent application interruption
+            storage.save(tasks.snapshot());
+        } catch (IOException e) {
+            reportSaveFailure(e);
+        }
+    }
+
+    /**
+     * Persists a change that has been made to the task list. In journal mode, only the records that the
+     * given write appends are written, and a compaction is started if the journal has grown large;
+     * otherwise the whole list is saved.
+     *
+     * @param write appends the records that describe the change
+     */
+    private void persist(JournalWrite write) {
+        countBatchChange();
+        try {
+            if (storage.isJournalEnabled()) {
+                write.append();
+                storage.compactIfNeeded(tasks.snapshot());
+            } else {
+                storage.save(tasks.snapshot());
+            }
+        } catch (IOException e) {
+            reportSaveFailure(e);
+        }
+    }
+
+    /**
+     * Persists the operations that undid or redid a change, in the order they were applied.
+     *
+     * @param operations the operations, with the positions they were applied at
+     */
+    private void persistUndo(List<UndoHistory.Operation> operations) {
+        persist(() -> {
+            for (UndoHistory.Operation operation : operations) {
+                appendOperation(operation);
+            }
+        });
+    }
+
+    private void appendOperation(UndoHistory.Operation operation) throws IOException {
+        switch (operation.getKind()) {
+            case INSERT:
+                storage.appendInsert(operation.getIndex(), operation.getTask());
+                break;
+            case REMOVE:
+                storage.appendDelete(operation.getIndex(), operation.getTask());
+                break;
+            case MARK:
+            case UNMARK:
+                storage.appendMark(operation.getIndex(), operation.getTask(),
+                        operation.getKind() == UndoHistory.Kind.MARK);
+                break;
+            default:
+                storage.appendTag(operation.getIndex(), operation.getTask(), operation.getTag(),
+                        operation.getKind() == UndoHistory.Kind.TAG);
+                break;
+        }
+    }
+
+    /**
+     * Counts a failed save and warns about it without interrupting the user.
+     *
+     * @param e the error that caused the save to fail
+     */
+    private void reportSaveFailure(IOException e) {
+        saveFailureCount++;
+        System.err.println("Warning: Failed to save tasks - " + e.getMessage());
+    }
+
+    /**
+     * Returns the number of saves that failed, including background writes.
+     *
+     * @return the number of failed saves
+     */
+    public long getSaveFailureCount() {
+        return saveFailureCount + storage.getWriteFailureCount();
+    }
+
+    /**
+     * Returns whether {@code bye} has been carried out, after which storage is closed.
+     *
+     * @return true if SOFI is exiting
+     */
+    public boolean isExiting() {
+        return isExiting;
+    }
+
+    /**
+     * Blocks until every pending change has been written to disk.
+     *
+     * @return true if every change was saved, false otherwise
+     */
+    public boolean flush() {
+        try {
+            storage.flush();
+            return true;
+        } catch (IOException e) {
+            reportSaveFailure(e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes every pending change to disk and releases the journal.
+     *
+     * @return true if every change was saved, false otherwise
+     */
+    public boolean close() {
+        try {
+            storage.close();
+            return true;
+        } catch (IOException e) {
+            reportSaveFailure(e);
+            return false;
         }
     }
     
     /**
-     * Parses and validates a task number from user input.
+     * Parses and validates the tasks selected by user input.
+     * Tasks may be given by display number or by id, as in {@code delete @42}, as ranges such as
+     * {@code mark 3-40}, as comma-separated lists such as {@code delete 1,5,9-20}, or as {@code done}.
      * 
-     * @param userInput the user input containing the task number
+     * @param userInput the user input containing the selection
      * @param command the command being executed (for error messages)
-     * @return the parsed task number (0-based index)
-     * @throws SofiException if the task number is invalid
+     * @return the selected task numbers (0-based indexes), in ascending order
+     * @throws SofiException if the selection is missing, invalid or empty
      */
-    private int parseAndValidateTaskNumber(String userInput, String command) throws SofiException {
-        String[] tokens = userInput.split(" ", 2);
-        if (tokens.length < 2 || tokens[1].trim().isEmpty()) {
-            String errorMessage = command.equals(COMMAND_MARK) ? ERROR_TASK_NUMBER_MARK :
-                                command.equals(COMMAND_UNMARK) ? ERROR_TASK_NUMBER_UNMARK :
+    private int[] parseAndValidateTaskNumbers(String userInput, Command command) throws SofiException {
+        CommandTokenizer tokens = Parser.tokenize(userInput);
+        if (tokens.argumentStart() == tokens.argumentEnd()) {
+            String errorMessage = command == Command.MARK ? ERROR_TASK_NUMBER_MARK :
+                                command == Command.UNMARK ? ERROR_TASK_NUMBER_UNMARK :
                                 ERROR_TASK_NUMBER_DELETE;
             throw new SofiException(errorMessage);
         }
-        
-        int taskNumber;
+        return resolveSelection(tokens.getLine(), tokens.argumentStart(), tokens.argumentEnd(),
+                command.getKeyword() + " 2");
+    }
+
+    /**
+     * Resolves a task selection, reporting a malformed or out-of-range selection to the user.
+     *
+     * @param text the text that holds the selection
+     * @param start the start of the selection
+     * @param end the end of the selection
+     * @param example an example of the command, for the error message
+     * @return the selected task numbers (0-based indexes), in ascending order
+     * @throws SofiException if the selection is invalid or selects no task
+     */
+    private int[] resolveSelection(String text, int start, int end, String example) throws SofiException {
+        int[] taskNumbers;
         try {
-            taskNumber = Parser.parseTaskNumber(userInput);
+            taskNumbers = tasks.resolveIndices(text, start, end);
         } catch (NumberFormatException e) {
-            throw new SofiException(ERROR_NOT_A_NUMBER + command + " 2");
-        }
-        
-        if (!tasks.isValidIndex(taskNumber)) {
+            throw new SofiException(ERROR_NOT_A_NUMBER + example);
+        } catch (IndexOutOfBoundsException e) {
             throw new SofiException(ERROR_TASK_OUT_OF_RANGE + tasks.size() + " task(s).");
         }
-        
-        return taskNumber;
+        if (taskNumbers.length == 0) {
+            throw new SofiException(ERROR_NOTHING_SELECTED);
+        }
+        return taskNumbers;
     }
     
+    /**
+     * Handles the bye command, saving every pending change before exiting.
+     */
+    private void handleByeCommand() {
+        if (batchReport != null) {
+            saveBatchChanges();
+        }
+        if (!close()) {
+            ui.showError(ERROR_SAVE_FAILED);
+        }
+        ui.showGoodbye();
+        isExiting = true;
+    }
+
     /**
      * Handles the list command.
      */
     private void handleListCommand() {
-        ui.showTaskList(tasks.getTasks());
+        ui.showTaskList(tasks.snapshot());
     }
     
     /**
@@ -180,8 +487,9 @@ public class SOFI {
         if (taskDescription.isEmpty()) {
             throw new SofiException(ERROR_TODO_DESCRIPTION);
         }
-        tasks.addTask(new Todo(taskDescription));
-        saveTasks();
+        Task task = new Todo(taskDescription);
+        tasks.addTask(task);
+        persist(() -> storage.appendAdd(task));
         ui.showTaskAdded(tasks.getTask(tasks.size() - 1), tasks.size());
     }
     
@@ -204,13 +512,14 @@ public class SOFI {
         if (by.isEmpty()) {
             throw new SofiException(ERROR_DEADLINE_BY_EMPTY);
         }
-        tasks.addTask(new Deadline(taskDescription, by));
-        saveTasks();
+        Task task = new Deadline(taskDescription, by);
+        tasks.addTask(task);
+        persist(() -> storage.appendAdd(task));
         ui.showTaskAdded(tasks.getTask(tasks.size() - 1), tasks.size());
     }
     
     /**
-     * Handles the event command.
+     * Handles the event command, warning about any events that the new event overlaps.
      * 
      * @param userInput the user input containing the event command
      * @throws SofiException if the event format is invalid
@@ -229,9 +538,14 @@ public class SOFI {
         if (from.isEmpty() || to.isEmpty()) {
             throw new SofiException(ERROR_EVENT_TIMES_EMPTY);
         }
-        tasks.addTask(new Event(taskDescription, from, to));
-        saveTasks();
+        Event task = new Event(taskDescription, from, to);
+        ArrayList<Task> conflicting = tasks.findConflicting(task);
+        tasks.addTask(task);
+        persist(() -> storage.appendAdd(task));
         ui.showTaskAdded(tasks.getTask(tasks.size() - 1), tasks.size());
+        if (!conflicting.isEmpty()) {
+            ui.showConflictWarning(conflicting);
+        }
     }
     
     /**
@@ -241,10 +555,10 @@ public class SOFI {
      * @throws SofiException if the task number is invalid
      */
     private void handleMarkCommand(String userInput) throws SofiException {
-        int taskNumber = parseAndValidateTaskNumber(userInput, COMMAND_MARK);
-        tasks.markTask(taskNumber, true);
-        saveTasks();
-        ui.showTaskMarked(tasks.getTask(taskNumber), true);
+        int[] taskNumbers = parseAndValidateTaskNumbers(userInput, Command.MARK);
+        ArrayList<Task> marked = tasks.markTasks(taskNumbers, true);
+        persist(() -> storage.appendMarks(taskNumbers, marked, true));
+        ui.showTasksMarked(marked, true);
     }
     
     /**
@@ -254,10 +568,10 @@ public class SOFI {
      * @throws SofiException if the task number is invalid
      */
     private void handleUnmarkCommand(String userInput) throws SofiException {
-        int taskNumber = parseAndValidateTaskNumber(userInput, COMMAND_UNMARK);
-        tasks.markTask(taskNumber, false);
-        saveTasks();
-        ui.showTaskMarked(tasks.getTask(taskNumber), false);
+        int[] taskNumbers = parseAndValidateTaskNumbers(userInput, Command.UNMARK);
+        ArrayList<Task> marked = tasks.markTasks(taskNumbers, false);
+        persist(() -> storage.appendMarks(taskNumbers, marked, false));
+        ui.showTasksMarked(marked, false);
     }
     
     /**
@@ -267,14 +581,14 @@ public class SOFI {
      * @throws SofiException if the task number is invalid
      */
     private void handleDeleteCommand(String userInput) throws SofiException {
-        int taskNumber = parseAndValidateTaskNumber(userInput, COMMAND_DELETE);
-        Task removed = tasks.removeTask(taskNumber);
-        saveTasks();
-        ui.showTaskRemoved(removed, tasks.size());
+        int[] taskNumbers = parseAndValidateTaskNumbers(userInput, Command.DELETE);
+        ArrayList<Task> removed = tasks.removeTasks(taskNumbers);
+        persist(() -> storage.appendDeletes(taskNumbers, removed));
+        ui.showTasksRemoved(removed, tasks.size());
     }
     
     /**
-     * Handles the find command.
+     * Handles the find command. A keyword starting with # finds tasks with that tag.
      * 
      * @param userInput the user input containing the find command
      * @throws SofiException if the search term is empty
@@ -284,10 +598,83 @@ public class SOFI {
         if (searchTerm.isEmpty()) {
             throw new SofiException(ERROR_FIND_TERM);
         }
-        ArrayList<Task> matchingTasks = tasks.findTasks(searchTerm);
+        ArrayList<Task> matchingTasks = Parser.isTagKeyword(searchTerm)
+                ? tasks.findByTag(searchTerm.substring(1))
+                : tasks.findTasks(searchTerm);
         ui.showFoundTasks(matchingTasks);
     }
 
+    /**
+     * Handles the tagged command.
+     *
+     * @param userInput the user input containing the tagged command
+     * @throws SofiException if the tag query is missing or malformed
+     */
+    private void handleTaggedCommand(String userInput) throws SofiException {
+        String[] terms = Parser.parseTaggedQuery(userInput);
+        if (terms.length == 0) {
+            throw new SofiException(ERROR_TAGGED_QUERY);
+        }
+        ui.showFoundTasks(tasks.findTagged(terms));
+    }
+
+    /**
+     * Handles the due command, which lists the deadlines due within a date range.
+     *
+     * @param userInput the user input containing the due command
+     * @throws SofiException if the range is missing or a date is invalid
+     */
+    private void handleDueCommand(String userInput) throws SofiException {
+        LocalDateTime[] range;
+        try {
+            range = Parser.parseDueRange(userInput);
+        } catch (IllegalArgumentException e) {
+            throw new SofiException(e.getMessage());
+        }
+        if (range.length == 0) {
+            throw new SofiException(ERROR_DUE_RANGE);
+        }
+        ui.showFoundTasks(tasks.findDue(range[0], range[1]));
+    }
+
+    /**
+     * Handles the agenda command, which lists the deadlines and events of a day.
+     *
+     * @param userInput the user input containing the agenda command
+     * @throws SofiException if the date is missing or invalid
+     */
+    private void handleAgendaCommand(String userInput) throws SofiException {
+        LocalDateTime date;
+        try {
+            date = Parser.parseAgendaDate(userInput);
+        } catch (IllegalArgumentException e) {
+            throw new SofiException(e.getMessage());
+        }
+        if (date == null) {
+            throw new SofiException(ERROR_AGENDA_DATE);
+        }
+        ui.showFoundTasks(tasks.findAgenda(date.toLocalDate()));
+    }
+
+    /**
+     * Handles the conflicts command, which lists every pair of overlapping events, optionally within a date range.
+     *
+     * @param userInput the user input containing the conflicts command
+     * @throws SofiException if the range is malformed or a date is invalid
+     */
+    private void handleConflictsCommand(String userInput) throws SofiException {
+        LocalDateTime[] range;
+        try {
+            range = Parser.parseConflictsRange(userInput);
+        } catch (IllegalArgumentException e) {
+            throw new SofiException(e.getMessage());
+        }
+        if (range.length == 0) {
+            throw new SofiException(ERROR_CONFLICTS_RANGE);
+        }
+        ui.showConflicts(tasks.findConflicts(range[0], range[1]));
+    }
+
     /**
      * Handles the tag command.
      * 
@@ -303,21 +690,10 @@ public class SOFI {
             throw new SofiException(ERROR_TAG_TASK_NUMBER);
         }
         
-        int taskNumber;
-        try {
-            taskNumber = Integer.parseInt(taskNumberStr) - 1;
-        } catch (NumberFormatException e) {
-            throw new SofiException(ERROR_NOT_A_NUMBER + "tag 1 fun");
-        }
-        
-        if (!tasks.isValidIndex(taskNumber)) {
-            throw new SofiException(ERROR_TASK_OUT_OF_RANGE + tasks.size() + " task(s).");
-        }
-        
-        Task task = tasks.getTask(taskNumber);
-        task.addTag(tag);
-        saveTasks();
-        ui.showTaskTagged(task, tag, true);
+        int[] taskNumbers = resolveSelection(taskNumberStr, 0, taskNumberStr.length(), "tag 1 fun");
+        ArrayList<Task> changed = tasks.addTag(taskNumbers, tag);
+        persist(() -> storage.appendTags(taskNumbers, changed, tag, true));
+        ui.showTasksTagged(changed, tag, true);
     }
     
     /**
@@ -335,21 +711,25 @@ public class SOFI {
             throw new SofiException(ERROR_UNTAG_TASK_NUMBER);
         }
         
-        int taskNumber;
-        try {
-            taskNumber = Integer.parseInt(taskNumberStr) - 1;
-        } catch (NumberFormatException e) {
-            throw new SofiException(ERROR_NOT_A_NUMBER + "untag 1 fun");
-        }
-        
-        if (!tasks.isValidIndex(taskNumber)) {
-            throw new SofiException(ERROR_TASK_OUT_OF_RANGE + tasks.size() + " task(s).");
+        int[] taskNumbers = resolveSelection(taskNumberStr, 0, taskNumberStr.length(), "untag 1 fun");
+        ArrayList<Task> changed = tasks.removeTag(taskNumbers, tag);
+        persist(() -> storage.appendTags(taskNumbers, changed, tag, false));
+        ui.showTasksTagged(changed, tag, false);
+    }
+
+    /**
+     * Handles the undo and redo commands.
+     *
+     * @param isUndo true to undo the last change, false to redo the last undone change
+     * @throws SofiException if there is nothing to undo or redo
+     */
+    private void handleUndoCommand(boolean isUndo) throws SofiException {
+        ArrayList<UndoHistory.Operation> operations = isUndo ? tasks.undo() : tasks.redo();
+        if (operations.isEmpty()) {
+            throw new SofiException(isUndo ? ERROR_NOTHING_TO_UNDO : ERROR_NOTHING_TO_REDO);
         }
-        
-        Task task = tasks.getTask(taskNumber);
-        task.removeTag(tag);
-        saveTasks();
-        ui.showTaskTagged(task, tag, false);
+        persistUndo(operations);
+        ui.showUndone(operations, isUndo, tasks.size());
     }
 
     /**
@@ -361,9 +741,130 @@ public class SOFI {
         return tasks;
     }
 
+    private static Storage.Format parseFormat(String name) {
+        if (name.equalsIgnoreCase("binary")) {
+            return Storage.Format.BINARY;
+        } else if (name.equalsIgnoreCase("mapped")) {
+            return Storage.Format.MAPPED;
+        }
+        return Storage.Format.TEXT;
+    }
+
+    /**
+     * Converts a data file between formats: {@code --convert <source> <target> <text|binary|mapped>}.
+     */
+    private static void runConvert(String[] args) {
+        if (args.length != 4) {
+            System.out.println("Usage: " + ARG_CONVERT + " <source> <target> <text|binary|mapped>");
+            return;
+        }
+        try {
+            int count = Storage.convert(args[1], args[2], parseFormat(args[3]));
+            System.out.println("Converted " + count + " task(s) to " + args[2]);
+        } catch (IOException e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a command script: {@code --batch <file|-> [N]}, where {@code -} reads standard input.
+     * Messages are buffered and the summary is written to standard error once the script is done.
+     */
+    private static void runBatch(String[] args, String filePath) {
+        int saveInterval;
+        try {
+            saveInterval = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+        } catch (NumberFormatException e) {
+            saveInterval = -1;
+        }
+        if (args.length < 2 || args.length > 3 || saveInterval < 0) {
+            System.out.println("Usage: " + ARG_BATCH + " <file|" + STANDARD_INPUT + "> [save every N commands]");
+            return;
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, BATCH_OUTPUT_BUFFER_BYTES), false);
+        try (BufferedReader reader = args[1].equals(STANDARD_INPUT)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            BatchReport report = new SOFI(filePath, new Ui(out)).runBatch(reader, saveInterval);
+            System.err.println(report.getSummary());
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Could not read commands from " + args[1] + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the task list over a local socket until the process is stopped.
+     */
+    private static void runServer(String[] args, String filePath) {
+        if (args.length != 2) {
+            System.out.println("Usage: " + ARG_SERVE + " <port|" + SofiServer.UNIX_PREFIX + "path>");
+            return;
+        }
+        try {
+            SofiServer server = new SofiServer(new SOFI(filePath), args[1]);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    System.err.println("Warning: Failed to stop the server cleanly - " + e.getMessage());
+                }
+            }));
+            System.out.println("Serving tasks on " + server.getAddress());
+            server.serve();
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Could not serve on " + args[1] + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the changes recorded since the last save, or replays them to show the tasks as they were
+     * after one of them: {@code --history [N]}.
+     */
+    private static void runHistory(String[] args, String filePath) {
+        long sequence;
+        try {
+            sequence = args.length == 2 ? Long.parseLong(args[1]) : -1;
+        } catch (NumberFormatException e) {
+            sequence = -2;
+        }
+        if (args.length > 2 || sequence < -1) {
+            System.out.println("Usage: " + ARG_HISTORY + " [change number]");
+            return;
+        }
+        Storage storage = new Storage(filePath, true);
+        try {
+            if (sequence < 0) {
+                for (JournalEntry entry : storage.readHistory()) {
+                    System.out.println(entry);
+                }
+            } else {
+                new Ui(System.out).showTaskList(storage.loadAt(sequence));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not replay the history: " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(ARG_CONVERT)) {
+            runConvert(args);
+            return;
+        }
         String filePath = "." + java.io.File.separator + "data" 
                 + java.io.File.separator + "sofi.txt";
+        if (args.length > 0 && args[0].equals(ARG_BATCH)) {
+            runBatch(args, filePath);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(ARG_SERVE)) {
+            runServer(args, filePath);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(ARG_HISTORY)) {
+            runHistory(args, filePath);
+            return;
+        }
         new SOFI(filePath).run();
     }
 }
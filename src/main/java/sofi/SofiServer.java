@@ -0,0 +1,261 @@
+package sofi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Serves one SOFI task list to many clients over a local socket.
+ *
+ * <p>Clients speak the same command language as the console, one command per line. The reply to each
+ * command is what the console would have shown, followed by an empty line. {@code bye} ends the
+ * connection, and {@code stats} reports the open connections and the request rate.</p>
+ *
+ * <p>Every connection is read and written on a thread of its own, but all commands run, one at a time,
+ * on a single command thread, so the task list and its storage keep a single writer.</p>
+ */
+public class SofiServer implements AutoCloseable {
+    /** Prefix of an address that names a Unix-domain socket rather than a TCP port. */
+    public static final String UNIX_PREFIX = "unix:";
+
+    private static final String STATS_COMMAND = "stats";
+    private static final int RATE_WINDOW_SECONDS = 60;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final SOFI sofi;
+    private final ServerSocketChannel channel;
+    private final Path socketPath;
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(daemonThreads("sofi-client-"));
+    private final ExecutorService commandThread = Executors.newSingleThreadExecutor(daemonThreads("sofi-commands-"));
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong totalConnections = new AtomicLong();
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final AtomicLongArray requestsPerSecond = new AtomicLongArray(RATE_WINDOW_SECONDS);
+    private final AtomicLongArray bucketSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS);
+    private final long startNanos = System.nanoTime();
+    private volatile boolean isClosed;
+
+    /**
+     * Opens a server socket for a SOFI instance. The socket is not served until {@link #serve()} is called.
+     *
+     * @param sofi the SOFI instance whose task list is served
+     * @param address a TCP port on the loopback interface, such as {@code 7070}, or {@code unix:} followed
+     *                by the path of a Unix-domain socket; port 0 picks a free port
+     * @throws IOException if the socket cannot be opened
+     * @throws NumberFormatException if the address is neither a port nor a Unix-domain socket path
+     */
+    public SofiServer(SOFI sofi, String address) throws IOException {
+        assert sofi != null : "SOFI cannot be null";
+        this.sofi = sofi;
+        SocketAddress socketAddress;
+        if (address.startsWith(UNIX_PREFIX)) {
+            socketPath = Path.of(address.substring(UNIX_PREFIX.length()));
+            // A socket file left behind by a server that was killed would make the bind fail
+            Files.deleteIfExists(socketPath);
+            socketAddress = UnixDomainSocketAddress.of(socketPath);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            socketPath = null;
+            socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+            channel = ServerSocketChannel.open();
+        }
+        channel.bind(socketAddress);
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the local address of the server socket
+     * @throws IOException if the socket is closed
+     */
+    public SocketAddress getAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each on its own thread.
+     *
+     * @throws IOException if accepting a connection fails while the server is open
+     */
+    public void serve() throws IOException {
+        while (!isClosed) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            openConnections.incrementAndGet();
+            totalConnections.incrementAndGet();
+            connectionThreads.execute(() -> serveConnection(client));
+        }
+    }
+
+    private void serveConnection(SocketChannel client) {
+        try (client;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(
+                     new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+            String userInput;
+            while (!isClosed && (userInput = in.readLine()) != null) {
+                recordRequest();
+                if (Parser.lookupCommand(userInput) == Command.BYE) {
+                    break;
+                }
+                out.write(userInput.equals(STATS_COMMAND) ? getStats() : execute(userInput));
+                out.newLine();
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; its connection is simply dropped
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Runs a command on the command thread and waits for its reply.
+     */
+    private String execute(String userInput) throws IOException {
+        Future<String> reply = commandThread.submit(() -> sofi.respond(userInput));
+        try {
+            return reply.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a reply", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Command failed", e.getCause());
+        }
+    }
+
+    /**
+     * Counts a request in the bucket of the current second, resetting the bucket if it last counted
+     * a second that has since left the window.
+     */
+    private void recordRequest() {
+        totalRequests.incrementAndGet();
+        long second = (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+        int bucket = (int) (second % RATE_WINDOW_SECONDS);
+        long bucketSecond = bucketSeconds.get(bucket);
+        if (bucketSecond != second && bucketSeconds.compareAndSet(bucket, bucketSecond, second)) {
+            requestsPerSecond.set(bucket, 0);
+        }
+        requestsPerSecond.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the number of connections that are open.
+     *
+     * @return the number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Returns the number of connections accepted since the server started.
+     *
+     * @return the number of connections
+     */
+    public long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Returns the number of requests received since the server started.
+     *
+     * @return the number of requests
+     */
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * Returns the average number of requests per second over the last minute, or since the server
+     * started if that was less than a minute ago.
+     *
+     * @return the request rate
+     */
+    public double getRequestRate() {
+        long elapsed = System.nanoTime() - startNanos;
+        long second = elapsed / NANOS_PER_SECOND;
+        long count = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (second - bucketSeconds.get(i) < RATE_WINDOW_SECONDS) {
+                count += requestsPerSecond.get(i);
+            }
+        }
+        double windowSeconds = Math.min((double) elapsed / NANOS_PER_SECOND, RATE_WINDOW_SECONDS);
+        return windowSeconds <= 0 ? 0 : count / Math.max(windowSeconds, 1);
+    }
+
+    /**
+     * Returns a short description of the server's load.
+     *
+     * @return the statistics text
+     */
+    public String getStats() {
+        return String.format(Locale.ROOT, "Connections: %d open, %d in total%nRequests: %d in total, %.1f/s "
+                + "over the last minute%n", getOpenConnections(), getTotalConnections(), getTotalRequests(),
+                getRequestRate());
+    }
+
+    /**
+     * Stops accepting connections, waits for the command in progress and saves the task list.
+     *
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        channel.close();
+        connectionThreads.shutdownNow();
+        commandThread.shutdown();
+        try {
+            commandThread.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sofi.close();
+        if (socketPath != null) {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+}
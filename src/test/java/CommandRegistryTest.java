@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import sofi.Command;
+import sofi.CommandRegistry;
+
+public class CommandRegistryTest {
+
+    private static CommandRegistry<String> registryOfAll() {
+        CommandRegistry<String> registry = new CommandRegistry<>();
+        for (Command command : Command.values()) {
+            registry.register(command, "handle " + command.getKeyword());
+        }
+        return registry;
+    }
+
+    @Test
+    public void testLooksUpTheFirstWord() {
+        CommandRegistry<String> registry = registryOfAll();
+        assertEquals(Command.values().length, registry.size());
+        for (Command command : Command.values()) {
+            assertEquals("handle " + command.getKeyword(), registry.lookup(command.getKeyword()));
+            assertEquals(command, registry.lookupCommand(command.getKeyword()));
+        }
+        assertEquals("handle tag", registry.lookup("tag 1 fun"));
+        assertEquals("handle tagged", registry.lookup("tagged work"));
+        assertEquals("handle todo", registry.lookup("todo "));
+    }
+
+    @Test
+    public void testRejectsPartialAndLongerWords() {
+        CommandRegistry<String> registry = registryOfAll();
+        assertNull(registry.lookup("ta"));
+        assertNull(registry.lookup("taggedx"));
+        assertNull(registry.lookup("todoread book"));
+        assertNull(registry.lookup("TODO read book"));
+        assertNull(registry.lookup(" todo"));
+        assertNull(registry.lookup(""));
+        // Commands without arguments must be the whole input
+        assertNull(registry.lookup("list "));
+        assertNull(registry.lookup("bye now"));
+    }
+
+    @Test
+    public void testRegisteringAgainReplacesTheHandler() {
+        CommandRegistry<String> registry = new CommandRegistry<>();
+        registry.register(Command.FIND, "first");
+        registry.register(Command.FIND, "second");
+        assertEquals(1, registry.size());
+        assertEquals("second", registry.lookup("find x"));
+        assertNull(registry.lookup("list"));
+    }
+}
@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import sofi.CommandTokenizer;
+import sofi.CommandTokenizer.Flag;
+
+public class CommandTokenizerTest {
+
+    @Test
+    public void testSplitsCommandAndArguments() {
+        CommandTokenizer tokens = new CommandTokenizer().reset("tag 2   urgent work  ");
+        assertEquals(3, tokens.commandEnd());
+        assertTrue(tokens.hasSeparator());
+        assertEquals("2   urgent work", tokens.text(tokens.argumentStart(), tokens.argumentEnd()));
+        assertEquals("2", tokens.text(tokens.argumentStart(), tokens.firstWordEnd()));
+        assertEquals("urgent work", tokens.text(tokens.restStart(), tokens.argumentEnd()));
+        assertEquals(2, tokens.parseInt(tokens.argumentStart(), tokens.firstWordEnd()));
+
+        tokens.reset("list");
+        assertFalse(tokens.hasSeparator());
+        assertEquals("", tokens.text(tokens.argumentStart(), tokens.argumentEnd()));
+        assertFalse(tokens.hasFlag(Flag.BY));
+    }
+
+    @Test
+    public void testFindsFlagValues() {
+        CommandTokenizer tokens = new CommandTokenizer().reset("deadline return book /by 2024-03-01 1800 ");
+        assertTrue(tokens.hasFlag(Flag.BY));
+        assertEquals("return book", tokens.text(tokens.argumentStart(), tokens.endBefore(Flag.BY)));
+        assertEquals("2024-03-01 1800", tokens.text(tokens.valueStart(Flag.BY), tokens.valueEnd(Flag.BY)));
+
+        tokens.reset("event trip /to plan /from mon /to fri");
+        assertEquals("trip /to plan", tokens.text(tokens.argumentStart(), tokens.endBefore(Flag.FROM)));
+        assertEquals("mon", tokens.text(tokens.valueStart(Flag.FROM), tokens.valueEnd(Flag.FROM)));
+        assertEquals("fri", tokens.text(tokens.valueStart(Flag.TO), tokens.valueEnd(Flag.TO)));
+    }
+
+    @Test
+    public void testRejectsMissingNumbers() {
+        CommandTokenizer tokens = new CommandTokenizer().reset("mark ");
+        assertTrue(tokens.hasSeparator());
+        assertThrows(NumberFormatException.class,
+                () -> tokens.parseInt(tokens.argumentStart(), tokens.argumentEnd()));
+        tokens.reset("mark two");
+        assertThrows(NumberFormatException.class,
+                () -> tokens.parseInt(tokens.argumentStart(), tokens.argumentEnd()));
+    }
+}
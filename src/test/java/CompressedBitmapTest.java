@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import sofi.CompressedBitmap;
+
+public class CompressedBitmapTest {
+
+    private static CompressedBitmap fill(BitSet expected, Random random, int count, int range) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(range);
+            bitmap.add(value);
+            expected.set(value);
+        }
+        return bitmap;
+    }
+
+    private static void assertMatches(BitSet expected, CompressedBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bitmap.add(3);
+        bitmap.add(70000);
+        bitmap.add(3);
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+        assertEquals(2, bitmap.cardinality());
+        bitmap.remove(70000);
+        assertArrayEquals(new int[]{3}, bitmap.toArray());
+        bitmap.remove(3);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void testDenseContainersSwitchRepresentation() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(i * 3);
+            expected.set(i * 3);
+        }
+        assertMatches(expected, bitmap);
+        for (int i = 0; i < 10000; i += 2) {
+            bitmap.remove(i * 3);
+            expected.clear(i * 3);
+        }
+        assertMatches(expected, bitmap);
+    }
+
+    @Test
+    public void testAndOrMatchBitSet() {
+        Random random = new Random(42);
+        int[][] shapes = {{100, 1 << 20}, {20000, 1 << 17}, {60000, 1 << 16}};
+        for (int[] left : shapes) {
+            for (int[] right : shapes) {
+                BitSet a = new BitSet();
+                BitSet b = new BitSet();
+                CompressedBitmap x = fill(a, random, left[0], left[1]);
+                CompressedBitmap y = fill(b, random, right[0], right[1]);
+
+                BitSet and = (BitSet) a.clone();
+                and.and(b);
+                assertMatches(and, CompressedBitmap.and(x, y));
+                BitSet or = (BitSet) a.clone();
+                or.or(b);
+                assertMatches(or, CompressedBitmap.or(x, y));
+                // The inputs are left untouched
+                assertMatches(a, x);
+                assertMatches(b, y);
+            }
+        }
+    }
+}
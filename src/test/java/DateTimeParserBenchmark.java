@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import sofi.DateTimeParser;
+
+/**
+ * Times {@link DateTimeParser} against the formatter chain it replaced, on the inputs that a bulk import
+ * of deadlines sees: dates with and without times, in both layouts.
+ *
+ * <p>Left out of {@code ./gradlew test}; run it with {@code ./gradlew benchmark}. The best of several rounds
+ * is compared, so that warm-up and collection pauses do not decide the result.</p>
+ */
+@Tag("benchmark")
+public class DateTimeParserBenchmark {
+    private static final String[] INPUTS = {"2024-12-31 2359", "2024-12-31", "12/31/2024 1800", "12/31/2024"};
+    private static final int ITERATIONS = 200_000;
+    private static final int ROUNDS = 5;
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59);
+    private static final DateTimeFormatter INPUT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+
+    /**
+     * The parsing that Deadline did before, one exception per layout that does not match.
+     */
+    private static LocalDateTime parseWithFormatters(String dateTimeStr) {
+        try {
+            return LocalDateTime.parse(dateTimeStr, INPUT_FORMAT);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(dateTimeStr + " 2359", INPUT_FORMAT);
+            } catch (DateTimeParseException e2) {
+                try {
+                    return LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ofPattern("M/d/yyyy HHmm"));
+                } catch (DateTimeParseException e3) {
+                    return LocalDateTime.parse(dateTimeStr + " 2359", DateTimeFormatter.ofPattern("M/d/yyyy HHmm"));
+                }
+            }
+        }
+    }
+
+    private static long timeFormatters() {
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            checksum += parseWithFormatters(INPUTS[i & 3]).getMinute();
+        }
+        assertNotEquals(0, checksum);
+        return System.nanoTime() - start;
+    }
+
+    private static long timeScanner() {
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            checksum += DateTimeParser.parse(INPUTS[i & 3], END_OF_DAY).getMinute();
+        }
+        assertNotEquals(0, checksum);
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void testScannerIsFasterThanFormatters() {
+        for (String input : INPUTS) {
+            assertEquals(parseWithFormatters(input), DateTimeParser.parse(input, END_OF_DAY), input);
+        }
+        long bestFormatters = Long.MAX_VALUE;
+        long bestScanner = Long.MAX_VALUE;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long formatters = timeFormatters();
+            long scanner = timeScanner();
+            System.out.printf("round %d: formatters %.0f ns/op, scanner %.0f ns/op, %.1fx faster%n", round,
+                    (double) formatters / ITERATIONS, (double) scanner / ITERATIONS, (double) formatters / scanner);
+            bestFormatters = Math.min(bestFormatters, formatters);
+            bestScanner = Math.min(bestScanner, scanner);
+        }
+        assertTrue(bestScanner < bestFormatters, "The scanner should beat the formatters");
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import sofi.DateTimeParser;
+
+public class DateTimeParserTest {
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59);
+
+    /**
+     * The formatter chain that deadlines used before the scanner, as the reference.
+     */
+    private static LocalDateTime parseWithFormatters(String text) {
+        for (String pattern : new String[]{"yyyy-MM-dd HHmm", "M/d/yyyy HHmm"}) {
+            for (String candidate : new String[]{text, text + " 2359"}) {
+                try {
+                    return LocalDateTime.parse(candidate, DateTimeFormatter.ofPattern(pattern));
+                } catch (DateTimeParseException e) {
+                    // Try the next layout
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void assertSameAsFormatters(String text) {
+        LocalDateTime expected = parseWithFormatters(text);
+        if (expected == null) {
+            assertThrows(IllegalArgumentException.class, () -> DateTimeParser.parse(text, END_OF_DAY), text);
+        } else {
+            assertEquals(expected, DateTimeParser.parse(text, END_OF_DAY), text);
+        }
+    }
+
+    @Test
+    public void testSupportedLayouts() {
+        assertEquals(LocalDateTime.of(2024, 12, 31, 23, 59), DateTimeParser.parse("2024-12-31", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 31, 9, 5), DateTimeParser.parse("2024-12-31 0905", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 2, 3, 0, 0), DateTimeParser.parse("2/3/2024", LocalTime.MIDNIGHT));
+        assertEquals(LocalDateTime.of(2024, 12, 25, 18, 30), DateTimeParser.parse("12/25/2024 1830", END_OF_DAY));
+        assertThrows(IllegalArgumentException.class, () -> DateTimeParser.parse("Someday", END_OF_DAY));
+        assertThrows(IllegalArgumentException.class, () -> DateTimeParser.parse("2024-12-31 2460", END_OF_DAY));
+    }
+
+    @Test
+    public void testUnusualInputMatchesFormatters() {
+        String[] inputs = {"2024-02-30", "2023-02-29", "2024-02-29", "2/30/2024 1200", "12/31/10000", "0000-01-01",
+            "2024-1-01", "2024-01-01 900", "2024-01-01  0900", " 2024-01-01", "2024-01-01 0900 ", "13/1/2024",
+            "1/1/24", "001/1/2024", "+2024-01-01", "2024/01/01", "", "2024-12-31 2400"};
+        for (String input : inputs) {
+            assertSameAsFormatters(input);
+        }
+    }
+
+    @Test
+    public void testRandomInputMatchesFormatters() {
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            int year = 1990 + random.nextInt(50);
+            int month = random.nextInt(14);
+            int day = random.nextInt(33);
+            String time = random.nextBoolean() ? "" : String.format(" %02d%02d", random.nextInt(26), random.nextInt(62));
+            String date = random.nextBoolean()
+                    ? String.format("%04d-%02d-%02d", year, month, day)
+                    : month + "/" + day + "/" + year;
+            assertSameAsFormatters(date + time);
+        }
+    }
+}
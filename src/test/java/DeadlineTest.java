@@ -116,4 +116,22 @@ public class DeadlineTest {
         Deadline deadline = new Deadline("return book", "2019-12-02 1800");
         assertEquals(expected, deadline.getBy());
     }
+
+    @Test
+    public void testRenderingFollowsChanges() {
+        Deadline deadline = new Deadline("return book", "2019-12-02 1800");
+        String first = deadline.toString();
+        assertSame(first, deadline.toString());
+
+        deadline.markAsDone();
+        deadline.addTag("library");
+        assertEquals("[D][X] return book (by: Dec 02 2019, 6:00 pm) #library", deadline.toString());
+        StringBuilder sb = new StringBuilder("1. ");
+        deadline.appendTo(sb);
+        assertEquals("1. " + deadline, sb.toString());
+
+        deadline.markAsNotDone();
+        deadline.removeTag("library");
+        assertEquals(first, deadline.toString());
+    }
 }
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import sofi.IntervalTree;
+
+public class IntervalTreeTest {
+
+    private static List<Integer> overlapping(IntervalTree tree, long from, long to) {
+        List<Integer> slots = new ArrayList<>();
+        tree.forEachOverlapping(from, to, slots::add);
+        return slots;
+    }
+
+    @Test
+    public void testReportsOverlapsInStartOrder() {
+        IntervalTree tree = new IntervalTree();
+        tree.insert(10, 20, 0);
+        tree.insert(0, 100, 1);
+        tree.insert(30, 40, 2);
+        tree.insert(10, 12, 3);
+        assertEquals(List.of(1, 0, 3), overlapping(tree, 12, 15));
+        assertEquals(List.of(1, 2), overlapping(tree, 40, 50));
+        assertEquals(List.of(), overlapping(tree, 101, 200));
+
+        tree.remove(0, 1);
+        assertEquals(3, tree.size());
+        assertEquals(List.of(), overlapping(tree, 21, 29));
+    }
+
+    @Test
+    public void testMatchesBruteForceUnderRandomChanges() {
+        Random random = new Random(7);
+        IntervalTree tree = new IntervalTree();
+        long[][] intervals = new long[2000][];
+        for (int step = 0; step < 6000; step++) {
+            int slot = random.nextInt(intervals.length);
+            if (intervals[slot] == null) {
+                long start = random.nextInt(100000);
+                intervals[slot] = new long[]{start, start + random.nextInt(500)};
+                tree.insert(intervals[slot][0], intervals[slot][1], slot);
+            } else {
+                tree.remove(intervals[slot][0], slot);
+                intervals[slot] = null;
+            }
+            if (step % 100 == 0) {
+                long from = random.nextInt(100000);
+                long to = from + random.nextInt(2000);
+                List<long[]> expected = new ArrayList<>();
+                for (int s = 0; s < intervals.length; s++) {
+                    if (intervals[s] != null && intervals[s][0] <= to && intervals[s][1] >= from) {
+                        expected.add(new long[]{intervals[s][0], s});
+                    }
+                }
+                expected.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+                List<Integer> expectedSlots = new ArrayList<>();
+                for (long[] e : expected) {
+                    expectedSlots.add((int) e[1]);
+                }
+                assertEquals(expectedSlots, overlapping(tree, from, to));
+            }
+        }
+    }
+
+    @Test
+    public void testPairsMatchBruteForce() {
+        Random random = new Random(11);
+        IntervalTree tree = new IntervalTree();
+        long[][] intervals = new long[500][];
+        for (int slot = 0; slot < intervals.length; slot++) {
+            long start = random.nextInt(20000);
+            intervals[slot] = new long[]{start, start + random.nextInt(300)};
+            tree.insert(intervals[slot][0], intervals[slot][1], slot);
+        }
+        long from = 5000;
+        long to = 15000;
+        java.util.Set<List<Integer>> expected = new java.util.HashSet<>();
+        for (int a = 0; a < intervals.length; a++) {
+            for (int b = a + 1; b < intervals.length; b++) {
+                boolean inRange = intervals[a][0] <= to && intervals[a][1] >= from
+                        && intervals[b][0] <= to && intervals[b][1] >= from;
+                if (inRange && intervals[a][0] <= intervals[b][1] && intervals[b][0] <= intervals[a][1]) {
+                    expected.add(List.of(a, b));
+                }
+            }
+        }
+        java.util.Set<List<Integer>> actual = new java.util.HashSet<>();
+        tree.forEachOverlappingPair(from, to, (first, second) -> {
+            assertTrue(intervals[first][0] <= intervals[second][0]);
+            assertTrue(actual.add(List.of(Math.min(first, second), Math.max(first, second))));
+        });
+        assertEquals(expected, actual);
+    }
+}
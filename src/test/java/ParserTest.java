@@ -1,6 +1,11 @@
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+
 import sofi.Parser;
 
 public class ParserTest {
@@ -161,4 +166,58 @@ public class ParserTest {
             Parser.parseTaskNumber("mark ");
         });
     }
+
+    @Test
+    public void testParseTaggedQuery() {
+        assertEquals("tagged", Parser.parseCommand("tagged work"));
+        assertEquals("tag", Parser.parseCommand("tag 1 work"));
+        assertArrayEquals(new String[]{"work", "and", "urgent", "or", "home"},
+                Parser.parseTaggedQuery("tagged #work AND urgent or #home"));
+        assertEquals(0, Parser.parseTaggedQuery("tagged").length);
+        assertEquals(0, Parser.parseTaggedQuery("tagged work and").length);
+        assertEquals(0, Parser.parseTaggedQuery("tagged work xor home").length);
+        assertTrue(Parser.isTagKeyword("#work"));
+        assertFalse(Parser.isTagKeyword("#"));
+        assertFalse(Parser.isTagKeyword("work"));
+    }
+
+    @Test
+    public void testParseDateQueries() {
+        assertEquals("due", Parser.parseCommand("due 2024-12-01 2024-12-07"));
+        assertEquals("deadline", Parser.parseCommand("deadline x /by 2024-12-01"));
+        assertEquals("agenda", Parser.parseCommand("agenda 2024-12-01"));
+        assertArrayEquals(new LocalDateTime[]{LocalDateTime.of(2024, 12, 1, 0, 0), LocalDateTime.of(2024, 12, 7, 23, 59)},
+                Parser.parseDueRange("due 2024-12-01 12/7/2024"));
+        assertArrayEquals(new LocalDateTime[]{LocalDateTime.of(2024, 12, 1, 9, 30), LocalDateTime.of(2024, 12, 1, 12, 0)},
+                Parser.parseDueRange("due 2024-12-01 0930 2024-12-01 1200"));
+        assertEquals(0, Parser.parseDueRange("due").length);
+        assertEquals(0, Parser.parseDueRange("due 2024-12-01").length);
+        assertThrows(IllegalArgumentException.class, () -> Parser.parseDueRange("due soon later"));
+        assertEquals(LocalDateTime.of(2024, 12, 1, 0, 0), Parser.parseAgendaDate("agenda 2024-12-01"));
+        assertNull(Parser.parseAgendaDate("agenda"));
+    }
+
+    @Test
+    public void testParseDueRangeWithPhrases() {
+        LocalDate today = LocalDate.now();
+        assertArrayEquals(new LocalDateTime[]{today.plusDays(1).atStartOfDay(),
+            today.with(TemporalAdjusters.next(DayOfWeek.FRIDAY)).atTime(17, 0)},
+                Parser.parseDueRange("due tomorrow to next fri 5pm"));
+        assertArrayEquals(new LocalDateTime[]{LocalDateTime.of(2024, 12, 1, 9, 30), LocalDateTime.of(2024, 12, 7, 23, 59)},
+                Parser.parseDueRange("due 2024-12-01 0930 TO 12/7/2024"));
+        assertArrayEquals(new LocalDateTime[]{today.atStartOfDay(), today.plusWeeks(2).atTime(23, 59)},
+                Parser.parseConflictsRange("conflicts today to in 2 weeks"));
+        assertEquals(0, Parser.parseDueRange("due today to tomorrow to friday").length);
+        assertThrows(IllegalArgumentException.class, () -> Parser.parseDueRange("due tomorrow to someday"));
+    }
+
+    @Test
+    public void testParseConflictsRange() {
+        assertEquals("conflicts", Parser.parseCommand("conflicts"));
+        assertArrayEquals(new LocalDateTime[]{LocalDateTime.MIN, LocalDateTime.MAX},
+                Parser.parseConflictsRange("conflicts"));
+        assertArrayEquals(new LocalDateTime[]{LocalDateTime.of(2024, 12, 1, 0, 0), LocalDateTime.of(2024, 12, 7, 23, 59)},
+                Parser.parseConflictsRange("conflicts 2024-12-01 2024-12-07"));
+        assertEquals(0, Parser.parseConflictsRange("conflicts 2024-12-01").length);
+    }
 }
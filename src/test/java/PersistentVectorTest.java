@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import sofi.PersistentVector;
+
+public class PersistentVectorTest {
+
+    @Test
+    public void testOldVersionsDoNotChange() {
+        PersistentVector<String> first = PersistentVector.<String>empty().append("a").append("b");
+        PersistentVector<String> second = first.set(1, "B").append("c");
+        PersistentVector<String> third = second.remove(0);
+
+        assertEquals(2, first.size());
+        assertEquals("b", first.get(1));
+        assertEquals("B", second.get(1));
+        assertEquals(3, second.size());
+        assertEquals(2, third.size());
+        assertEquals(3, third.slotCount());
+        assertFalse(third.isPresent(0));
+        assertEquals("B", third.get(0));
+        assertEquals(2, third.slotAt(1));
+        assertSame(third, third.remove(0));
+    }
+
+    @Test
+    public void testBuilderMatchesAppends() {
+        PersistentVector.Builder<Integer> builder = new PersistentVector.Builder<>();
+        PersistentVector<Integer> appended = PersistentVector.empty();
+        for (int i = 0; i < 5000; i++) {
+            builder.add(i);
+            appended = appended.append(i);
+        }
+        PersistentVector<Integer> built = builder.build();
+
+        assertEquals(5000, built.size());
+        for (int i = 0; i < 5000; i += 37) {
+            assertEquals(i, (int) built.get(i));
+            assertEquals(i, (int) appended.get(i));
+        }
+    }
+
+    @Test
+    public void testMatchesListUnderRandomChanges() {
+        Random random = new Random(11);
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        List<Integer> slots = new ArrayList<>();
+        List<Integer> live = new ArrayList<>();
+        for (int step = 0; step < 20000; step++) {
+            int choice = random.nextInt(4);
+            if (choice == 0 || live.isEmpty()) {
+                vector = vector.append(step);
+                live.add(slots.size());
+                slots.add(step);
+            } else {
+                int position = random.nextInt(live.size());
+                int slot = live.get(position);
+                if (choice == 1) {
+                    vector = vector.remove(slot);
+                    live.remove(position);
+                } else {
+                    vector = vector.set(slot, -step);
+                    slots.set(slot, -step);
+                }
+            }
+        }
+
+        assertEquals(live.size(), vector.size());
+        assertEquals(slots.size(), vector.slotCount());
+        for (int position = 0; position < live.size(); position++) {
+            int slot = live.get(position);
+            assertEquals(slot, vector.slotAt(position));
+            assertEquals(slots.get(slot), vector.get(position));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import sofi.RelativeDateParser;
+
+public class RelativeDateParserTest {
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59);
+
+    /**
+     * Returns a parser whose clock stops at the given local time.
+     */
+    private static RelativeDateParser parserAt(LocalDateTime now) {
+        return new RelativeDateParser(Clock.fixed(now.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testDaysAndTimes() {
+        // A Wednesday
+        RelativeDateParser parser = parserAt(LocalDateTime.of(2024, 12, 4, 10, 15, 30));
+        assertEquals(LocalDateTime.of(2024, 12, 4, 23, 59), parser.parse("today", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 5, 15, 0), parser.parse("Tomorrow 3pm", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 6, 0, 0), parser.parse("fri", LocalTime.MIDNIGHT));
+        assertEquals(LocalDateTime.of(2024, 12, 4, 12, 30), parser.parse("wednesday 12:30pm", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 11, 0, 30), parser.parse("next  Wed 12:30am", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 9, 14, 0), parser.parse("Mon 2pm", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 5, 18, 45), parser.parse("thurs 1845", END_OF_DAY));
+        assertNull(parser.parse("fri 13pm", END_OF_DAY));
+        assertNull(parser.parse("fridays", END_OF_DAY));
+        assertNull(parser.parse("someday", END_OF_DAY));
+        assertNull(parser.parse("2024-12-04", END_OF_DAY));
+    }
+
+    @Test
+    public void testOffsets() {
+        RelativeDateParser parser = parserAt(LocalDateTime.of(2024, 12, 4, 10, 15, 30));
+        assertEquals(LocalDateTime.of(2024, 12, 4, 12, 15), parser.parse("in 2h", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 4, 10, 45), parser.parse("in 30 min", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 7, 23, 59), parser.parse("in 3 days", END_OF_DAY));
+        assertEquals(LocalDateTime.of(2024, 12, 11, 23, 59), parser.parse("in 1w", END_OF_DAY));
+        assertNull(parser.parse("in a while", END_OF_DAY));
+        assertNull(parser.parse("in 2 fortnights", END_OF_DAY));
+    }
+
+    @Test
+    public void testCacheKeysOnPhraseAndDay() {
+        Instant start = LocalDateTime.of(2024, 12, 4, 9, 0).toInstant(ZoneOffset.UTC);
+        Instant[] now = {start};
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now[0];
+            }
+        };
+        RelativeDateParser parser = new RelativeDateParser(clock);
+        for (int i = 0; i < 100; i++) {
+            parser.parse("tomorrow 9am", END_OF_DAY);
+            parser.parse("TOMORROW   9am", END_OF_DAY);
+        }
+        assertEquals(1, parser.getCacheSize());
+
+        // The same phrase on the next day resolves afresh
+        now[0] = start.plusSeconds(24 * 60 * 60);
+        assertEquals(LocalDateTime.of(2024, 12, 6, 9, 0), parser.parse("tomorrow 9am", END_OF_DAY));
+        assertEquals(2, parser.getCacheSize());
+
+        // Offsets follow the clock within a day
+        now[0] = start.plusSeconds(60);
+        assertEquals(LocalDateTime.of(2024, 12, 4, 11, 1), parser.parse("in 2h", END_OF_DAY));
+        now[0] = start.plusSeconds(120);
+        assertEquals(LocalDateTime.of(2024, 12, 4, 11, 2), parser.parse("in 2h", END_OF_DAY));
+
+        for (int i = 0; i < 200; i++) {
+            parser.parse("in " + i + "m", END_OF_DAY);
+        }
+        assertEquals(64, parser.getCacheSize());
+    }
+}
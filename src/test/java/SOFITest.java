@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import sofi.BatchReport;
+import sofi.JournalEntry;
+import sofi.SOFI;
+import sofi.Storage;
+import sofi.Task;
+import sofi.Ui;
+
+public class SOFITest {
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("sofi.txt").toString();
+    }
+
+    private BatchReport runBatch(String script, int saveInterval, ByteArrayOutputStream output) throws IOException {
+        SOFI sofi = new SOFI(dataFile(), new Ui(new PrintStream(output, false)));
+        return sofi.runBatch(new BufferedReader(new StringReader(script)), saveInterval);
+    }
+
+    @Test
+    public void testBatchSavesOnceAtTheEnd() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BatchReport report = runBatch("todo read book\ntodo write essay\nmark 1\nfrobnicate\ndelete 9\n", 0, output);
+
+        assertEquals(5, report.getCommandCount());
+        assertEquals(2, report.getErrorCount());
+        assertEquals(1, report.getSaveCount());
+        assertEquals(0, report.getSaveFailureCount());
+        assertTrue(output.toString().contains("I don't recognize that command"));
+
+        ArrayList<Task> saved = new Storage(dataFile(), true).load();
+        assertEquals(2, saved.size());
+        assertTrue(saved.get(0).isDone());
+    }
+
+    @Test
+    public void testUndoAndRedoAreSaved() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BatchReport report = runBatch("todo read book\ntodo write essay\ndelete 1\nundo\nmark 2\nundo\nredo\n"
+                + "redo\n", 0, output);
+
+        assertEquals(1, report.getErrorCount());
+        ArrayList<Task> saved = new Storage(dataFile(), true).load();
+        assertEquals(2, saved.size());
+        assertEquals("read book", saved.get(0).getDescription());
+        assertTrue(saved.get(1).isDone());
+    }
+
+    @Test
+    public void testBatchChangesAreInHistory() throws IOException {
+        runBatch("todo read book\nmark 1\ntag 1 fun\n", 0, new ByteArrayOutputStream());
+
+        Storage storage = new Storage(dataFile(), true);
+        storage.load();
+        List<JournalEntry> history = storage.readHistory();
+        assertEquals(3, history.size());
+        assertEquals(JournalEntry.Kind.TAG, history.get(2).getKind());
+        assertFalse(storage.loadAt(1).get(0).isDone());
+        storage.close();
+    }
+
+    @Test
+    public void testBatchSavesEveryNCommandsAndStopsAtBye() throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            script.append("todo task ").append(i).append('\n');
+        }
+        script.append("bye\ntodo never added\n");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BatchReport report = runBatch(script.toString(), 4, output);
+
+        assertEquals(11, report.getCommandCount());
+        assertEquals(0, report.getErrorCount());
+        assertEquals(3, report.getSaveCount());
+        assertTrue(output.toString().contains("Bye. Hope to see you again soon!"));
+        assertTrue(report.getSummary().startsWith("Ran 11 command(s)"));
+        assertEquals(10, new Storage(dataFile(), true).load().size());
+    }
+
+    @Test
+    public void testIdsAreOnlyListedWhenAskedFor() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        runBatch("todo read book\nlist\n", 0, output);
+        assertTrue(output.toString().contains("1. [T][ ] read book" + System.lineSeparator()));
+
+        System.setProperty("sofi.ids", "true");
+        try {
+            output = new ByteArrayOutputStream();
+            runBatch("delete @1\ntodo write essay\nlist\n", 0, output);
+            assertTrue(output.toString().contains("1. [T][ ] write essay (@2)"));
+        } finally {
+            System.clearProperty("sofi.ids");
+        }
+    }
+}
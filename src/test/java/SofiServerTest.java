@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import sofi.SOFI;
+import sofi.SofiServer;
+import sofi.Storage;
+
+public class SofiServerTest {
+    @TempDir
+    Path tempDir;
+
+    private static String send(PrintWriter out, BufferedReader in, String command) throws IOException {
+        out.println(command);
+        StringBuilder reply = new StringBuilder();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            reply.append(line).append('\n');
+        }
+        return reply.toString();
+    }
+
+    @Test
+    public void testServesSeveralClientsFromOneTaskList() throws Exception {
+        String dataFile = tempDir.resolve("sofi.txt").toString();
+        SofiServer server = new SofiServer(new SOFI(dataFile), "0");
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        serving.start();
+        int port = ((InetSocketAddress) server.getAddress()).getPort();
+        try (Socket first = new Socket("localhost", port);
+             Socket second = new Socket("localhost", port)) {
+            PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader firstIn = new BufferedReader(
+                    new InputStreamReader(first.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter secondOut = new PrintWriter(second.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader secondIn = new BufferedReader(
+                    new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8));
+
+            assertTrue(send(firstOut, firstIn, "todo read book").contains("Now you have 1 tasks"));
+            assertTrue(send(secondOut, secondIn, "todo write essay").contains("Now you have 2 tasks"));
+            assertTrue(send(firstOut, firstIn, "list").contains("2. [T][ ] write essay"));
+            assertTrue(send(secondOut, secondIn, "frobnicate").contains("I don't recognize that command"));
+            String stats = send(secondOut, secondIn, "stats");
+            assertTrue(stats.contains("Connections: 2 open, 2 in total"), stats);
+            assertTrue(stats.contains("Requests: 5 in total"), stats);
+
+            firstOut.println("bye");
+            assertNull(firstIn.readLine());
+        } finally {
+            server.close();
+            serving.join();
+        }
+        assertEquals(2, new Storage(dataFile, true).load().size());
+    }
+}
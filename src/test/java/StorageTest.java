@@ -0,0 +1,710 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import sofi.Checksum;
+import sofi.Journal;
+import sofi.JournalEntry;
+import sofi.LazyTaskList;
+import sofi.LoadReport;
+import sofi.SnapshotReader;
+import sofi.Storage;
+import sofi.TaskList;
+import sofi.Task;
+import sofi.Todo;
+import sofi.WriteBehindQueue;
+import sofi.Deadline;
+import sofi.Event;
+
+public class StorageTest {
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("sofi.txt").toString();
+    }
+
+    private static String journalLine(String record) {
+        return Checksum.of(record) + " " + record + "\n";
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() throws IOException {
+        Storage storage = new Storage(dataFile());
+        ArrayList<Task> tasks = new ArrayList<>();
+        Todo todo = new Todo("read book");
+        todo.addTag("fun");
+        tasks.add(todo);
+        tasks.add(new Deadline("return book", "2019-12-02 1800"));
+        storage.save(tasks);
+
+        ArrayList<Task> loaded = new Storage(dataFile()).load();
+        assertEquals(2, loaded.size());
+        assertEquals(tasks.get(0).toString(), loaded.get(0).toString());
+        assertEquals(tasks.get(1).toString(), loaded.get(1).toString());
+    }
+
+    @Test
+    public void testSaveChecksumsLongNonAsciiLines() throws IOException {
+        Storage storage = new Storage(dataFile());
+        ArrayList<Task> tasks = new ArrayList<>();
+        Todo todo = new Todo("caf\u00e9 \u8336 \ud83c\udf75 " + "x".repeat(700));
+        todo.addTag("\u00fcber");
+        tasks.add(todo);
+        tasks.add(new Event("trip", "2019-12-02 0930", "2019-12-05"));
+        storage.save(tasks);
+
+        Storage reopened = new Storage(dataFile());
+        ArrayList<Task> loaded = reopened.load();
+        assertFalse(reopened.getLastLoadReport().hasProblems());
+        assertEquals(todo.getDescription(), loaded.get(0).getDescription());
+        assertTrue(loaded.get(0).hasTag("\u00fcber"));
+        assertEquals(tasks.get(1).toString(), loaded.get(1).toString());
+        assertTrue(Files.readString(Path.of(dataFile())).contains("E | 0 | trip | 2019-12-02 0930 | 2019-12-05 0000"));
+    }
+
+    @Test
+    public void testSavedDatesMatchFormatter() throws IOException {
+        DateTimeFormatter storageFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
+        LocalDateTime[] times = {LocalDateTime.of(2000, 2, 29, 23, 59), LocalDateTime.of(1900, 3, 1, 0, 0),
+            LocalDateTime.of(1969, 12, 31, 23, 59), LocalDateTime.of(2024, 12, 31, 12, 5),
+            LocalDateTime.of(1, 1, 1, 0, 0), LocalDateTime.of(9999, 12, 31, 23, 59)};
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (LocalDateTime time : times) {
+            tasks.add(new Deadline("due", time));
+        }
+        Storage storage = new Storage(dataFile());
+        storage.save(tasks);
+
+        String saved = Files.readString(Path.of(dataFile()));
+        ArrayList<Task> loaded = new Storage(dataFile()).load();
+        for (int i = 0; i < times.length; i++) {
+            assertTrue(saved.contains("D | 0 | due | " + times[i].format(storageFormat)), times[i].toString());
+            assertEquals(times[i], ((Deadline) loaded.get(i)).getBy());
+        }
+    }
+
+    @Test
+    public void testJournalReplaysMutations() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        ArrayList<Task> tasks = storage.load();
+        Todo first = new Todo("read book");
+        Todo second = new Todo("write essay");
+        tasks.add(first);
+        storage.appendAdd(first);
+        tasks.add(second);
+        storage.appendAdd(second);
+        storage.appendMark(1, second, true);
+        storage.appendTag(1, second, "school", true);
+        storage.appendDelete(0, first);
+        storage.close();
+
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(1, loaded.size());
+        assertEquals("write essay", loaded.get(0).getDescription());
+        assertTrue(loaded.get(0).isDone());
+        assertTrue(loaded.get(0).hasTag("school"));
+    }
+
+    @Test
+    public void testBulkJournalRecordsReplayInOrder() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 6; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.add(todo);
+            storage.appendAdd(todo);
+        }
+        storage.appendMarks(new int[]{0, 1, 2}, tasks.subList(0, 3), true);
+        storage.appendTags(new int[]{2, 5}, List.of(tasks.get(2), tasks.get(5)), "bulk", true);
+        storage.appendDeletes(new int[]{0, 1, 4}, List.of(tasks.get(0), tasks.get(1), tasks.get(4)));
+        storage.close();
+
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(3, loaded.size());
+        assertEquals("task 2", loaded.get(0).getDescription());
+        assertEquals("task 3", loaded.get(1).getDescription());
+        assertEquals("task 5", loaded.get(2).getDescription());
+        assertTrue(loaded.get(0).isDone());
+        assertFalse(loaded.get(1).isDone());
+        assertTrue(loaded.get(0).hasTag("bulk"));
+        assertTrue(loaded.get(2).hasTag("bulk"));
+    }
+
+    @Test
+    public void testJournalFindsTasksByIdAfterDamagedSnapshotLines() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        TaskList tasks = new TaskList(storage.load(), storage.getNextTaskId());
+        for (int i = 1; i <= 600; i++) {
+            tasks.addTask(new Todo("t" + i));
+        }
+        storage.save(tasks.asList());
+        Task marked = tasks.markTasks(new int[]{299}, true).get(0);
+        storage.appendMark(299, marked, true);
+        storage.appendTag(299, marked, "found", true);
+        storage.close();
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(Path.of(dataFile())));
+        lines.set(4, lines.get(4).replace("t4", "t4 damaged"));
+        Files.write(Path.of(dataFile()), lines);
+
+        Storage reopened = new Storage(dataFile(), true);
+        ArrayList<Task> loaded = reopened.load();
+        assertTrue(reopened.getLastLoadReport().getDroppedLines() > 0);
+        assertTrue(loaded.size() < 600);
+        for (Task task : loaded) {
+            boolean isTarget = task.getDescription().equals("t300");
+            assertEquals(isTarget, task.isDone(), task.getDescription());
+            assertEquals(isTarget, task.hasTag("found"), task.getDescription());
+        }
+        assertTrue(loaded.stream().anyMatch(task -> task.getDescription().equals("t300")));
+        reopened.close();
+    }
+
+    @Test
+    public void testPositionalRecordsStopAfterDamagedSnapshotLines() throws IOException {
+        StringBuilder snapshot = new StringBuilder();
+        for (int i = 1; i <= 300; i++) {
+            snapshot.append("T | 0 | t").append(i).append('\n');
+        }
+        Files.writeString(Path.of(dataFile()), snapshot);
+        new Storage(dataFile()).save(new Storage(dataFile()).load());
+        // A journal written before changes named their task by id
+        Files.writeString(Path.of(dataFile() + ".journal.1"), journalLine("M | 299"));
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(Path.of(dataFile())));
+        lines.set(4, lines.get(4).replace("t4", "t4 damaged"));
+        Files.write(Path.of(dataFile()), lines);
+
+        Storage reopened = new Storage(dataFile(), true);
+        ArrayList<Task> loaded = reopened.load();
+        assertTrue(reopened.getLastLoadReport().isJournalTruncated());
+        assertTrue(loaded.stream().noneMatch(Task::isDone));
+        reopened.close();
+    }
+
+    @Test
+    public void testLoadAtReplaysUpToAChange() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        ArrayList<Task> tasks = storage.load();
+        Todo todo = new Todo("read book");
+        tasks.add(todo);
+        storage.appendAdd(todo);
+        storage.appendMark(0, todo, true);
+        storage.appendTag(0, todo, "fun", true);
+        storage.appendDelete(0, todo);
+
+        assertEquals(4, storage.getLastSequence());
+        assertTrue(storage.loadAt(0).isEmpty());
+        assertFalse(storage.loadAt(1).get(0).isDone());
+        ArrayList<Task> afterTag = storage.loadAt(3);
+        assertTrue(afterTag.get(0).isDone());
+        assertTrue(afterTag.get(0).hasTag("fun"));
+        assertTrue(storage.loadAt(4).isEmpty());
+        assertThrows(IOException.class, () -> storage.loadAt(5));
+        storage.close();
+    }
+
+    @Test
+    public void testInsertedTaskReplaysAtItsPosition() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        TaskList tasks = new TaskList(storage.load(), storage.getNextTaskId());
+        for (String description : new String[] {"first", "second", "third"}) {
+            Todo todo = new Todo(description);
+            tasks.addTask(todo);
+            storage.appendAdd(todo);
+        }
+        Task removed = tasks.removeTask(1);
+        storage.appendDelete(1, removed);
+        storage.appendInsert(1, removed);
+        storage.close();
+
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(3, loaded.size());
+        assertEquals("second", loaded.get(1).getDescription());
+        assertEquals(removed.getId(), loaded.get(1).getId());
+    }
+
+    @Test
+    public void testHistoryReachesBackPastSavesAndCompactions() throws IOException {
+        Storage storage = new Storage(dataFile(), true, 150);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 12; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.add(todo);
+            storage.appendAdd(todo);
+            storage.compactIfNeeded(tasks);
+            if (i == 5) {
+                storage.save(tasks);
+            }
+        }
+        storage.close();
+
+        Storage reopened = new Storage(dataFile(), true, 150);
+        reopened.load();
+        List<JournalEntry> history = reopened.readHistory();
+        assertEquals(12, history.size());
+        assertEquals(1, history.get(0).getSequence());
+        assertEquals(1, reopened.loadAt(1).size());
+        assertEquals(7, reopened.loadAt(7).size());
+        assertTrue(reopened.loadAt(0).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void testHistoryStartsFromCheckpointsAndKeepsOnlyTheLatest() throws IOException {
+        Storage storage = new Storage(dataFile(), true, 100);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 400; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.add(todo);
+            storage.appendAdd(todo);
+            if (i % 5 == 4) {
+                storage.save(tasks);
+            }
+        }
+        storage.close();
+
+        File[] checkpoints = tempDir.toFile().listFiles((dir, name) -> name.startsWith("sofi.txt.checkpoint."));
+        File[] histories = tempDir.toFile().listFiles((dir, name) -> name.startsWith("sofi.txt.history."));
+        assertEquals(8, checkpoints.length);
+        assertTrue(histories.length <= checkpoints.length);
+
+        Storage reopened = new Storage(dataFile(), true, 100);
+        reopened.load();
+        List<JournalEntry> history = reopened.readHistory();
+        long oldest = history.get(0).getSequence() - 1;
+        assertTrue(oldest > 0);
+        assertThrows(IOException.class, () -> reopened.loadAt(oldest - 1));
+        assertEquals((int) oldest, reopened.loadAt(oldest).size());
+        assertEquals(399, reopened.loadAt(399).size());
+
+        // Recent changes are rebuilt from a recent checkpoint, without the history before it
+        for (File file : histories) {
+            if (file.getName().equals("sofi.txt.history." + oldest)) {
+                Files.delete(file.toPath());
+            }
+        }
+        assertEquals(390, reopened.loadAt(390).size());
+        assertEquals("task 389", reopened.loadAt(390).get(389).getDescription());
+        reopened.close();
+    }
+
+    @Test
+    public void testChangeNumbersContinueAfterSaveAndRestart() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        ArrayList<Task> tasks = storage.load();
+        Todo first = new Todo("first");
+        tasks.add(first);
+        storage.appendAdd(first);
+        storage.appendMark(0, first, true);
+        storage.save(tasks);
+        Todo second = new Todo("second");
+        tasks.add(second);
+        storage.appendAdd(second);
+        storage.close();
+
+        Storage reopened = new Storage(dataFile(), true);
+        ArrayList<Task> loaded = reopened.load();
+        assertEquals(3, reopened.getLastSequence());
+        assertEquals(2, loaded.size());
+        List<JournalEntry> history = reopened.readHistory();
+        assertEquals(3, history.size());
+        assertEquals(3, history.get(2).getSequence());
+        assertEquals(JournalEntry.Kind.ADD, history.get(2).getKind());
+        assertNotNull(history.get(2).getTime());
+        assertEquals(1, reopened.loadAt(2).size());
+        assertFalse(reopened.loadAt(1).get(0).isDone());
+
+        // Without the history, only the changes since the save can be shown
+        Files.delete(Path.of(dataFile() + ".history.0"));
+        Files.delete(Path.of(dataFile() + ".checkpoint.0"));
+        assertEquals(1, reopened.readHistory().size());
+        assertEquals(1, reopened.loadAt(2).size());
+        assertThrows(IOException.class, () -> reopened.loadAt(1));
+        reopened.close();
+    }
+
+    @Test
+    public void testUnnumberedRecordsAreNumberedInOrder() throws IOException {
+        Files.writeString(Path.of(dataFile() + ".journal.1"),
+                journalLine("+ | T | 0 | old") + journalLine("M | 0"));
+        Storage storage = new Storage(dataFile(), true);
+        storage.load();
+        List<JournalEntry> history = storage.readHistory();
+
+        assertEquals(2, history.size());
+        assertEquals(2, history.get(1).getSequence());
+        assertNull(history.get(1).getTime());
+        assertEquals(2, storage.getLastSequence());
+        storage.close();
+    }
+
+    @Test
+    public void testCompactionFoldsJournalIntoSnapshot() throws IOException {
+        Storage storage = new Storage(dataFile(), true, 64);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 20; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.add(todo);
+            storage.appendAdd(todo);
+            storage.compactIfNeeded(tasks);
+        }
+        storage.close();
+
+        assertFalse(Files.readAllLines(Path.of(dataFile())).isEmpty());
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(20, loaded.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("task " + i, loaded.get(i).getDescription());
+        }
+    }
+
+    @Test
+    public void testShortSessionsStillCompact() throws IOException {
+        for (int session = 0; session < 30; session++) {
+            Storage storage = new Storage(dataFile(), true, 200);
+            ArrayList<Task> tasks = storage.load();
+            for (int i = 0; i < 3; i++) {
+                Todo todo = new Todo("task " + session + "." + i);
+                tasks.add(todo);
+                storage.appendAdd(todo);
+                storage.compactIfNeeded(tasks);
+            }
+            storage.close();
+        }
+        Storage idle = new Storage(dataFile(), true, 200);
+        idle.load();
+        idle.close();
+
+        long journalBytes = 0;
+        for (File segment : new Journal(dataFile()).listSegments()) {
+            journalBytes += segment.length();
+        }
+        assertTrue(journalBytes < 400, "journal kept " + journalBytes + " bytes");
+        assertTrue(Files.size(Path.of(dataFile())) > 0);
+        assertEquals(90, new Storage(dataFile(), true).load().size());
+    }
+
+    @Test
+    public void testSessionWithoutChangesLeavesNoSegment() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        storage.load();
+        storage.close();
+        assertTrue(new Journal(dataFile()).listSegments().isEmpty());
+    }
+
+    @Test
+    public void testWriteBehindFlushesCoalescedMutations() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        storage.enableWriteBehind(1000, 1000);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 50; i++) {
+            Todo todo = new Todo("task " + i);
+            tasks.add(todo);
+            storage.appendAdd(todo);
+        }
+        storage.flush();
+        assertEquals(0, storage.getPendingWriteCount());
+        assertEquals(0, storage.getWriteFailureCount());
+
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(50, loaded.size());
+        storage.close();
+    }
+
+    @Test
+    public void testWriteBehindReportsFailureAndStopsRetrying() throws Exception {
+        Journal journal = new Journal(dataFile());
+        journal.open("H | 0");
+        // A directory in place of the segment makes every write fail
+        Path segment = Path.of(dataFile() + ".journal.1");
+        Files.createDirectory(segment);
+        WriteBehindQueue queue = new WriteBehindQueue(journal, 5, 100);
+        queue.submit("+ | T | 0 | first");
+        assertThrows(IOException.class, queue::flush);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getFailureCount() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        assertEquals(5, queue.getFailureCount());
+        assertEquals(1, queue.getPendingCount());
+        assertThrows(IOException.class, () -> queue.submit("+ | T | 0 | second"));
+        assertEquals(2, queue.getPendingCount());
+
+        Files.delete(segment);
+        queue.flush();
+        assertEquals(2, queue.getWrittenCount());
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+        journal.close();
+    }
+
+    @Test
+    public void testInterruptedCompactionIsRecovered() throws IOException {
+        // Simulate a crash after the snapshot was completed but before it replaced the data file
+        Files.writeString(Path.of(dataFile()), "T | 0 | stale\n");
+        Files.writeString(Path.of(dataFile() + ".journal.1"), journalLine("+ | T | 0 | covered"));
+        Files.writeString(Path.of(dataFile() + ".ready.1"), "T | 0 | stale\nT | 0 | covered\n");
+        Files.writeString(Path.of(dataFile() + ".journal.2"), journalLine("M | 1"));
+
+        ArrayList<Task> loaded = new Storage(dataFile(), true).load();
+        assertEquals(2, loaded.size());
+        assertEquals("covered", loaded.get(1).getDescription());
+        assertTrue(loaded.get(1).isDone());
+        assertFalse(Files.exists(Path.of(dataFile() + ".journal.1")));
+    }
+
+    @Test
+    public void testSaveWritesChecksummedBlocksAndNoTempFile() throws IOException {
+        Storage storage = new Storage(dataFile());
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            tasks.add(new Todo("task " + i));
+        }
+        storage.save(tasks);
+
+        assertFalse(Files.exists(Path.of(dataFile() + ".tmp")));
+        Storage reloaded = new Storage(dataFile());
+        assertEquals(300, reloaded.load().size());
+        LoadReport report = reloaded.getLastLoadReport();
+        assertEquals(2, report.getVerifiedBlocks());
+        assertEquals(0, report.getUnverifiedLines());
+        assertFalse(report.hasProblems());
+    }
+
+    @Test
+    public void testCorruptBlockIsReportedAndSkipped() throws IOException {
+        Storage storage = new Storage(dataFile());
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            tasks.add(new Todo("task " + i));
+        }
+        storage.save(tasks);
+        String content = Files.readString(Path.of(dataFile()));
+        Files.writeString(Path.of(dataFile()), content.replace("task 7\n", "task 8\n"));
+
+        Storage reloaded = new Storage(dataFile());
+        ArrayList<Task> loaded = reloaded.load();
+        LoadReport report = reloaded.getLastLoadReport();
+        // The first block holds the next-id line and tasks 0 to 254
+        assertEquals(45, loaded.size());
+        assertEquals(1, report.getCorruptBlocks());
+        assertEquals(256, report.getDroppedLines());
+        assertTrue(report.hasProblems());
+        assertTrue(Files.exists(Path.of(dataFile() + ".corrupt")));
+    }
+
+    @Test
+    public void testTornJournalRecordStopsReplay() throws IOException {
+        Files.writeString(Path.of(dataFile() + ".journal.1"),
+                journalLine("+ | T | 0 | first") + journalLine("+ | T | 0 | second").substring(0, 15));
+
+        Storage storage = new Storage(dataFile(), true);
+        ArrayList<Task> loaded = storage.load();
+        assertEquals(1, loaded.size());
+        assertTrue(storage.getLastLoadReport().isJournalTruncated());
+        storage.close();
+    }
+
+    @Test
+    public void testLegacyFileWithoutChecksumsStillLoads() throws IOException {
+        Files.writeString(Path.of(dataFile()), "T | 1 | read book\nD | 0 | return book | 2024-06-06 2359\n");
+
+        Storage storage = new Storage(dataFile());
+        assertEquals(2, storage.load().size());
+        assertEquals(2, storage.getLastLoadReport().getUnverifiedLines());
+        assertFalse(storage.getLastLoadReport().hasProblems());
+    }
+
+    @Test
+    public void testBinaryFormatRoundTrip() throws IOException {
+        Storage storage = new Storage(dataFile());
+        storage.setFormat(Storage.Format.BINARY);
+        ArrayList<Task> tasks = new ArrayList<>();
+        Todo todo = new Todo("read book");
+        todo.addTag("fun");
+        todo.markAsDone();
+        tasks.add(todo);
+        tasks.add(new Deadline("return book", "2019-12-02 1800"));
+        tasks.add(new Event("team meeting", "2019-12-03 1400", "2019-12-03 1500"));
+        storage.save(tasks);
+
+        // Loading detects the binary format on its own
+        ArrayList<Task> loaded = new Storage(dataFile()).load();
+        assertEquals(3, loaded.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(tasks.get(i).toString(), loaded.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testConvertTextToBinaryAndBack() throws IOException {
+        Files.writeString(Path.of(dataFile()), "T | 1 | read book | fun\nD | 0 | return book | 2024-06-06 2359\n");
+        String binaryFile = tempDir.resolve("sofi.bin").toString();
+
+        assertEquals(2, Storage.convert(dataFile(), binaryFile, Storage.Format.BINARY));
+        assertEquals('S', Files.readAllBytes(Path.of(binaryFile))[0]);
+        assertEquals(2, Storage.convert(binaryFile, binaryFile, Storage.Format.TEXT));
+
+        ArrayList<Task> loaded = new Storage(binaryFile).load();
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.get(0).hasTag("fun"));
+        assertTrue(loaded.get(0).isDone());
+    }
+
+    @Test
+    public void testMappedFormatLoadsLazily() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        storage.setFormat(Storage.Format.MAPPED);
+        ArrayList<Task> tasks = storage.load();
+        for (int i = 0; i < 100; i++) {
+            Todo todo = new Todo("task " + i);
+            todo.addTag("batch");
+            tasks.add(todo);
+        }
+        tasks.add(new Event("team meeting", "2019-12-03 1400", "2019-12-03 1500"));
+        storage.save(new TaskList(tasks).asList());
+        storage.close();
+
+        Storage reopened = new Storage(dataFile(), true);
+        List<Task> loaded = reopened.loadLazily();
+        assertTrue(loaded instanceof LazyTaskList);
+        LazyTaskList lazy = (LazyTaskList) loaded;
+        assertEquals(101, lazy.size());
+        assertEquals(0, lazy.getMaterializedCount());
+        assertEquals(tasks.get(100).toString(), lazy.get(100).toString());
+        assertTrue(lazy.get(42).hasTag("batch"));
+        assertEquals(2, lazy.getMaterializedCount());
+
+        // Mutations replayed from the journal only build the tasks they touch
+        lazy.get(7).markAsDone();
+        reopened.appendMark(7, lazy.get(7), true);
+        reopened.close();
+        lazy = (LazyTaskList) new Storage(dataFile(), true).loadLazily();
+        assertTrue(lazy.get(7).isDone());
+        assertEquals(1, lazy.getMaterializedCount());
+    }
+
+    @Test
+    public void testSnapshotOfMappedFileIsSwitchedInOnNextLoad() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        storage.setFormat(Storage.Format.MAPPED);
+        ArrayList<Task> tasks = storage.load();
+        tasks.add(new Todo("read book"));
+        storage.save(tasks);
+        storage.close();
+        byte[] mappedBytes = Files.readAllBytes(Path.of(dataFile()));
+
+        Storage reopened = new Storage(dataFile(), true);
+        reopened.setFormat(Storage.Format.MAPPED);
+        List<Task> loaded = reopened.loadLazily();
+        loaded.add(new Todo("write essay"));
+        reopened.appendAdd(loaded.get(1));
+        reopened.save(loaded);
+        // The mapped file is left alone, as some platforms cannot replace it while it is mapped
+        assertArrayEquals(mappedBytes, Files.readAllBytes(Path.of(dataFile())));
+        assertTrue(Files.exists(Path.of(dataFile() + ".pending")));
+        assertEquals(2, reopened.loadAt(reopened.getLastSequence()).size());
+        reopened.close();
+
+        List<Task> switched = new Storage(dataFile(), true).loadLazily();
+        assertEquals(2, switched.size());
+        assertEquals("write essay", switched.get(1).getDescription());
+        assertFalse(Files.exists(Path.of(dataFile() + ".pending")));
+    }
+
+    @Test
+    public void testConvertInPlaceReplacesMappedFile() throws IOException {
+        Storage storage = new Storage(dataFile(), true);
+        storage.setFormat(Storage.Format.MAPPED);
+        ArrayList<Task> tasks = storage.load();
+        tasks.add(new Todo("read book"));
+        storage.save(tasks);
+        storage.close();
+
+        assertEquals(1, Storage.convert(dataFile(), dataFile(), Storage.Format.TEXT));
+        assertFalse(Files.exists(Path.of(dataFile() + ".pending")));
+        assertTrue(Files.readString(Path.of(dataFile())).contains("read book"));
+    }
+
+    @Test
+    public void testChunkedLoadKeepsOrderAndLineNumbers() throws IOException {
+        Storage storage = new Storage(dataFile());
+        ArrayList<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(new Todo("task " + i));
+        }
+        storage.save(tasks);
+        // Damage a line in the last, unverified part of the file, which no checksum covers
+        Path path = Path.of(dataFile());
+        Files.writeString(path, Files.readString(path) + "T | 0 | unchecked\nQ | 0 | bogus\n");
+        byte[] data = Files.readAllBytes(path);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkCount = 1; chunkCount <= 16; chunkCount *= 2) {
+                ArrayList<Task> loaded = new ArrayList<>();
+                LoadReport report = new LoadReport();
+                SnapshotReader.read(data, loaded, report, chunkCount, pool);
+                assertEquals(1001, loaded.size());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals("task " + i, loaded.get(i).getDescription());
+                }
+                assertEquals(4, report.getVerifiedBlocks());
+                assertEquals(1, report.getDroppedLines());
+                assertTrue(report.getWarnings().get(0).contains("line 1007"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTaskIdsSurviveRestartAndAreNotReused() throws IOException {
+        for (Storage.Format format : Storage.Format.values()) {
+            Path path = tempDir.resolve("ids-" + format);
+            Storage storage = new Storage(path.toString(), true);
+            storage.setFormat(format);
+            TaskList tasks = new TaskList(storage.load(), storage.getNextTaskId());
+            for (int i = 0; i < 3; i++) {
+                Todo todo = new Todo("task " + i);
+                tasks.addTask(todo);
+                storage.appendAdd(todo);
+            }
+            storage.save(tasks.asList());
+            Task removed = tasks.removeTask(2);
+            storage.appendDelete(2, removed);
+            storage.close();
+
+            Storage reopened = new Storage(path.toString(), true);
+            TaskList loaded = new TaskList(reopened.loadLazily(), reopened.getNextTaskId());
+            assertEquals(2, loaded.size());
+            assertEquals("task 1", loaded.getTaskById(2).getDescription());
+            Todo added = new Todo("task 3");
+            loaded.addTask(added);
+            assertEquals(4, added.getId(), format.toString());
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testLegacyFileGetsIdsInFileOrder() throws IOException {
+        Files.writeString(Path.of(dataFile()), "T | 0 | first\nT | 0 | second\n");
+        ArrayList<Task> loaded = new Storage(dataFile()).load();
+        assertEquals(1, loaded.get(0).getId());
+        assertEquals(2, loaded.get(1).getId());
+    }
+}
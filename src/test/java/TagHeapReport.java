@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import sofi.Task;
+import sofi.Todo;
+
+/**
+ * Reports the heap retained by the tags of a large task list, kept as interned {@link sofi.TagSet}s,
+ * against the per-task {@code HashSet<String>} that tasks kept before.
+ *
+ * <p>Tags are given to the tasks as fresh strings, as a load from the data file does. Most tasks have
+ * no tag, some have one of a few common tags and a few have several. The heap is measured after
+ * collecting garbage, with every task still reachable.</p>
+ *
+ * <p>Left out of {@code ./gradlew test}, as it needs about 1 GB of heap; run it with {@code ./gradlew benchmark}.</p>
+ */
+@Tag("benchmark")
+public class TagHeapReport {
+    private static final int TASKS = 1_000_000;
+    private static final String[] TAGS = {"work", "home", "urgent", "errand", "school", "health", "money",
+        "family", "reading", "project"};
+
+    private static String[] tagsOf(int i) {
+        switch (i % 10) {
+            case 0:
+            case 1:
+                return new String[] {new String(TAGS[i % TAGS.length])};
+            case 2:
+                return new String[] {new String("work"), new String("urgent"), new String(TAGS[i % 7])};
+            default:
+                return new String[0];
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Measures the tasks with their tags interned.
+     */
+    private static long measureInterned() {
+        long before = usedHeap();
+        Task[] tasks = new Task[TASKS];
+        for (int i = 0; i < TASKS; i++) {
+            Task task = new Todo("task " + i);
+            for (String tag : tagsOf(i)) {
+                task.addTag(tag);
+            }
+            tasks[i] = task;
+        }
+        long used = usedHeap() - before;
+        consume(tasks);
+        return used;
+    }
+
+    /**
+     * Measures the same tasks with a set of tag strings each, as {@code Task} kept them before.
+     */
+    private static long measureHashSets() {
+        long before = usedHeap();
+        Task[] tasks = new Task[TASKS];
+        Object[] tagSets = new Object[TASKS];
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = new Todo("task " + i);
+            Set<String> tags = new HashSet<>();
+            for (String tag : tagsOf(i)) {
+                tags.add(tag);
+            }
+            tagSets[i] = tags;
+        }
+        long used = usedHeap() - before;
+        consume(tasks);
+        consume(tagSets);
+        return used;
+    }
+
+    private static void consume(Object[] objects) {
+        if (objects.length == 42) {
+            System.out.print("");
+        }
+    }
+
+    @Test
+    public void testInternedTagsRetainLessHeap() {
+        long hashSets = measureHashSets();
+        long interned = measureInterned();
+        System.out.printf("%,d tasks: HashSet tags %,d KB, interned tags %,d KB, %.1f%% less retained heap%n",
+                TASKS, hashSets / 1024, interned / 1024, 100.0 * (hashSets - interned) / hashSets);
+        assertTrue(interned < hashSets, "Interned tags should retain less heap than a HashSet per task");
+    }
+}
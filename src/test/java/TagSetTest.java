@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import sofi.TagDictionary;
+import sofi.TagSet;
+import sofi.Todo;
+
+public class TagSetTest {
+
+    @Test
+    public void testUntaggedTasksShareTheEmptySet() {
+        Todo first = new Todo("read book");
+        Todo second = new Todo("write essay");
+        assertSame(TagSet.EMPTY, first.getTags());
+        assertSame(first.getTags(), second.getTags());
+
+        first.addTag("fun");
+        first.removeTag("fun");
+        assertSame(TagSet.EMPTY, first.getTags());
+    }
+
+    @Test
+    public void testTagsAreInterned() {
+        Todo first = new Todo("read book");
+        Todo second = new Todo("write essay");
+        first.addTag(new String("reading"));
+        second.addTag(new String(" reading "));
+
+        assertSame(first.getTags().iterator().next(), second.getTags().iterator().next());
+        assertEquals(TagDictionary.intern("reading"), TagDictionary.find("reading"));
+        assertFalse(first.hasTag("never-used-anywhere"));
+        assertEquals(-1, TagDictionary.find("never-used-anywhere"));
+    }
+
+    @Test
+    public void testTagsOfManyTasksAreHeldOnce() {
+        String[] names = {"errand", "school", "health"};
+        int dictionarySize = TagDictionary.size();
+        List<Todo> todos = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Todo todo = new Todo("task " + i);
+            // Fresh strings, as a load from the data file gives
+            for (int j = 0; j < i % 3; j++) {
+                todo.addTag(new String(names[(i + j) % names.length]));
+            }
+            todos.add(todo);
+        }
+
+        assertTrue(TagDictionary.size() - dictionarySize <= names.length);
+        for (Todo todo : todos) {
+            if (todo.getTags().isEmpty()) {
+                assertSame(TagSet.EMPTY, todo.getTags());
+            }
+            for (String tag : todo.getTags()) {
+                assertSame(TagDictionary.nameOf(TagDictionary.find(tag)), tag);
+            }
+        }
+        assertEquals(1000, todos.stream().filter(todo -> todo.getTags() == TagSet.EMPTY).count());
+    }
+
+    @Test
+    public void testManyTagsKeepSetSemantics() {
+        Todo todo = new Todo("plan trip");
+        for (int i = 0; i < 40; i++) {
+            todo.addTag("tag" + i);
+        }
+        todo.addTag("tag7");
+        todo.removeTag("tag3");
+        todo.removeTag("absent");
+
+        Set<String> tags = todo.getTags();
+        assertEquals(39, tags.size());
+        assertTrue(todo.hasTag("tag39"));
+        assertTrue(tags.contains("tag0"));
+        assertFalse(todo.hasTag("tag3"));
+        assertEquals(39, Set.copyOf(tags).size());
+        assertThrows(UnsupportedOperationException.class, () -> tags.add("other"));
+    }
+
+    @Test
+    public void testBitsetIteratesInIdOrder() {
+        Todo todo = new Todo("pack bags");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 150; i += 3) {
+            String tag = "bits" + i;
+            TagDictionary.intern(tag);
+            expected.add(tag);
+        }
+        for (int i = expected.size() - 1; i >= 0; i--) {
+            todo.addTag(expected.get(i));
+        }
+        expected.sort((a, b) -> Integer.compare(TagDictionary.find(a), TagDictionary.find(b)));
+
+        Iterator<String> iterator = todo.getTags().iterator();
+        for (String tag : expected) {
+            assertTrue(iterator.hasNext());
+            assertEquals(tag, iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+}
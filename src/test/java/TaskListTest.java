@@ -2,12 +2,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import sofi.TaskList;
 import sofi.Todo;
 import sofi.Deadline;
+import sofi.Event;
 import sofi.Task;
+import sofi.UndoHistory;
 
 public class TaskListTest {
     private TaskList taskList;
@@ -177,4 +183,388 @@ public class TaskListTest {
         assertTrue(tasks.contains(todo1));
         assertTrue(tasks.contains(deadline1));
     }
+
+    @Test
+    public void testIdsStayStableWhenEarlierTasksAreRemoved() {
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        taskList.addTask(deadline1);
+        int id = deadline1.getId();
+
+        taskList.removeTask(0);
+        assertEquals(id, deadline1.getId());
+        assertEquals(deadline1, taskList.getTaskById(id));
+        assertEquals(1, taskList.indexOfId(id));
+        assertEquals(-1, taskList.indexOfId(todo1.getId()));
+        assertNull(taskList.getTaskById(todo1.getId()));
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterChanges() {
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        List<Task> snapshot = taskList.snapshot();
+        taskList.removeTask(0);
+        taskList.addTask(deadline1);
+
+        assertEquals(2, snapshot.size());
+        assertEquals(todo1.getId(), snapshot.get(0).getId());
+        assertEquals(todo2.getId(), snapshot.get(1).getId());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(deadline1));
+    }
+
+    @Test
+    public void testSnapshotKeepsTaskStateOfItsVersion() {
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        TaskList.Snapshot before = taskList.snapshot();
+        taskList.markTask(0, true);
+        taskList.addTag(1, "work");
+        TaskList.Snapshot after = taskList.snapshot();
+
+        assertFalse(before.get(0).isDone());
+        assertFalse(before.get(1).hasTag("work"));
+        assertTrue(after.get(0).isDone());
+        assertTrue(after.get(1).hasTag("work"));
+        assertEquals(before.getVersion() + 2, after.getVersion());
+        assertSame(after, taskList.snapshot());
+    }
+
+    @Test
+    public void testSnapshotFollowsSlotsAcrossReclaims() {
+        for (int i = 0; i < 200; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        for (int i = 0; i < 150; i++) {
+            taskList.removeTask(0);
+        }
+        TaskList.Snapshot snapshot = taskList.snapshot();
+
+        assertEquals(50, snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals("task " + (150 + i), snapshot.get(i).getDescription());
+        }
+    }
+
+    @Test
+    public void testReadersRunAlongsideAWriter() throws Exception {
+        int taskCount = 2000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < taskCount; i++) {
+                taskList.addTask(new Todo("task " + i));
+                taskList.addTag(taskList.size() - 1, i % 2 == 0 ? "even" : "odd");
+                if (i % 10 == 9) {
+                    taskList.markTask(0, true);
+                    taskList.removeTask(0);
+                }
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (writer.isAlive()) {
+                        int size = taskList.size();
+                        if (size > 0) {
+                            assertNotNull(taskList.getTask(size - 1 - size / 2));
+                        }
+                        taskList.findByTag("even");
+                        taskList.findTasks("task");
+                        for (Task task : taskList.snapshot()) {
+                            assertNotNull(task.getDescription());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        int expected = taskCount - taskCount / 10;
+        assertEquals(expected, taskList.size());
+        assertEquals(expected, taskList.snapshot().size());
+        assertEquals(expected, taskList.findTasks("task").size());
+        assertEquals(expected, taskList.findByTag("even").size() + taskList.findByTag("odd").size());
+    }
+
+    @Test
+    public void testResolveIndicesAcceptsRangesListsAndDone() {
+        for (int i = 0; i < 10; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        taskList.markTask(4, true);
+        taskList.markTask(8, true);
+        String byId = "9-@" + taskList.getTask(9).getId();
+
+        assertArrayEquals(new int[]{2, 3, 4}, taskList.resolveIndices("3-5", 0, 3));
+        assertArrayEquals(new int[]{0, 4, 7, 8}, taskList.resolveIndices("1, 5,8-9,5", 0, 10));
+        assertArrayEquals(new int[]{8, 9}, taskList.resolveIndices(byId, 0, byId.length()));
+        assertArrayEquals(new int[]{4, 8}, taskList.resolveIndices("delete done", 7, 11));
+        assertThrows(NumberFormatException.class, () -> taskList.resolveIndices("5-3", 0, 3));
+        assertThrows(NumberFormatException.class, () -> taskList.resolveIndices("1,", 0, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> taskList.resolveIndices("2-11", 0, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> taskList.resolveIndices("-1", 0, 2));
+    }
+
+    @Test
+    public void testBulkOperationsApplyToEverySelectedTask() {
+        for (int i = 0; i < 200; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        int[] firstHundred = taskList.resolveIndices("1-100", 0, 5);
+        assertEquals(100, taskList.markTasks(firstHundred, true).size());
+        assertEquals(100, taskList.addTag(firstHundred, "old").size());
+        assertEquals(100, taskList.findByTag("old").size());
+
+        ArrayList<Task> removed = taskList.removeTasks(taskList.resolveIndices("done", 0, 4));
+        assertEquals(100, removed.size());
+        assertEquals("task 0", removed.get(0).getDescription());
+        assertEquals(100, taskList.size());
+        assertEquals("task 100", taskList.getTask(0).getDescription());
+        assertTrue(taskList.findByTag("old").isEmpty());
+        assertEquals(0, taskList.indexOfId(taskList.getTask(0).getId()));
+    }
+
+    @Test
+    public void testResolveIndexAcceptsNumbersAndIds() {
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+
+        assertEquals(1, taskList.resolveIndex("2"));
+        assertEquals(1, taskList.resolveIndex("@" + todo2.getId()));
+        assertFalse(taskList.isValidIndex(taskList.resolveIndex("@999")));
+        assertThrows(NumberFormatException.class, () -> taskList.resolveIndex("@abc"));
+        assertEquals(1, taskList.resolveIndex(" 2 "));
+        String command = "delete @" + todo2.getId();
+        assertEquals(1, taskList.resolveIndex(command, 7, command.length()));
+        assertEquals(1, taskList.resolveIndex("delete 2", 7, 8));
+    }
+
+    @Test
+    public void testPositionsStayConsistentAcrossManyRemovals() {
+        ArrayList<Task> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Todo todo = new Todo("task " + i);
+            taskList.addTask(todo);
+            expected.add(todo);
+        }
+        // Remove every third task, enough for freed slots to be reclaimed along the way
+        for (int i = expected.size() - 1; i >= 0; i -= 3) {
+            assertEquals(expected.remove(i), taskList.removeTask(i));
+        }
+        for (int i = 0; i < expected.size(); i += 2) {
+            assertEquals(expected.remove(i), taskList.removeTask(i));
+        }
+        assertEquals(expected.size(), taskList.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), taskList.getTask(i));
+            assertEquals(i, taskList.indexOfId(expected.get(i).getId()));
+        }
+        assertEquals(expected, taskList.asList());
+    }
+
+    @Test
+    public void testTagQueriesFollowTagChanges() {
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        taskList.addTask(deadline1);
+        taskList.addTag(0, "work");
+        taskList.addTag(2, "work");
+        taskList.addTag(2, "urgent");
+        assertEquals(2, taskList.findByTag("work").size());
+
+        // The index is built by the query above and updated from here on
+        taskList.addTag(1, "urgent");
+        taskList.removeTag(0, "work");
+        assertEquals(java.util.List.of(deadline1), taskList.findByTag("work"));
+        assertEquals(java.util.List.of(deadline1), taskList.findTagged(new String[]{"work", "and", "urgent"}));
+        assertEquals(java.util.List.of(todo2, deadline1), taskList.findTagged(new String[]{"work", "or", "urgent"}));
+
+        taskList.removeTask(2);
+        assertTrue(taskList.findByTag("work").isEmpty());
+        assertEquals(java.util.List.of(todo2), taskList.findTagged(new String[]{"missing", "or", "urgent"}));
+    }
+
+    @Test
+    public void testFindTasksMatchesWordPrefixesAndRanksResults() {
+        Todo report = new Todo("report");
+        Todo draft = new Todo("Draft the project report, then send the report");
+        Todo other = new Todo("Project kickoff meeting");
+        taskList.addTask(report);
+        taskList.addTask(draft);
+        taskList.addTask(other);
+
+        assertEquals(java.util.List.of(other, draft), taskList.findTasks("PROJ"));
+        assertEquals(java.util.List.of(draft), taskList.findTasks("proj rep"));
+        assertTrue(taskList.findTasks("proj missing").isEmpty());
+        // The short description that is all "report" outranks the long one that mentions it twice
+        assertEquals(java.util.List.of(report, draft), taskList.findTasks("report"));
+
+        // The index is built by the searches above and updated from here on
+        taskList.removeTask(0);
+        Todo added = new Todo("report card");
+        taskList.addTask(added);
+        assertEquals(2, taskList.findTasks("report").size());
+        assertTrue(taskList.findTasks("report").contains(added));
+        assertFalse(taskList.findTasks("report").contains(report));
+    }
+
+    @Test
+    public void testDateQueriesFollowAddsAndRemovals() {
+        Deadline early = new Deadline("early", "2024-12-02 0900");
+        Deadline late = new Deadline("late", "2024-12-06");
+        Event conference = new Event("conference", "2024-12-01 0900", "2024-12-03 1700");
+        Event lunch = new Event("lunch", "2024-12-02 1200", "2024-12-02 1300");
+        taskList.addTask(todo1);
+        taskList.addTask(late);
+        taskList.addTask(conference);
+        taskList.addTask(early);
+        taskList.addTask(lunch);
+
+        LocalDateTime from = LocalDateTime.of(2024, 12, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 12, 7, 23, 59);
+        assertEquals(java.util.List.of(early, late), taskList.findDue(from, to));
+        assertEquals(java.util.List.of(conference, early, lunch), taskList.findAgenda(LocalDate.of(2024, 12, 2)));
+        assertEquals(java.util.List.of(conference), taskList.findAgenda(LocalDate.of(2024, 12, 3)));
+
+        // The index is built by the queries above and updated from here on
+        taskList.removeTask(2);
+        Deadline added = new Deadline("added", "2024-12-02 1230");
+        taskList.addTask(added);
+        taskList.markTask(0, true);
+        assertEquals(java.util.List.of(early, lunch, added), taskList.findAgenda(LocalDate.of(2024, 12, 2)));
+        assertEquals(java.util.List.of(early, added, late), taskList.findDue(from, to));
+        assertTrue(taskList.findDue(to, from).isEmpty());
+    }
+
+    @Test
+    public void testConflictsIgnoreBackToBackEvents() {
+        Event standup = new Event("standup", "2024-12-02 0900", "2024-12-02 0930");
+        Event review = new Event("review", "2024-12-02 0930", "2024-12-02 1100");
+        Event workshop = new Event("workshop", "2024-12-02 1000", "2024-12-02 1200");
+        taskList.addTask(standup);
+        taskList.addTask(review);
+        taskList.addTask(workshop);
+
+        assertEquals(java.util.List.of(review), taskList.findConflicting(workshop));
+        assertTrue(taskList.findConflicting(standup).isEmpty());
+        Event lunch = new Event("lunch", "2024-12-02 1130", "2024-12-02 1230");
+        assertEquals(java.util.List.of(workshop), taskList.findConflicting(lunch));
+        taskList.addTask(lunch);
+
+        ArrayList<Task[]> conflicts = taskList.findConflicts(LocalDateTime.MIN, LocalDateTime.MAX);
+        assertEquals(2, conflicts.size());
+        assertArrayEquals(new Task[]{review, workshop}, conflicts.get(0));
+        assertArrayEquals(new Task[]{workshop, lunch}, conflicts.get(1));
+        assertEquals(1, taskList.findConflicts(LocalDateTime.of(2024, 12, 2, 9, 0),
+                LocalDateTime.of(2024, 12, 2, 10, 0)).size());
+
+        taskList.removeTask(2);
+        assertTrue(taskList.findConflicts(LocalDateTime.MIN, LocalDateTime.MAX).isEmpty());
+    }
+
+    @Test
+    public void testUndoRestoresDeletedTasksInPlace() {
+        taskList.setUndoHistory(new UndoHistory());
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        taskList.addTask(deadline1);
+        taskList.removeTasks(new int[] {0, 2});
+
+        ArrayList<UndoHistory.Operation> undone = taskList.undo();
+        assertEquals(2, undone.size());
+        assertEquals(3, taskList.size());
+        assertEquals(todo1.getId(), taskList.getTask(0).getId());
+        assertEquals(todo2.getId(), taskList.getTask(1).getId());
+        assertEquals(deadline1.getId(), taskList.getTask(2).getId());
+        assertEquals(0, taskList.indexOfId(todo1.getId()));
+
+        taskList.redo();
+        assertEquals(1, taskList.size());
+        assertEquals(todo2.getId(), taskList.getTask(0).getId());
+    }
+
+    @Test
+    public void testUndoRevertsMarksTagsAndAdditions() {
+        taskList.setUndoHistory(new UndoHistory());
+        taskList.addTask(todo1);
+        taskList.markTask(0, true);
+        taskList.addTag(0, "fun");
+        // Already done, so there is nothing to revert and no step is kept
+        taskList.markTask(0, true);
+
+        taskList.undo();
+        assertFalse(taskList.getTask(0).hasTag("fun"));
+        assertTrue(taskList.getTask(0).isDone());
+        taskList.undo();
+        assertFalse(taskList.getTask(0).isDone());
+        taskList.undo();
+        assertEquals(0, taskList.size());
+        assertTrue(taskList.undo().isEmpty());
+
+        taskList.redo();
+        taskList.redo();
+        assertEquals(1, taskList.size());
+        assertTrue(taskList.getTask(0).isDone());
+        assertEquals(1, taskList.snapshot().size());
+    }
+
+    @Test
+    public void testNewChangeClearsRedo() {
+        UndoHistory history = new UndoHistory();
+        taskList.setUndoHistory(history);
+        taskList.addTask(todo1);
+        taskList.addTask(todo2);
+        taskList.undo();
+        assertTrue(history.canRedo());
+
+        taskList.markTask(0, true);
+        assertFalse(history.canRedo());
+        assertTrue(taskList.redo().isEmpty());
+        assertEquals(1, taskList.size());
+    }
+
+    @Test
+    public void testUndoHistoryKeepsOnlyTheNewestSteps() {
+        UndoHistory history = new UndoHistory(3, UndoHistory.DEFAULT_MAX_BYTES);
+        taskList.setUndoHistory(history);
+        for (int i = 0; i < 10; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        assertEquals(3, history.getUndoDepth());
+
+        taskList.undo();
+        taskList.undo();
+        taskList.undo();
+        assertTrue(taskList.undo().isEmpty());
+        assertEquals(7, taskList.size());
+    }
+
+    @Test
+    public void testStepLargerThanMemoryCapIsNotKept() {
+        UndoHistory history = new UndoHistory(10, 200);
+        taskList.setUndoHistory(history);
+        for (int i = 0; i < 20; i++) {
+            taskList.addTask(new Todo("task " + i));
+        }
+        int[] all = new int[20];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        taskList.removeTasks(all);
+
+        assertTrue(history.getEstimatedBytes() <= 200);
+        assertTrue(taskList.undo().isEmpty());
+        assertEquals(0, taskList.size());
+    }
 }